@@ -19,21 +19,18 @@ package mtsar.api;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
-import de.tudarmstadt.ukp.dkpro.statistics.agreement.coding.*;
-import de.tudarmstadt.ukp.dkpro.statistics.agreement.distance.NominalDistanceFunction;
-import de.tudarmstadt.ukp.dkpro.statistics.agreement.distance.OrdinalDistanceFunction;
-import mtsar.api.sql.AnswerDAO;
+import mtsar.api.agreement.SparseCodingStudy;
 import org.inferred.freebuilder.FreeBuilder;
 
 import javax.xml.bind.annotation.XmlRootElement;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 /**
  * Experimental wrapper for various agreement tests.
+ *
+ * @see SparseCodingStudy
  */
 @FreeBuilder
 @XmlRootElement
@@ -54,45 +51,60 @@ public interface AgreementReport {
     @JsonProperty
     double getRandolphKappa();
 
-    @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "set")
-    class Builder extends AgreementReport_Builder {
-        public Builder compute(Stage stage, AnswerDAO answerDAO) {
-            final List<Answer> answers = answerDAO.listForStage(stage.getId());
-
-            final Map<Integer, List<Answer>> answerTasks = answers.stream().
-                    filter(answer -> answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)).
-                    collect(Collectors.groupingBy(Answer::getTaskId));
-
-            final AtomicInteger workersCount = new AtomicInteger();
-            final Map<Integer, Integer> workers = answers.stream().
-                    filter(answer -> answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)).
-                    map(Answer::getWorkerId).distinct().
-                    collect(Collectors.toMap(Function.identity(), workerId -> workersCount.getAndIncrement()));
-
-            final CodingAnnotationStudy study = new CodingAnnotationStudy(workers.size());
-            for (final List<Answer> taskAnswers : answerTasks.values()) {
-                final String items[] = new String[workers.size()];
-                for (final Answer answer : taskAnswers) {
-                    items[workers.get(answer.getWorkerId())] = answer.getAnswer().get();
-                }
-                study.addItemAsArray(items);
-            }
+    /**
+     * Per-task agreement, if the breakdown has been requested.
+     *
+     * @return Task identifiers mapped to the percentage agreement.
+     */
+    @JsonProperty
+    Map<Integer, Double> getTasks();
 
-            final PercentageAgreement percent = new PercentageAgreement(study);
-            super.setPercentage(percent.calculateAgreement());
+    /**
+     * Per-worker agreement, if the breakdown has been requested.
+     *
+     * @return Worker identifiers mapped to the percentage agreement.
+     */
+    @JsonProperty
+    Map<Integer, Double> getWorkers();
 
-            final KrippendorffAlphaAgreement alphaNominal = new KrippendorffAlphaAgreement(study, new NominalDistanceFunction());
-            super.setNominalAlpha(alphaNominal.calculateAgreement());
+    /**
+     * Number of the sampled tasks, if the report is approximate.
+     *
+     * @return Sample size.
+     */
+    @JsonProperty
+    Optional<Integer> getSample();
 
-            final KrippendorffAlphaAgreement alphaOrdinal = new KrippendorffAlphaAgreement(study, new OrdinalDistanceFunction());
-            super.setOrdinalAlpha(alphaOrdinal.calculateAgreement());
+    /**
+     * Number of the bootstrap replicates, if the report is approximate.
+     *
+     * @return Replicates count.
+     */
+    @JsonProperty
+    Optional<Integer> getReplicates();
 
-            final WeightedKappaAgreement weightedKappa = new WeightedKappaAgreement(study, new NominalDistanceFunction());
-            super.setWeightedKappa(weightedKappa.calculateAgreement());
+    /**
+     * The 95% percentile bootstrap confidence intervals, if the report is approximate.
+     *
+     * @return Measure names mapped to the lower and upper bounds.
+     */
+    @JsonProperty
+    Map<String, List<Double>> getIntervals();
 
-            final RandolphKappaAgreement randolphKappa = new RandolphKappaAgreement(study);
-            super.setRandolphKappa(randolphKappa.calculateAgreement());
+    @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "set")
+    class Builder extends AgreementReport_Builder {
+        public Builder compute(SparseCodingStudy study) {
+            super.setPercentage(study.getPercentage());
+            super.setNominalAlpha(study.getNominalAlpha());
+            super.setOrdinalAlpha(study.getOrdinalAlpha());
+            super.setWeightedKappa(study.getWeightedKappa());
+            super.setRandolphKappa(study.getRandolphKappa());
+            return this;
+        }
 
+        public Builder breakdown(SparseCodingStudy study) {
+            super.putAllTasks(study.getItemPercentages());
+            super.putAllWorkers(study.getRaterPercentages());
             return this;
         }
     }
@@ -43,6 +43,7 @@ public interface Answer {
     @JsonProperty
     String getStage();
 
+    @Nullable
     @JsonProperty
     Timestamp getDateTime();
 
@@ -96,5 +97,15 @@ public interface Answer {
             setAnswersTextArray(PostgresUtils.buildArrayString(getAnswers()));
             return super.build();
         }
+
+        /**
+         * Builds the answer using the textual representations of the collections that have already been set,
+         * e.g., read from the database as is, instead of rendering them again.
+         *
+         * @return the answer.
+         */
+        public Answer buildRaw() {
+            return super.build();
+        }
     }
 }
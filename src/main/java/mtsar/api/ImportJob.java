@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import org.inferred.freebuilder.FreeBuilder;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Snapshot of a CSV import that is performed in background.
+ */
+@FreeBuilder
+@XmlRootElement
+@JsonDeserialize(builder = ImportJob.Builder.class)
+public interface ImportJob {
+    String STATUS_PENDING = "pending";
+    String STATUS_RUNNING = "running";
+    String STATUS_DONE = "done";
+    String STATUS_FAILED = "failed";
+    String STATUS_CANCELLED = "cancelled";
+
+    @JsonProperty
+    String getId();
+
+    @JsonProperty
+    String getStage();
+
+    /**
+     * What is being imported.
+     *
+     * @return Either tasks, workers or answers.
+     */
+    @JsonProperty
+    String getType();
+
+    @JsonProperty
+    String getStatus();
+
+    /**
+     * Number of the records stored so far.
+     *
+     * @return Processed count.
+     */
+    @JsonProperty
+    long getProcessed();
+
+    /**
+     * Average number of the stored records per second since the job has been started.
+     *
+     * @return Throughput.
+     */
+    @JsonProperty
+    double getThroughput();
+
+    /**
+     * The rejected records, known when the job is done.
+     *
+     * @return CSV record numbers mapped to the error messages.
+     */
+    @JsonProperty
+    Map<Long, String> getErrors();
+
+    /**
+     * Failure description, if the job has failed.
+     *
+     * @return Error message.
+     */
+    @JsonProperty
+    Optional<String> getMessage();
+
+    @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "set")
+    class Builder extends ImportJob_Builder {
+    }
+}
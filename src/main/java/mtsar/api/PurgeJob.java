@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import org.inferred.freebuilder.FreeBuilder;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.Optional;
+
+/**
+ * Snapshot of a bulk deletion of the stage tasks or answers running in background.
+ */
+@FreeBuilder
+@XmlRootElement
+@JsonDeserialize(builder = PurgeJob.Builder.class)
+public interface PurgeJob {
+    String STATUS_PENDING = "pending";
+    String STATUS_RUNNING = "running";
+    String STATUS_DONE = "done";
+    String STATUS_FAILED = "failed";
+    String TYPE_TASKS = "tasks";
+    String TYPE_ANSWERS = "answers";
+
+    @JsonProperty
+    String getId();
+
+    /**
+     * The stage whose data is being removed, unknown for the leftovers found on startup.
+     *
+     * @return Stage identifier.
+     */
+    @JsonProperty
+    Optional<String> getStage();
+
+    /**
+     * What is being removed.
+     *
+     * @return Either tasks or answers.
+     */
+    @JsonProperty
+    String getType();
+
+    /**
+     * The detached table holding the removed rows, absent for the in-memory storage.
+     *
+     * @return Table name.
+     */
+    @JsonProperty
+    Optional<String> getTable();
+
+    @JsonProperty
+    String getStatus();
+
+    /**
+     * Number of the rows of the detached table released so far.
+     *
+     * @return Processed count.
+     */
+    @JsonProperty
+    long getProcessed();
+
+    /**
+     * Failure description, if the job has failed.
+     *
+     * @return Error message.
+     */
+    @JsonProperty
+    Optional<String> getMessage();
+
+    @JsonPOJOBuilder(buildMethodName = "build", withPrefix = "set")
+    class Builder extends PurgeJob_Builder {
+    }
+}
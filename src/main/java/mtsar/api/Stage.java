@@ -97,6 +97,28 @@ public class Stage {
         return definition.getAnswerAggregator();
     }
 
+    /**
+     * Identifies the answer aggregator together with its options, so the stored
+     * aggregations can be invalidated when the stage configuration changes.
+     *
+     * @return the answer aggregator model.
+     */
+    @JsonIgnore
+    public String getAnswerAggregatorModel() {
+        return definition.getAnswerAggregator() + ' ' + definition.getOptionsJSON();
+    }
+
+    /**
+     * Identifies the worker ranker together with its options, so the stored
+     * rankings can be invalidated when the stage configuration changes.
+     *
+     * @return the worker ranker model.
+     */
+    @JsonIgnore
+    public String getWorkerRankerModel() {
+        return definition.getWorkerRanker() + ' ' + definition.getOptionsJSON();
+    }
+
     @FreeBuilder
     @XmlRootElement
     @JsonDeserialize(builder = Definition.Builder.class)
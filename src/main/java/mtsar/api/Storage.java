@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api;
+
+import mtsar.api.sql.*;
+
+/**
+ * The storage backend providing the DAOs, i.e., {@link StageDAO}, {@link WorkerDAO}, {@link TaskDAO},
+ * {@link AnswerDAO}, {@link AnswerAggregationDAO} and {@link WorkerRankingDAO}. The PostgreSQL
+ * backend creates them with JDBI, while {@link mtsar.api.memory.MemoryStorage} keeps the data in memory.
+ */
+public interface Storage {
+    String POSTGRESQL = "postgresql";
+    String MEMORY = "memory";
+
+    /**
+     * Provides the DAO of the given type.
+     *
+     * @param dao the DAO interface.
+     * @param <T> the DAO type.
+     * @return the DAO.
+     */
+    <T> T onDemand(Class<T> dao);
+}
@@ -41,6 +41,7 @@ public interface Task {
     @JsonProperty
     String getStage();
 
+    @Nullable
     @JsonProperty
     Timestamp getDateTime();
 
@@ -84,5 +85,15 @@ public interface Task {
             setAnswersTextArray(PostgresUtils.buildArrayString(getAnswers()));
             return super.build();
         }
+
+        /**
+         * Builds the task using the textual representations of the collections that have already been set,
+         * e.g., read from the database as is, instead of rendering them again.
+         *
+         * @return the task.
+         */
+        public Task buildRaw() {
+            return super.build();
+        }
     }
 }
@@ -71,5 +71,15 @@ public interface Worker {
             setMetadataJSON(PostgresUtils.buildJSONString(getMetadata()));
             return super.build();
         }
+
+        /**
+         * Builds the worker using the textual representations of the collections that have already been set,
+         * e.g., read from the database as is, instead of rendering them again.
+         *
+         * @return the worker.
+         */
+        public Worker buildRaw() {
+            return super.build();
+        }
     }
 }
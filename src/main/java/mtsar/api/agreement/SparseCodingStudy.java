@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.agreement;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Annotation study that keeps only the ratings actually given, so its memory is proportional
+ * to the number of answers rather than to the number of items times the number of raters.
+ * Every item is stored as its ratings and the counts of the categories assigned to it, and every rater
+ * is stored as the counts of the categories it has assigned. The items can be replaced at any time,
+ * so the study can be kept up to date as the answers arrive.
+ * <p>
+ * The items rated less than twice do not contribute to the pairwise measures.
+ */
+public final class SparseCodingStudy {
+    private final Map<String, Integer> categoryIndex = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final Map<Integer, Item> items = new HashMap<>();
+    private final Map<Integer, Map<Integer, Integer>> raters = new HashMap<>();
+
+    /**
+     * Sets the ratings of the item replacing the previous ones, if any.
+     *
+     * @param id      item identifier.
+     * @param ratings raters mapped to the categories they have assigned to the item.
+     */
+    public void setItem(int id, Map<Integer, String> ratings) {
+        removeItem(id);
+        if (ratings.isEmpty()) return;
+        final int[] itemRaters = new int[ratings.size()], itemCategories = new int[ratings.size()];
+        final Map<Integer, Integer> counts = new HashMap<>();
+        int r = 0;
+        for (final Map.Entry<Integer, String> rating : ratings.entrySet()) {
+            final int category = categoryIndex.computeIfAbsent(rating.getValue(), name -> {
+                categories.add(name);
+                return categories.size() - 1;
+            });
+            itemRaters[r] = rating.getKey();
+            itemCategories[r++] = category;
+            counts.merge(category, 1, Integer::sum);
+            raters.computeIfAbsent(rating.getKey(), rater -> new HashMap<>()).merge(category, 1, Integer::sum);
+        }
+        final int[] item = new int[counts.size() * 2];
+        int i = 0;
+        for (final Map.Entry<Integer, Integer> count : counts.entrySet()) {
+            item[i++] = count.getKey();
+            item[i++] = count.getValue();
+        }
+        items.put(id, new Item(itemRaters, itemCategories, item));
+    }
+
+    /**
+     * Sets the rating of the item given by the rater replacing the previous one, if any.
+     *
+     * @param id       item identifier.
+     * @param rater    rater identifier.
+     * @param category assigned category.
+     */
+    public void setRating(int id, int rater, String category) {
+        final Map<Integer, String> ratings = getRatings(id);
+        ratings.put(rater, category);
+        setItem(id, ratings);
+    }
+
+    public void removeItem(int id) {
+        final Item item = items.remove(id);
+        if (item == null) return;
+        for (int r = 0; r < item.raters.length; r++) {
+            final Map<Integer, Integer> counts = raters.get(item.raters[r]);
+            if (counts.merge(item.categories[r], -1, Integer::sum) == 0) counts.remove(item.categories[r]);
+            if (counts.isEmpty()) raters.remove(item.raters[r]);
+        }
+    }
+
+    public Map<Integer, String> getRatings(int id) {
+        final Map<Integer, String> ratings = new HashMap<>();
+        final Item item = items.get(id);
+        if (item != null) {
+            for (int r = 0; r < item.raters.length; r++) ratings.put(item.raters[r], categories.get(item.categories[r]));
+        }
+        return ratings;
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public int getRaterCount() {
+        return raters.size();
+    }
+
+    public int getCategoryCount() {
+        return categories.size();
+    }
+
+    /**
+     * Observed agreement of every item rated at least twice.
+     *
+     * @return Items mapped to their percentage agreement.
+     */
+    public Map<Integer, Double> getItemPercentages() {
+        return items.entrySet().parallelStream().
+                filter(entry -> entry.getValue().raters.length > 1).
+                collect(Collectors.toConcurrentMap(Map.Entry::getKey, entry -> entry.getValue().getPercentage()));
+    }
+
+    /**
+     * Observed agreement of every rater, i.e., the share of the other raters of the same item
+     * who have assigned the same category, averaged over the items rated at least twice.
+     *
+     * @return Raters mapped to their percentage agreement.
+     */
+    public Map<Integer, Double> getRaterPercentages() {
+        return items.values().parallelStream().
+                filter(item -> item.raters.length > 1).
+                flatMap(item -> IntStream.range(0, item.raters.length).mapToObj(r -> new AbstractMap.SimpleImmutableEntry<>(
+                        item.raters[r], (item.getCount(item.categories[r]) - 1.0) / (item.raters.length - 1)
+                ))).
+                collect(Collectors.groupingByConcurrent(Map.Entry::getKey, Collectors.averagingDouble(Map.Entry::getValue)));
+    }
+
+    /**
+     * Observed agreement, i.e., the share of the agreeing rater pairs averaged over the items.
+     *
+     * @return Percentage agreement.
+     */
+    public double getPercentage() {
+        double sum = 0.0;
+        int count = 0;
+        for (final Item item : items.values()) {
+            if (item.raters.length < 2) continue;
+            sum += item.getPercentage();
+            count++;
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Randolph's free-marginal multi-rater kappa that assumes the uniform distribution of the categories.
+     *
+     * @return Randolph's kappa.
+     */
+    public double getRandolphKappa() {
+        final double expected = 1.0 / categories.size();
+        return (getPercentage() - expected) / (1.0 - expected);
+    }
+
+    /**
+     * Multi-rater kappa with the nominal weights and the chance agreement estimated
+     * from the category distributions of every rater pair.
+     *
+     * @return Weighted kappa.
+     */
+    public double getWeightedKappa() {
+        double pairs = 0.0, disagreeing = 0.0;
+        for (final Item item : items.values()) {
+            final double n = item.raters.length;
+            if (n < 2) continue;
+            double squares = 0.0;
+            for (int i = 1; i < item.counts.length; i += 2) squares += (double) item.counts[i] * item.counts[i];
+            pairs += n * (n - 1) / 2;
+            disagreeing += (n * n - squares) / 2;
+        }
+        if (pairs == 0.0 || raters.size() < 2) return Double.NaN;
+
+        /* the sum over the ordered rater pairs of the probability to agree by chance */
+        final double[] sums = new double[categories.size()], squares = new double[categories.size()];
+        for (final Map<Integer, Integer> rater : raters.values()) {
+            double total = 0.0;
+            for (final int count : rater.values()) total += count;
+            for (final Map.Entry<Integer, Integer> entry : rater.entrySet()) {
+                final double p = entry.getValue() / total;
+                sums[entry.getKey()] += p;
+                squares[entry.getKey()] += p * p;
+            }
+        }
+        double chance = 0.0;
+        for (int c = 0; c < sums.length; c++) chance += sums[c] * sums[c] - squares[c];
+        chance /= (double) raters.size() * (raters.size() - 1);
+
+        return 1.0 - (disagreeing / pairs) / (1.0 - chance);
+    }
+
+    /**
+     * Krippendorff's alpha with the nominal distance.
+     *
+     * @return Nominal alpha.
+     */
+    public double getNominalAlpha() {
+        return getAlpha((c, k, marginals, ranks) -> c == k ? 0.0 : 1.0);
+    }
+
+    /**
+     * Krippendorff's alpha with the ordinal distance. The categories are ordered numerically
+     * when all of them are numbers, and lexicographically otherwise.
+     *
+     * @return Ordinal alpha.
+     */
+    public double getOrdinalAlpha() {
+        final Integer[] order = new Integer[categories.size()];
+        for (int c = 0; c < order.length; c++) order[c] = c;
+        if (categories.stream().allMatch(NumberUtils::isNumber)) {
+            Arrays.sort(order, Comparator.comparing((Integer c) -> NumberUtils.createDouble(categories.get(c))));
+        } else {
+            Arrays.sort(order, Comparator.comparing((Integer c) -> categories.get(c)));
+        }
+        final int[] ranks = new int[order.length];
+        for (int r = 0; r < order.length; r++) ranks[order[r]] = r;
+
+        return getAlpha((c, k, marginals, cumulative) -> {
+            if (c == k) return 0.0;
+            final int lo = Math.min(ranks[c], ranks[k]), hi = Math.max(ranks[c], ranks[k]);
+            final double distance = cumulative[hi + 1] - cumulative[lo] - (marginals[c] + marginals[k]) / 2;
+            return distance * distance;
+        }, order);
+    }
+
+    private double getAlpha(Distance distance) {
+        return getAlpha(distance, null);
+    }
+
+    /**
+     * Krippendorff's alpha computed on the sparse coincidence matrix.
+     *
+     * @param distance the distance function.
+     * @param order    categories in the rank order for the ordinal distance.
+     * @return Alpha.
+     */
+    private double getAlpha(Distance distance, Integer[] order) {
+        final Map<Long, Double> coincidences = new HashMap<>();
+        final double[] marginals = new double[categories.size()];
+
+        for (final Item item : items.values()) {
+            final int n = item.raters.length;
+            if (n < 2) continue;
+            final int[] counts = item.counts;
+            for (int i = 0; i < counts.length; i += 2) {
+                for (int j = 0; j < counts.length; j += 2) {
+                    final double value = (i == j ? counts[i + 1] * (counts[i + 1] - 1.0) : counts[i + 1] * (double) counts[j + 1]) / (n - 1);
+                    if (value == 0.0) continue;
+                    coincidences.merge(((long) counts[i] << Integer.SIZE) | counts[j], value, Double::sum);
+                    marginals[counts[i]] += value;
+                }
+            }
+        }
+
+        double total = 0.0;
+        for (final double marginal : marginals) total += marginal;
+        if (total <= 1.0) return Double.NaN;
+
+        /* cumulative marginals in the rank order, if any */
+        final double[] cumulative = new double[marginals.length + 1];
+        if (order != null) for (int r = 0; r < order.length; r++) cumulative[r + 1] = cumulative[r] + marginals[order[r]];
+
+        double observed = 0.0;
+        for (final Map.Entry<Long, Double> entry : coincidences.entrySet()) {
+            final int c = (int) (entry.getKey() >>> Integer.SIZE), k = (int) (long) entry.getKey();
+            observed += entry.getValue() * distance.apply(c, k, marginals, cumulative);
+        }
+        observed /= total;
+
+        double expected = 0.0;
+        for (int c = 0; c < marginals.length; c++) {
+            if (marginals[c] == 0.0) continue;
+            for (int k = 0; k < marginals.length; k++) {
+                if (c == k || marginals[k] == 0.0) continue;
+                expected += marginals[c] * marginals[k] * distance.apply(c, k, marginals, cumulative);
+            }
+        }
+        expected /= total * (total - 1);
+
+        return 1.0 - observed / expected;
+    }
+
+    @FunctionalInterface
+    private interface Distance {
+        double apply(int c, int k, double[] marginals, double[] cumulative);
+    }
+
+    private static final class Item {
+        private final int[] raters;
+        private final int[] categories;
+        /* pairs of a category and its count */
+        private final int[] counts;
+
+        private Item(int[] raters, int[] categories, int[] counts) {
+            this.raters = raters;
+            this.categories = categories;
+            this.counts = counts;
+        }
+
+        private int getCount(int category) {
+            for (int i = 0; i < counts.length; i += 2) if (counts[i] == category) return counts[i + 1];
+            return 0;
+        }
+
+        private double getPercentage() {
+            final double n = raters.length;
+            double agreeing = 0.0;
+            for (int i = 1; i < counts.length; i += 2) agreeing += (double) counts[i] * (counts[i] - 1);
+            return agreeing / (n * (n - 1));
+        }
+    }
+}
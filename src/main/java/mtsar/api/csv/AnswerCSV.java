@@ -20,6 +20,7 @@ import com.google.common.collect.Sets;
 import mtsar.api.Answer;
 import mtsar.api.Stage;
 import mtsar.api.sql.AnswerDAO;
+import mtsar.util.DateTimeUtils;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -30,7 +31,6 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.stream.StreamSupport;
 
@@ -43,39 +43,56 @@ public final class AnswerCSV {
     private static final Comparator<Answer> ORDER = TASK_ID_ORDER.thenComparing((a1, a2) -> a1.getId().compareTo(a2.getId()));
 
     public static Iterator<Answer> parse(Stage stage, CSVParser csv) {
-        final Set<String> header = csv.getHeaderMap().keySet();
-        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+        checkHeader(csv);
 
         final Iterable<CSVRecord> iterable = csv::iterator;
 
-        return StreamSupport.stream(iterable.spliterator(), false).map(row -> {
-            final String id = row.isSet("id") ? row.get("id") : null;
-            final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
-            final String type = row.isSet("type") ? row.get("type") : null;
-            final String workerId = row.get("worker_id");
-            final String taskId = row.get("task_id");
-            final String[] answers = row.isSet("answers") && !StringUtils.isEmpty(row.get("answers")) ? row.get("answers").split("\\|") : new String[0];
-            final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
+        return StreamSupport.stream(iterable.spliterator(), false).map(row -> parse(stage, row)).iterator();
+    }
+
+    public static void checkHeader(CSVParser csv) {
+        final Set<String> header = csv.getHeaderMap().keySet();
+        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+    }
+
+    public static Answer parse(Stage stage, CSVRecord row) {
+        final String id = row.isSet("id") ? row.get("id") : null;
+        final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
+        final String type = row.isSet("type") ? row.get("type") : null;
+        final String workerId = row.get("worker_id");
+        final String taskId = row.get("task_id");
+        final String[] answers = row.isSet("answers") && !StringUtils.isEmpty(row.get("answers")) ? row.get("answers").split("\\|") : new String[0];
+        final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
 
-            return new Answer.Builder().
-                    setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
-                    setStage(stage.getId()).
-                    addAllTags(Arrays.asList(tags)).
-                    setDateTime(new Timestamp(StringUtils.isEmpty(datetime) ? System.currentTimeMillis() : Long.parseLong(datetime) * 1000L)).
-                    setType(StringUtils.defaultIfEmpty(type, AnswerDAO.ANSWER_TYPE_DEFAULT)).
-                    setWorkerId(Integer.valueOf(workerId)).
-                    setTaskId(Integer.valueOf(taskId)).
-                    addAllAnswers(Arrays.asList(answers)).
-                    build();
-        }).iterator();
+        return new Answer.Builder().
+                setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
+                setStage(stage.getId()).
+                addAllTags(Arrays.asList(tags)).
+                setDateTime(DateTimeUtils.fromEpochSecond(datetime)).
+                setType(StringUtils.defaultIfEmpty(type, AnswerDAO.ANSWER_TYPE_DEFAULT)).
+                setWorkerId(Integer.valueOf(workerId)).
+                setTaskId(Integer.valueOf(taskId)).
+                addAllAnswers(Arrays.asList(answers)).
+                build();
     }
 
     public static void write(Collection<Answer> answers, OutputStream output) throws IOException {
+        write(answers.stream().sorted(ORDER).iterator(), output);
+    }
+
+    /**
+     * Writes the answers in the order they are provided by the iterator without holding them in memory.
+     *
+     * @param answers answers.
+     * @param output output stream.
+     * @throws IOException in case of an I/O error.
+     */
+    public static void write(Iterator<Answer> answers, OutputStream output) throws IOException {
         try (final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
-            final Iterable<String[]> iterable = () -> answers.stream().sorted(ORDER).map(answer -> new String[]{
+            final Iterable<String[]> iterable = () -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(answers, Spliterator.ORDERED), false).map(answer -> new String[]{
                     Integer.toString(answer.getId()),                                 // id
                     answer.getStage(),                                                // stage
-                    Long.toString(answer.getDateTime().toInstant().getEpochSecond()), // datetime
+                    DateTimeUtils.toEpochSecond(answer.getDateTime()), // datetime
                     String.join("|", answer.getTags()),                               // tags
                     answer.getType(),                                                 // type
                     Integer.toString(answer.getTaskId()),                             // task_id
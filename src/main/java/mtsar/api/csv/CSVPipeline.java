@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.csv;
+
+import com.google.common.base.Throwables;
+import mtsar.api.ImportReport;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parallel CSV import. The calling thread splits the records into chunks, a shared pool of parsers turns them
+ * into objects, and the calling thread writes the parsed chunks in the order of the records. At most
+ * {@code capacity} chunks are in flight, so a slow database throttles the parsers and the reader instead
+ * of exhausting the heap. The parsers never wait for each other, so any number of imports can share the pool.
+ * <p>
+ * Once a record fails to parse nothing else is written, but the rest are still parsed to report all the errors
+ * with an {@link ImportException}. The import is meant to run in one transaction that the exception rolls back,
+ * so either all the records are stored or none of them.
+ *
+ * @param <T> type of the imported objects.
+ */
+public class CSVPipeline<T> {
+    public static final int CHUNK_SIZE = 1000;
+
+    private final ExecutorService executor;
+    private final Function<CSVRecord, T> parser;
+    private final Consumer<List<T>> writer;
+    private final int capacity;
+
+    public CSVPipeline(ExecutorService executor, Function<CSVRecord, T> parser, Consumer<List<T>> writer, int capacity) {
+        checkArgument(capacity > 0, "The capacity must be positive");
+        this.executor = requireNonNull(executor);
+        this.parser = requireNonNull(parser);
+        this.writer = requireNonNull(writer);
+        this.capacity = capacity;
+    }
+
+    public CSVPipeline(ExecutorService executor, Function<CSVRecord, T> parser, Consumer<List<T>> writer) {
+        this(executor, parser, writer, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Imports the records.
+     *
+     * @param csv the parsed CSV.
+     * @return the import report.
+     * @throws ImportException      if any record cannot be parsed.
+     * @throws InterruptedException if the calling thread has been interrupted.
+     */
+    public ImportReport run(CSVParser csv) throws InterruptedException {
+        final Deque<Future<Chunk<T>>> pending = new ArrayDeque<>(capacity);
+        final Map<Long, String> errors = new TreeMap<>();
+        long inserted = 0;
+
+        try {
+            List<CSVRecord> records = new ArrayList<>(CHUNK_SIZE);
+            final Iterator<CSVRecord> rows = csv.iterator();
+            while (rows.hasNext()) {
+                records.add(rows.next());
+                if (records.size() < CHUNK_SIZE && rows.hasNext()) continue;
+                if (pending.size() == capacity) inserted += write(pending.poll(), errors);
+                pending.add(submit(records));
+                records = new ArrayList<>(CHUNK_SIZE);
+            }
+            while (!pending.isEmpty()) inserted += write(pending.poll(), errors);
+        } finally {
+            for (final Future<Chunk<T>> future : pending) future.cancel(true);
+        }
+
+        if (!errors.isEmpty()) throw new ImportException(new ImportReport.Builder().setInserted(0).putAllErrors(errors).build());
+        return new ImportReport.Builder().setInserted(inserted).build();
+    }
+
+    private Future<Chunk<T>> submit(List<CSVRecord> records) {
+        return executor.submit(() -> {
+            final Chunk<T> chunk = new Chunk<>(records.size());
+            for (final CSVRecord row : records) {
+                try {
+                    chunk.objects.add(parser.apply(row));
+                } catch (RuntimeException e) {
+                    chunk.errors.put(row.getRecordNumber(), String.valueOf(e.getMessage()));
+                }
+            }
+            return chunk;
+        });
+    }
+
+    private long write(Future<Chunk<T>> future, Map<Long, String> errors) throws InterruptedException {
+        final Chunk<T> chunk;
+        try {
+            chunk = future.get();
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        errors.putAll(chunk.errors);
+        if (!errors.isEmpty()) return 0;
+        writer.accept(chunk.objects);
+        return chunk.objects.size();
+    }
+
+    private static final class Chunk<T> {
+        private final List<T> objects;
+        private final Map<Long, String> errors = new HashMap<>();
+
+        private Chunk(int size) {
+            objects = new ArrayList<>(size);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.csv;
+
+import mtsar.api.ImportReport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Rejected import, the report tells which records are invalid and why.
+ */
+public class ImportException extends RuntimeException {
+    private final ImportReport report;
+
+    public ImportException(ImportReport report) {
+        super(String.format("%d records have been rejected", report.getErrors().size()));
+        this.report = requireNonNull(report);
+    }
+
+    public ImportReport getReport() {
+        return report;
+    }
+}
@@ -20,6 +20,7 @@ import com.google.common.collect.Sets;
 import mtsar.api.Stage;
 import mtsar.api.Task;
 import mtsar.api.sql.TaskDAO;
+import mtsar.util.DateTimeUtils;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -30,7 +31,6 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.stream.StreamSupport;
 
@@ -42,37 +42,54 @@ public final class TaskCSV {
     private static final Comparator<Task> ORDER = (t1, t2) -> t1.getId().compareTo(t2.getId());
 
     public static Iterator<Task> parse(Stage stage, CSVParser csv) {
-        final Set<String> header = csv.getHeaderMap().keySet();
-        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+        checkHeader(csv);
 
         final Iterable<CSVRecord> iterable = csv::iterator;
 
-        return StreamSupport.stream(iterable.spliterator(), false).map(row -> {
-            final String id = row.isSet("id") ? row.get("id") : null;
-            final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
-            final String type = row.get("type");
-            final String description = row.isSet("description") ? row.get("description") : null;
-            final String[] answers = row.isSet("answers") && !StringUtils.isEmpty(row.get("answers")) ? row.get("answers").split("\\|") : new String[0];
-            final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
+        return StreamSupport.stream(iterable.spliterator(), false).map(row -> parse(stage, row)).iterator();
+    }
+
+    public static void checkHeader(CSVParser csv) {
+        final Set<String> header = csv.getHeaderMap().keySet();
+        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+    }
+
+    public static Task parse(Stage stage, CSVRecord row) {
+        final String id = row.isSet("id") ? row.get("id") : null;
+        final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
+        final String type = row.get("type");
+        final String description = row.isSet("description") ? row.get("description") : null;
+        final String[] answers = row.isSet("answers") && !StringUtils.isEmpty(row.get("answers")) ? row.get("answers").split("\\|") : new String[0];
+        final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
 
-            return new Task.Builder().
-                    setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
-                    setStage(stage.getId()).
-                    addAllTags(Arrays.asList(tags)).
-                    setDateTime(new Timestamp(StringUtils.isEmpty(datetime) ? System.currentTimeMillis() : Long.parseLong(datetime) * 1000L)).
-                    setType(StringUtils.defaultIfEmpty(type, TaskDAO.TASK_TYPE_SINGLE)).
-                    setDescription(description).
-                    addAllAnswers(Arrays.asList(answers)).
-                    build();
-        }).iterator();
+        return new Task.Builder().
+                setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
+                setStage(stage.getId()).
+                addAllTags(Arrays.asList(tags)).
+                setDateTime(DateTimeUtils.fromEpochSecond(datetime)).
+                setType(StringUtils.defaultIfEmpty(type, TaskDAO.TASK_TYPE_SINGLE)).
+                setDescription(description).
+                addAllAnswers(Arrays.asList(answers)).
+                build();
     }
 
     public static void write(Collection<Task> tasks, OutputStream output) throws IOException {
+        write(tasks.stream().sorted(ORDER).iterator(), output);
+    }
+
+    /**
+     * Writes the tasks in the order they are provided by the iterator without holding them in memory.
+     *
+     * @param tasks tasks.
+     * @param output output stream.
+     * @throws IOException in case of an I/O error.
+     */
+    public static void write(Iterator<Task> tasks, OutputStream output) throws IOException {
         try (final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
-            final Iterable<String[]> iterable = () -> tasks.stream().sorted(ORDER).map(task -> new String[]{
+            final Iterable<String[]> iterable = () -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(tasks, Spliterator.ORDERED), false).map(task -> new String[]{
                     Integer.toString(task.getId()),                                 // id
                     task.getStage(),                                                // stage
-                    Long.toString(task.getDateTime().toInstant().getEpochSecond()), // datetime
+                    DateTimeUtils.toEpochSecond(task.getDateTime()), // datetime
                     String.join("|", task.getTags()),                               // tags
                     task.getType(),                                                 // type
                     task.getDescription(),                                          // description
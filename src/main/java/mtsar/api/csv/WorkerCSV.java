@@ -19,6 +19,7 @@ package mtsar.api.csv;
 import com.google.common.collect.Sets;
 import mtsar.api.Stage;
 import mtsar.api.Worker;
+import mtsar.util.DateTimeUtils;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -29,7 +30,6 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.stream.StreamSupport;
 
@@ -41,31 +41,48 @@ public final class WorkerCSV {
     private static final Comparator<Worker> ORDER = (w1, w2) -> w1.getId().compareTo(w2.getId());
 
     public static Iterator<Worker> parse(Stage stage, CSVParser csv) {
-        final Set<String> header = csv.getHeaderMap().keySet();
-        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+        checkHeader(csv);
 
         final Iterable<CSVRecord> iterable = csv::iterator;
 
-        return StreamSupport.stream(iterable.spliterator(), false).map(row -> {
-            final String id = row.isSet("id") ? row.get("id") : null;
-            final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
-            final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
+        return StreamSupport.stream(iterable.spliterator(), false).map(row -> parse(stage, row)).iterator();
+    }
+
+    public static void checkHeader(CSVParser csv) {
+        final Set<String> header = csv.getHeaderMap().keySet();
+        checkArgument(!Sets.intersection(header, Sets.newHashSet(HEADER)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+    }
+
+    public static Worker parse(Stage stage, CSVRecord row) {
+        final String id = row.isSet("id") ? row.get("id") : null;
+        final String[] tags = row.isSet("tags") && !StringUtils.isEmpty(row.get("tags")) ? row.get("tags").split("\\|") : new String[0];
+        final String datetime = row.isSet("datetime") ? row.get("datetime") : null;
 
-            return new Worker.Builder().
-                    setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
-                    setStage(stage.getId()).
-                    addAllTags(Arrays.asList(tags)).
-                    setDateTime(new Timestamp(StringUtils.isEmpty(datetime) ? System.currentTimeMillis() : Long.parseLong(datetime) * 1000L)).
-                    build();
-        }).iterator();
+        return new Worker.Builder().
+                setId(StringUtils.isEmpty(id) ? null : Integer.valueOf(id)).
+                setStage(stage.getId()).
+                addAllTags(Arrays.asList(tags)).
+                setDateTime(DateTimeUtils.fromEpochSecond(datetime)).
+                build();
     }
 
     public static void write(Collection<Worker> workers, OutputStream output) throws IOException {
+        write(workers.stream().sorted(ORDER).iterator(), output);
+    }
+
+    /**
+     * Writes the workers in the order they are provided by the iterator without holding them in memory.
+     *
+     * @param workers workers.
+     * @param output output stream.
+     * @throws IOException in case of an I/O error.
+     */
+    public static void write(Iterator<Worker> workers, OutputStream output) throws IOException {
         try (final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
-            final Iterable<String[]> iterable = () -> workers.stream().sorted(ORDER).map(worker -> new String[]{
+            final Iterable<String[]> iterable = () -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(workers, Spliterator.ORDERED), false).map(worker -> new String[]{
                     Integer.toString(worker.getId()),                                 // id
                     worker.getStage(),                                                // stage
-                    Long.toString(worker.getDateTime().toInstant().getEpochSecond()), // datetime
+                    DateTimeUtils.toEpochSecond(worker.getDateTime()), // datetime
                     String.join("|", worker.getTags()),                               // tags
             }).iterator();
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerAggregationDAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+final class MemoryAnswerAggregationDAO extends MemoryDAO<AnswerAggregationDAO> implements AnswerAggregationDAO {
+    private static final String KIND = "aggregations";
+
+    MemoryAnswerAggregationDAO(MemoryStorage storage) {
+        super(storage);
+    }
+
+    @Override
+    protected AnswerAggregationDAO self() {
+        return this;
+    }
+
+    @Override
+    public List<AnswerAggregation> listForStage(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final List<AnswerAggregation> aggregations = new ArrayList<>();
+            for (final Int2ObjectMap.Entry<StageTables.Aggregation> entry : tables.aggregations.int2ObjectEntrySet()) {
+                final StageTables.Aggregation aggregation = entry.getValue();
+                final Task task = tables.tasks.get(entry.getIntKey());
+                if (task == null || !aggregation.model.equals(model) || !aggregation.version.equals(version)) continue;
+                aggregations.add(new AnswerAggregation.Builder().
+                        setType(aggregation.type).
+                        setTask(task).
+                        addAllAnswers(aggregation.answers).
+                        addAllConfidences(aggregation.confidences).
+                        build());
+            }
+            return aggregations;
+        });
+    }
+
+    @Override
+    public void insert(String stage, String model, String version, List<Integer> taskIds, List<String> types,
+                       List<String> answers, List<String> confidences) {
+        final StageTables tables = storage.existing(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (int i = 0; i < taskIds.size(); i++) {
+                tables.putAggregation(taskIds.get(i), new StageTables.Aggregation(model, version, types.get(i),
+                        StageTables.elements(answers.get(i)),
+                        StageTables.elements(confidences.get(i)).stream().map(Double::valueOf).collect(Collectors.toList())));
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public boolean isComputed(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.isComputed(KIND, model, version));
+    }
+
+    @Override
+    public void insertComputation(String stage, String model, String version) {
+        final StageTables tables = storage.existing(stage);
+        tables.write(() -> tables.putComputation(KIND, new StageTables.Computation(model, version)));
+    }
+
+    @Override
+    public void deleteOutdated(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int taskId : tables.aggregations.keySet().toIntArray()) {
+                final StageTables.Aggregation aggregation = tables.aggregations.get(taskId);
+                if (!aggregation.model.equals(model) || !aggregation.version.equals(version)) tables.removeAggregation(taskId);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public void deleteAll(String stage) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int taskId : tables.aggregations.keySet().toIntArray()) tables.removeAggregation(taskId);
+            return null;
+        }));
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import com.google.common.hash.Hashing;
+import mtsar.api.Answer;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.api.sql.WorkerDAO;
+import mtsar.util.DateTimeUtils;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.util.*;
+
+final class MemoryAnswerDAO extends MemoryDAO<AnswerDAO> implements AnswerDAO {
+    private static final Comparator<Answer> BY_TASK = Comparator.comparing(Answer::getTaskId).thenComparing(Answer::getId);
+    private final TaskDAO taskDAO;
+    private final WorkerDAO workerDAO;
+
+    MemoryAnswerDAO(MemoryStorage storage, TaskDAO taskDAO, WorkerDAO workerDAO) {
+        super(storage);
+        this.taskDAO = taskDAO;
+        this.workerDAO = workerDAO;
+    }
+
+    @Override
+    protected AnswerDAO self() {
+        return this;
+    }
+
+    @Override
+    public List<Answer> listForStage(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> new ArrayList<>(tables.answers.values()));
+    }
+
+    @Override
+    public List<Answer> listForStage(String stage, int after, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> StageTables.list(tables.answers.tailMap(after + 1).values(), limit));
+    }
+
+    /**
+     * The stored answers are already in memory, so they are returned as is.
+     */
+    @Override
+    public List<Answer> listForProcessing(String stage) {
+        return listForStage(stage);
+    }
+
+    @Override
+    public ResultIterator<Answer> streamForProcessing(String stage, int after, int[] lows, int[] highs) {
+        final StageTables tables = storage.tables(stage);
+        return new SnapshotIterator<>(tables.read(() -> {
+            final List<Answer> answers = new ArrayList<>();
+            for (int i = 0; i < lows.length; i++) answers.addAll(tables.answers.subMap(lows[i], Math.min(highs[i], after) + 1).values());
+            answers.addAll(tables.answers.tailMap(after + 1).values());
+            return answers;
+        }));
+    }
+
+    @Override
+    public ResultIterator<Answer> streamForStage(String stage, int after) {
+        return new SnapshotIterator<>(listForStage(stage, after, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public ResultIterator<Answer> streamForStageByTask(String stage) {
+        final List<Answer> answers = listForStage(stage);
+        answers.sort(BY_TASK);
+        return new SnapshotIterator<>(answers);
+    }
+
+    @Override
+    public List<Answer> listForSample(String stage, long seed, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final List<Answer> answers = new ArrayList<>();
+            final int start = Hashing.murmur3_32().hashLong(seed).asInt();
+            tables.tasks.keySet().stream().
+                    sorted(Comparator.comparing((Integer id) -> Hashing.murmur3_32().hashInt(id).asInt() < start).
+                            thenComparing(id -> Hashing.murmur3_32().hashInt(id).asInt()).
+                            thenComparing(Comparator.naturalOrder())).
+                    limit(limit).
+                    forEach(id -> answers.addAll(tables.answers(tables.answersByTask.get((int) id), 0, Integer.MAX_VALUE)));
+            answers.removeIf(answer -> !ANSWER_TYPE_ANSWER.equals(answer.getType()));
+            return answers;
+        });
+    }
+
+    @Override
+    public List<Answer> listForTask(Integer taskId, String stage) {
+        return listForTask(taskId, stage, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Answer> listForTask(Integer taskId, String stage, int after, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.answers(tables.answersByTask.get((int) taskId), after, limit));
+    }
+
+    @Override
+    public List<Answer> listForWorker(Integer workerId, String stage) {
+        return listForWorker(workerId, stage, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Answer> listForWorker(Integer workerId, String stage, int after, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.answers(tables.answersByWorker.get((int) workerId), after, limit));
+    }
+
+    @Override
+    public Answer find(Integer id, String stage) {
+        if (id == null) return null;
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.answers.get((int) id));
+    }
+
+    @Override
+    public Answer findByWorkerAndTask(String stage, Integer workerId, Integer taskId) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final long key = StageTables.key(workerId, taskId);
+            return tables.answersByWorkerAndTask.containsKey(key) ? tables.answers.get(tables.answersByWorkerAndTask.get(key)) : null;
+        });
+    }
+
+    @Override
+    public int insert(Answer a) {
+        return storage.inTransaction(status -> {
+            final Answer answer = new Answer.Builder().mergeFrom(a).setId(storage.answerSequence.incrementAndGet()).buildRaw();
+            store(answer);
+            return answer.getId();
+        });
+    }
+
+    @Override
+    public int[] insert(Iterator<Answer> answers) {
+        return storage.inTransaction(status -> {
+            final List<Integer> counts = new ArrayList<>();
+            while (answers.hasNext()) {
+                final Answer a = answers.next();
+                store(a.getId() != null ? a : new Answer.Builder().mergeFrom(a).setId(storage.answerSequence.incrementAndGet()).buildRaw());
+                counts.add(1);
+            }
+            return counts.stream().mapToInt(Integer::intValue).toArray();
+        });
+    }
+
+    private void store(Answer answer) {
+        final StageTables tables = storage.existing(answer.getStage());
+        if (!tables.write(() -> tables.putAnswer(answer)))
+            throw new IllegalArgumentException("Duplicate answer of worker " + answer.getWorkerId() + " to task " + answer.getTaskId());
+    }
+
+    /**
+     * Stores the answers that do not conflict with the already stored ones.
+     */
+    @Override
+    public List<Answer> insertUnique(Collection<Answer> answers) {
+        return storage.inTransaction(status -> {
+            final List<Answer> inserted = new ArrayList<>();
+            for (final Answer a : answers) {
+                final Answer answer = new Answer.Builder().
+                        mergeFrom(a).
+                        setId(storage.answerSequence.incrementAndGet()).
+                        setDateTime(a.getDateTime() == null ? DateTimeUtils.now() : a.getDateTime()).
+                        build();
+                final StageTables tables = storage.existing(answer.getStage());
+                if (tables.write(() -> tables.putAnswer(answer))) inserted.add(answer);
+            }
+            return inserted;
+        });
+    }
+
+    @Override
+    public TaskDAO taskDAO() {
+        return taskDAO;
+    }
+
+    @Override
+    public WorkerDAO workerDAO() {
+        return workerDAO;
+    }
+
+    @Override
+    public int count() {
+        return storage.count(tables -> tables.answers.size());
+    }
+
+    @Override
+    public int count(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(tables.answers::size);
+    }
+
+    @Override
+    public String version(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(tables::version);
+    }
+
+    @Override
+    public void invalidate(String stage) {
+        final StageTables tables = storage.tables(stage);
+        tables.write(() -> tables.epoch++);
+    }
+
+    @Override
+    public String epoch(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> Long.toString(tables.epoch));
+    }
+
+    @Override
+    public int lastId() {
+        return storage.answerSequence.get();
+    }
+
+    /**
+     * The answer identifiers are allocated only inside the transactions, so the running ones
+     * bound the identifiers that can still appear, just like in the SQL storage.
+     */
+    @Override
+    public String snapshot() {
+        return storage.snapshot();
+    }
+
+    @Override
+    public void delete(Integer id, String stage) {
+        if (id == null) return;
+        final StageTables tables = storage.tables(stage);
+        tables.write(() -> tables.removeAnswer(id));
+    }
+
+    @Override
+    public void deleteAll(String stage) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int id : tables.answers.keySet().toIntArray()) tables.removeAnswer(id);
+            return null;
+        }));
+    }
+
+    /**
+     * Removes the answers at once, as there is no table to detach.
+     *
+     * @param stage the stage name.
+     * @return null, since nothing is left to purge.
+     */
+    @Override
+    public String detach(String stage) {
+        deleteAll(stage);
+        return null;
+    }
+
+    @Override
+    public void deleteAll() {
+        storage.tables.keySet().forEach(this::deleteAll);
+    }
+
+    @Override
+    public void resetSequence() {
+        storage.resetSequence(storage.answerSequence, tables -> tables.answers.isEmpty() ? 0 : tables.answers.lastIntKey());
+    }
+}
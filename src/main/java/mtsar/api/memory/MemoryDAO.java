@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+
+/**
+ * The transactional part of the in-memory DAOs, the transactions are managed by {@link MemoryStorage}.
+ *
+ * @param <T> the DAO type.
+ */
+abstract class MemoryDAO<T extends Transactional<T>> implements Transactional<T> {
+    protected final MemoryStorage storage;
+
+    MemoryDAO(MemoryStorage storage) {
+        this.storage = storage;
+    }
+
+    protected abstract T self();
+
+    @Override
+    public void begin() {
+        storage.begin();
+    }
+
+    @Override
+    public void commit() {
+        storage.commit();
+    }
+
+    @Override
+    public void rollback() {
+        storage.rollback();
+    }
+
+    @Override
+    public void checkpoint(String name) {
+        storage.checkpoint(name);
+    }
+
+    @Override
+    public void release(String name) {
+        storage.release(name);
+    }
+
+    @Override
+    public void rollback(String name) {
+        storage.rollback(name);
+    }
+
+    @Override
+    public <R> R inTransaction(Transaction<R, T> func) {
+        return storage.inTransaction(status -> func.inTransaction(self(), status));
+    }
+
+    @Override
+    public <R> R inTransaction(TransactionIsolationLevel isolation, Transaction<R, T> func) {
+        return inTransaction(func);
+    }
+
+    /**
+     * The in-memory transactions take the write locks only when they write, so this does nothing.
+     */
+    public void setReadOnly() {
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import mtsar.api.Stage;
+import mtsar.api.sql.StageDAO;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the stage definitions and creates the stage data on insertion, just like the partitioning triggers do.
+ */
+final class MemoryStageDAO implements StageDAO {
+    private final MemoryStorage storage;
+
+    MemoryStageDAO(MemoryStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public Stage.Definition find(String id) {
+        return id == null ? null : storage.stages.get(id);
+    }
+
+    @Override
+    public List<Stage.Definition> select() {
+        return storage.stages.values().stream().
+                sorted(Comparator.comparing(Stage.Definition::getDateTime)).
+                collect(Collectors.toList());
+    }
+
+    @Override
+    public int count() {
+        return storage.stages.size();
+    }
+
+    @Override
+    public String insert(Stage.Definition definition) {
+        if (storage.stages.putIfAbsent(definition.getId(), definition) != null)
+            throw new IllegalArgumentException("Duplicate stage: " + definition.getId());
+        storage.tables.put(definition.getId(), new StageTables(storage));
+        return definition.getId();
+    }
+
+    @Override
+    public void update(Stage.Definition definition) {
+        storage.stages.computeIfPresent(definition.getId(), (id, previous) -> new Stage.Definition.Builder().
+                mergeFrom(definition).
+                setDateTime(previous.getDateTime()).
+                build());
+    }
+
+    @Override
+    public void delete(String id) {
+        storage.tables.remove(id);
+        storage.stages.remove(id);
+    }
+
+    @Override
+    public void deleteAll() {
+        storage.tables.clear();
+        storage.stages.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import com.google.common.collect.ImmutableMap;
+import mtsar.api.Stage;
+import mtsar.api.Storage;
+import mtsar.api.sql.*;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.TransactionFailedException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the stages and their data in memory, so the API and the processors can be run and benchmarked
+ * without a database. The data of every stage are guarded by its own read-write lock, and every
+ * transaction keeps its own undo log, so the transactions run concurrently and are undone on failure.
+ * A transaction keeps the write lock of every stage it has changed until it ends, so its uncommitted
+ * changes are seen by nobody else and its rollback cannot interleave with the other writers.
+ * The transactions writing several stages have to write them in the same order.
+ */
+public class MemoryStorage implements Storage {
+    final ConcurrentMap<String, Stage.Definition> stages = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, StageTables> tables = new ConcurrentHashMap<>();
+    final AtomicInteger workerSequence = new AtomicInteger();
+    final AtomicInteger taskSequence = new AtomicInteger();
+    final AtomicInteger answerSequence = new AtomicInteger();
+    private final ThreadLocal<UndoLog> undo = new ThreadLocal<>();
+    /* the identifiers of the running transactions, guarded by itself */
+    private final SortedSet<Long> running = new TreeSet<>();
+    private long transactionSequence;
+    private final Map<Class<?>, Object> daos;
+
+    public MemoryStorage() {
+        final MemoryWorkerDAO workerDAO = new MemoryWorkerDAO(this);
+        final MemoryTaskDAO taskDAO = new MemoryTaskDAO(this);
+        daos = ImmutableMap.<Class<?>, Object>builder().
+                put(StageDAO.class, new MemoryStageDAO(this)).
+                put(WorkerDAO.class, workerDAO).
+                put(TaskDAO.class, taskDAO).
+                put(AnswerDAO.class, new MemoryAnswerDAO(this, taskDAO, workerDAO)).
+                put(AnswerAggregationDAO.class, new MemoryAnswerAggregationDAO(this)).
+                put(WorkerRankingDAO.class, new MemoryWorkerRankingDAO(this)).
+                build();
+    }
+
+    @Override
+    public <T> T onDemand(Class<T> dao) {
+        final Object instance = daos.get(dao);
+        if (instance == null) throw new IllegalArgumentException("The in-memory storage does not provide " + dao.getName());
+        return dao.cast(instance);
+    }
+
+    /**
+     * Provides the data of the given stage; the data of an absent stage are empty and not retained.
+     *
+     * @param stage the stage identifier.
+     * @return the stage data.
+     */
+    StageTables tables(String stage) {
+        final StageTables data = tables.get(stage);
+        return data == null ? new StageTables(this) : data;
+    }
+
+    StageTables existing(String stage) {
+        final StageTables data = tables.get(stage);
+        if (data == null) throw new IllegalArgumentException("No such stage: " + stage);
+        return data;
+    }
+
+    int count(ToIntFunction<StageTables> counter) {
+        return tables.values().stream().mapToInt(data -> data.read(() -> counter.applyAsInt(data))).sum();
+    }
+
+    /**
+     * Sets the sequence to the maximal identifier used in any stage, just like the resetSequence statements do.
+     */
+    void resetSequence(AtomicInteger sequence, ToIntFunction<StageTables> max) {
+        sequence.set(tables.values().stream().mapToInt(data -> data.read(() -> max.applyAsInt(data))).max().orElse(0));
+    }
+
+    /**
+     * Keeps the lock acquired by the current transaction until the transaction ends.
+     *
+     * @param lock the acquired lock.
+     * @return whether the lock is kept, otherwise the caller releases it.
+     */
+    boolean hold(Lock lock) {
+        final UndoLog log = undo.get();
+        return log != null && log.locks.add(lock);
+    }
+
+    /**
+     * Describes the running transactions other than the current one in the txid_current_snapshot() format.
+     *
+     * @return the snapshot.
+     */
+    String snapshot() {
+        final UndoLog log = undo.get();
+        synchronized (running) {
+            final long xmax = transactionSequence + 1;
+            final List<Long> xip = running.stream().filter(id -> log == null || id != log.id).collect(Collectors.toList());
+            final long xmin = xip.isEmpty() ? xmax : xip.get(0);
+            return xmin + ":" + xmax + ":" + xip.stream().map(String::valueOf).collect(Collectors.joining(","));
+        }
+    }
+
+    void logUndo(Runnable action) {
+        final UndoLog log = undo.get();
+        if (log != null && !log.undoing) log.actions.push(action);
+    }
+
+    @FunctionalInterface
+    interface Callback<R> {
+        R call(TransactionStatus status) throws Exception;
+    }
+
+    /**
+     * Runs the callback in a transaction, the nested transactions are joined to the outer one.
+     *
+     * @param callback the callback.
+     * @param <R>      the result type.
+     * @return the callback result.
+     * @throws TransactionFailedException if the callback has thrown a checked exception or
+     *                                    has marked the transaction as rollback only.
+     */
+    <R> R inTransaction(Callback<R> callback) {
+        begin();
+        final Status status = new Status();
+        final R result;
+        try {
+            result = callback.call(status);
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        } catch (Exception e) {
+            rollback();
+            throw new TransactionFailedException("Transaction failed due to exception being thrown from within the callback", e);
+        }
+        if (status.rollbackOnly) {
+            rollback();
+            throw new TransactionFailedException("Transaction failed due to transaction status being set to rollback only");
+        }
+        commit();
+        return result;
+    }
+
+    void begin() {
+        if (undo.get() == null) {
+            final UndoLog log = new UndoLog();
+            synchronized (running) {
+                log.id = ++transactionSequence;
+                running.add(log.id);
+            }
+            undo.set(log);
+        }
+        undo.get().depth++;
+    }
+
+    void commit() {
+        final UndoLog log = current();
+        if (--log.depth == 0) finish(log);
+    }
+
+    /**
+     * Undoes the changes of the outermost transaction. A failed nested transaction discards
+     * the outer one as well; use the savepoints to undo a part of the transaction.
+     */
+    void rollback() {
+        final UndoLog log = current();
+        log.undo(0);
+        log.savepoints.clear();
+        if (--log.depth == 0) finish(log);
+    }
+
+    private void finish(UndoLog log) {
+        undo.remove();
+        for (final Lock lock : log.locks) lock.unlock();
+        synchronized (running) {
+            running.remove(log.id);
+        }
+    }
+
+    void checkpoint(String name) {
+        final UndoLog log = current();
+        log.savepoints.put(name, log.actions.size());
+    }
+
+    void release(String name) {
+        if (current().savepoints.remove(name) == null) throw new IllegalArgumentException("No such savepoint: " + name);
+    }
+
+    /**
+     * Undoes the changes made since the savepoint, which remains usable, and discards the later savepoints.
+     */
+    void rollback(String name) {
+        final UndoLog log = current();
+        final Integer size = log.savepoints.get(name);
+        if (size == null) throw new IllegalArgumentException("No such savepoint: " + name);
+        log.undo(size);
+        log.savepoints.values().removeIf(savepoint -> savepoint > size);
+    }
+
+    private UndoLog current() {
+        final UndoLog log = undo.get();
+        if (log == null) throw new IllegalStateException("No transaction in progress");
+        return log;
+    }
+
+    private static class UndoLog {
+        private final Deque<Runnable> actions = new ArrayDeque<>();
+        private final Map<String, Integer> savepoints = new HashMap<>();
+        private final Set<Lock> locks = new LinkedHashSet<>();
+        private long id;
+        private int depth;
+        private boolean undoing;
+
+        /* the undo actions make the changes themselves, which must not be logged again */
+        private void undo(int size) {
+            undoing = true;
+            try {
+                while (actions.size() > size) actions.pop().run();
+            } finally {
+                undoing = false;
+            }
+        }
+    }
+
+    private static class Status implements TransactionStatus {
+        private boolean rollbackOnly;
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+    }
+}
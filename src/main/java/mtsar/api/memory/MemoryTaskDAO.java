@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import mtsar.api.Answer;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import org.apache.commons.lang3.tuple.Pair;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class MemoryTaskDAO extends MemoryDAO<TaskDAO> implements TaskDAO {
+    MemoryTaskDAO(MemoryStorage storage) {
+        super(storage);
+    }
+
+    @Override
+    protected TaskDAO self() {
+        return this;
+    }
+
+    @Override
+    public List<Task> listForStage(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> new ArrayList<>(tables.tasks.values()));
+    }
+
+    @Override
+    public List<Task> listForStage(String stage, int after, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> StageTables.list(tables.tasks.tailMap(after + 1).values(), limit));
+    }
+
+    @Override
+    public ResultIterator<Task> streamForStage(String stage) {
+        return new SnapshotIterator<>(listForStage(stage));
+    }
+
+    @Override
+    public Task find(Integer id, String stage) {
+        if (id == null) return null;
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.tasks.get((int) id));
+    }
+
+    /**
+     * The stored tasks are already in memory, so they are returned as is.
+     */
+    @Override
+    public List<Task> listForProcessing(String stage) {
+        return listForStage(stage);
+    }
+
+    @Override
+    public List<Task> select(List<Integer> ids, String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final List<Task> tasks = new ArrayList<>(ids.size());
+            for (final Integer id : ids) {
+                final Task task = tables.tasks.get((int) id);
+                if (task != null) tasks.add(task);
+            }
+            return tasks;
+        });
+    }
+
+    @Override
+    public Task random(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            if (tables.tasks.isEmpty()) return null;
+            final int[] ids = tables.tasks.keySet().toIntArray();
+            return tables.tasks.get(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+        });
+    }
+
+    @Override
+    public int count() {
+        return storage.count(tables -> tables.tasks.size());
+    }
+
+    @Override
+    public int count(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(tables.tasks::size);
+    }
+
+    @Override
+    public int remaining(String stage, Integer workerId) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final IntSortedSet answered = tables.answersByWorker.get((int) workerId);
+            return tables.tasks.size() - (answered == null ? 0 : answered.size());
+        });
+    }
+
+    @Override
+    public List<Pair<Integer, Integer>> listCounts(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final List<Pair<Integer, Integer>> counts = new ArrayList<>(tables.tasks.size());
+            for (final int id : tables.tasks.keySet()) {
+                final IntSortedSet ids = tables.answersByTask.get(id);
+                int count = 0;
+                if (ids != null) for (final int answerId : ids) {
+                    final Answer answer = tables.answers.get(answerId);
+                    if (!AnswerDAO.ANSWER_TYPE_SKIP.equals(answer.getType())) count++;
+                }
+                counts.add(Pair.of(id, count));
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public int insert(Task t) {
+        final Task task = new Task.Builder().mergeFrom(t).setId(storage.taskSequence.incrementAndGet()).buildRaw();
+        final StageTables tables = storage.existing(task.getStage());
+        tables.write(() -> tables.putTask(task));
+        return task.getId();
+    }
+
+    @Override
+    public void insert(Iterator<Task> tasks) {
+        storage.inTransaction(status -> {
+            while (tasks.hasNext()) {
+                final Task t = tasks.next();
+                final Task task = t.getId() != null ? t : new Task.Builder().mergeFrom(t).setId(storage.taskSequence.incrementAndGet()).buildRaw();
+                final StageTables tables = storage.existing(task.getStage());
+                tables.write(() -> tables.putTask(task));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(Integer id, String stage) {
+        if (id == null) return;
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            tables.removeAnswers(tables.answersByTask.get(id));
+            tables.removeTask(id);
+            return null;
+        }));
+    }
+
+    @Override
+    public void deleteAll(String stage) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int id : tables.tasks.keySet().toIntArray()) tables.removeTask(id);
+            return null;
+        }));
+    }
+
+    /**
+     * Removes the tasks at once, as there is no table to detach.
+     *
+     * @param stage the stage name.
+     * @return null, since nothing is left to purge.
+     */
+    @Override
+    public String detach(String stage) {
+        deleteAll(stage);
+        return null;
+    }
+
+    @Override
+    public void deleteAll() {
+        storage.tables.keySet().forEach(this::deleteAll);
+    }
+
+    @Override
+    public void resetSequence() {
+        storage.resetSequence(storage.taskSequence, tables -> tables.tasks.isEmpty() ? 0 : tables.tasks.lastIntKey());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import mtsar.api.Worker;
+import mtsar.api.sql.WorkerDAO;
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+final class MemoryWorkerDAO extends MemoryDAO<WorkerDAO> implements WorkerDAO {
+    MemoryWorkerDAO(MemoryStorage storage) {
+        super(storage);
+    }
+
+    @Override
+    protected WorkerDAO self() {
+        return this;
+    }
+
+    @Override
+    public List<Worker> listForStage(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> new ArrayList<>(tables.workers.values()));
+    }
+
+    @Override
+    public List<Worker> listForStage(String stage, int after, int limit) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> StageTables.list(tables.workers.tailMap(after + 1).values(), limit));
+    }
+
+    @Override
+    public ResultIterator<Worker> streamForStage(String stage) {
+        return new SnapshotIterator<>(listForStage(stage));
+    }
+
+    @Override
+    public Worker find(Integer id, String stage) {
+        if (id == null) return null;
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.workers.get((int) id));
+    }
+
+    @Override
+    public Worker findByTags(String stage, List<String> tags) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.workers.values().stream().
+                filter(worker -> worker.getTags().containsAll(tags)).
+                findFirst().orElse(null));
+    }
+
+    @Override
+    public int insert(Worker t) {
+        final Worker worker = new Worker.Builder().mergeFrom(t).setId(storage.workerSequence.incrementAndGet()).buildRaw();
+        final StageTables tables = storage.existing(worker.getStage());
+        tables.write(() -> tables.putWorker(worker));
+        return worker.getId();
+    }
+
+    @Override
+    public void insert(Iterator<Worker> workers) {
+        storage.inTransaction(status -> {
+            while (workers.hasNext()) {
+                final Worker t = workers.next();
+                final Worker worker = t.getId() != null ? t : new Worker.Builder().mergeFrom(t).setId(storage.workerSequence.incrementAndGet()).buildRaw();
+                final StageTables tables = storage.existing(worker.getStage());
+                tables.write(() -> tables.putWorker(worker));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int count() {
+        return storage.count(tables -> tables.workers.size());
+    }
+
+    @Override
+    public int count(String stage) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(tables.workers::size);
+    }
+
+    @Override
+    public void delete(Integer id, String stage) {
+        if (id == null) return;
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            tables.removeAnswers(tables.answersByWorker.get(id));
+            tables.removeWorker(id);
+            return null;
+        }));
+    }
+
+    @Override
+    public void deleteAll(String stage) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int id : tables.workers.keySet().toIntArray()) tables.removeWorker(id);
+            return null;
+        }));
+    }
+
+    @Override
+    public void deleteAll() {
+        storage.tables.keySet().forEach(this::deleteAll);
+    }
+
+    @Override
+    public void resetSequence() {
+        storage.resetSequence(storage.workerSequence, tables -> tables.workers.isEmpty() ? 0 : tables.workers.lastIntKey());
+    }
+}
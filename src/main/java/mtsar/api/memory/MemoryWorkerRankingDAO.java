@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import mtsar.api.Worker;
+import mtsar.api.WorkerRanking;
+import mtsar.api.sql.WorkerRankingDAO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class MemoryWorkerRankingDAO extends MemoryDAO<WorkerRankingDAO> implements WorkerRankingDAO {
+    private static final String KIND = "rankings";
+
+    MemoryWorkerRankingDAO(MemoryStorage storage) {
+        super(storage);
+    }
+
+    @Override
+    protected WorkerRankingDAO self() {
+        return this;
+    }
+
+    @Override
+    public List<WorkerRanking> listForStage(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> {
+            final List<WorkerRanking> rankings = new ArrayList<>();
+            for (final Int2ObjectMap.Entry<StageTables.Ranking> entry : tables.rankings.int2ObjectEntrySet()) {
+                final StageTables.Ranking ranking = entry.getValue();
+                final Worker worker = tables.workers.get(entry.getIntKey());
+                if (worker == null || !ranking.model.equals(model) || !ranking.version.equals(version)) continue;
+                rankings.add(new WorkerRanking.Builder().
+                        setType(ranking.type).
+                        setWorker(worker).
+                        setReputation(ranking.reputation).
+                        build());
+            }
+            return rankings;
+        });
+    }
+
+    @Override
+    public void insert(String stage, String model, String version, List<Integer> workerIds, List<String> types, List<Double> reputations) {
+        final StageTables tables = storage.existing(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (int i = 0; i < workerIds.size(); i++) {
+                tables.putRanking(workerIds.get(i), new StageTables.Ranking(model, version, types.get(i), reputations.get(i)));
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public boolean isComputed(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        return tables.read(() -> tables.isComputed(KIND, model, version));
+    }
+
+    @Override
+    public void insertComputation(String stage, String model, String version) {
+        final StageTables tables = storage.existing(stage);
+        tables.write(() -> tables.putComputation(KIND, new StageTables.Computation(model, version)));
+    }
+
+    @Override
+    public void deleteOutdated(String stage, String model, String version) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int workerId : tables.rankings.keySet().toIntArray()) {
+                final StageTables.Ranking ranking = tables.rankings.get(workerId);
+                if (!ranking.model.equals(model) || !ranking.version.equals(version)) tables.removeRanking(workerId);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public void deleteAll(String stage) {
+        final StageTables tables = storage.tables(stage);
+        storage.inTransaction(status -> tables.write(() -> {
+            for (final int workerId : tables.rankings.keySet().toIntArray()) tables.removeRanking(workerId);
+            return null;
+        }));
+    }
+}
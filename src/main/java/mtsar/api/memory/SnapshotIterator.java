@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import org.skife.jdbi.v2.ResultIterator;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterates over a snapshot of the records, there is nothing to release on closing.
+ *
+ * @param <T> the record type.
+ */
+final class SnapshotIterator<T> implements ResultIterator<T> {
+    private final Iterator<T> iterator;
+
+    SnapshotIterator(List<T> snapshot) {
+        this.iterator = snapshot.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return iterator.next();
+    }
+
+    @Override
+    public void close() {
+    }
+}
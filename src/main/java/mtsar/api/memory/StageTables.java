@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.memory;
+
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import mtsar.api.Answer;
+import mtsar.api.Task;
+import mtsar.api.Worker;
+import mtsar.util.PostgresUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * The workers, tasks, answers, aggregations and rankings of a single stage. The records are
+ * keyed by their identifiers in sorted primitive maps, and the answers are additionally indexed
+ * by the worker, by the task and by the pair of them. Every modification is recorded in the
+ * undo log of the current transaction, if there is one, which keeps the write lock until it ends.
+ * Every removal of the workers, tasks and answers increases the stage epoch; neither the removal
+ * nor the insertion being undone touches the epoch.
+ */
+final class StageTables {
+    private final MemoryStorage storage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    final Int2ObjectSortedMap<Worker> workers = new Int2ObjectAVLTreeMap<>();
+    final Int2ObjectSortedMap<Task> tasks = new Int2ObjectAVLTreeMap<>();
+    final Int2ObjectSortedMap<Answer> answers = new Int2ObjectAVLTreeMap<>();
+    final Int2ObjectMap<IntSortedSet> answersByWorker = new Int2ObjectOpenHashMap<>();
+    final Int2ObjectMap<IntSortedSet> answersByTask = new Int2ObjectOpenHashMap<>();
+    final Long2IntMap answersByWorkerAndTask = new Long2IntOpenHashMap();
+    final Int2ObjectMap<Aggregation> aggregations = new Int2ObjectOpenHashMap<>();
+    final Int2ObjectMap<Ranking> rankings = new Int2ObjectOpenHashMap<>();
+    final Map<String, Computation> computations = new HashMap<>();
+    long epoch;
+
+    StageTables(MemoryStorage storage) {
+        this.storage = storage;
+    }
+
+    <R> R read(Supplier<R> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    <R> R write(Supplier<R> update) {
+        lock.writeLock().lock();
+        try {
+            return update.get();
+        } finally {
+            if (!storage.hold(lock.writeLock())) lock.writeLock().unlock();
+        }
+    }
+
+    void write(Runnable update) {
+        write(() -> {
+            update.run();
+            return null;
+        });
+    }
+
+    private void undo(Runnable update) {
+        storage.logUndo(() -> write(update));
+    }
+
+    /**
+     * Provides the stage version in the same format as the SQL storage does.
+     *
+     * @return the stage version.
+     */
+    String version() {
+        return max(workers) + ":" + max(tasks) + ":" + max(answers) + ":" + epoch;
+    }
+
+    private static int max(Int2ObjectSortedMap<?> map) {
+        return map.isEmpty() ? 0 : map.lastIntKey();
+    }
+
+    static long key(int workerId, int taskId) {
+        return ((long) workerId << 32) | (taskId & 0xffffffffL);
+    }
+
+    static <T> List<T> list(Iterable<T> values, int limit) {
+        final List<T> list = new ArrayList<>();
+        for (final T value : values) {
+            if (list.size() == limit) break;
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Parses the array literal bound by the DAO callers. The stored lists end up in the value objects,
+     * which do not accept null elements, so the NULL elements are rejected here rather than on reading.
+     *
+     * @param array the array literal.
+     * @return the elements.
+     */
+    static List<String> elements(String array) {
+        final List<String> elements = PostgresUtils.parseArrayString(array);
+        if (elements.contains(null)) throw new IllegalArgumentException("NULL elements are not allowed: " + array);
+        return elements;
+    }
+
+    List<Answer> answers(IntSortedSet ids, int after, int limit) {
+        if (ids == null) return new ArrayList<>();
+        final List<Answer> list = new ArrayList<>();
+        final IntIterator iterator = ids.tailSet(after + 1).iterator();
+        while (iterator.hasNext() && list.size() < limit) list.add(answers.get(iterator.nextInt()));
+        return list;
+    }
+
+    void putWorker(Worker worker) {
+        final int id = worker.getId();
+        if (workers.containsKey(id)) throw new IllegalArgumentException("Duplicate worker: " + id);
+        workers.put(id, worker);
+        undo(() -> workers.remove(id));
+    }
+
+    /**
+     * Removes the worker, which no answer may refer to, just like the foreign key restricts.
+     *
+     * @param id the worker identifier.
+     */
+    void removeWorker(int id) {
+        final IntSortedSet ids = answersByWorker.get(id);
+        if (ids != null && !ids.isEmpty()) throw new IllegalArgumentException("The answers still refer to worker " + id);
+        final Ranking ranking = rankings.remove(id);
+        if (ranking != null) undo(() -> rankings.put(id, ranking));
+        final Worker worker = workers.remove(id);
+        if (worker == null) return;
+        epoch++;
+        undo(() -> workers.put(id, worker));
+    }
+
+    void putTask(Task task) {
+        final int id = task.getId();
+        if (tasks.containsKey(id)) throw new IllegalArgumentException("Duplicate task: " + id);
+        tasks.put(id, task);
+        undo(() -> tasks.remove(id));
+    }
+
+    /**
+     * Removes the task, which no answer may refer to, just like the foreign key restricts.
+     *
+     * @param id the task identifier.
+     */
+    void removeTask(int id) {
+        final IntSortedSet ids = answersByTask.get(id);
+        if (ids != null && !ids.isEmpty()) throw new IllegalArgumentException("The answers still refer to task " + id);
+        final Aggregation aggregation = aggregations.remove(id);
+        if (aggregation != null) undo(() -> aggregations.put(id, aggregation));
+        final Task task = tasks.remove(id);
+        if (task == null) return;
+        epoch++;
+        undo(() -> tasks.put(id, task));
+    }
+
+    /**
+     * Stores the answer unless the worker has already answered the task.
+     *
+     * @param answer the answer.
+     * @return whether the answer has been stored.
+     */
+    boolean putAnswer(Answer answer) {
+        final int id = answer.getId(), workerId = answer.getWorkerId(), taskId = answer.getTaskId();
+        if (!workers.containsKey(workerId)) throw new IllegalArgumentException("No such worker: " + workerId);
+        if (!tasks.containsKey(taskId)) throw new IllegalArgumentException("No such task: " + taskId);
+        if (answers.containsKey(id)) throw new IllegalArgumentException("Duplicate answer: " + id);
+        final long key = key(workerId, taskId);
+        if (answersByWorkerAndTask.containsKey(key)) return false;
+        index(answer);
+        undo(() -> unindex(answer));
+        return true;
+    }
+
+    void removeAnswers(IntSortedSet ids) {
+        if (ids != null) for (final int id : ids.toIntArray()) removeAnswer(id);
+    }
+
+    void removeAnswer(int id) {
+        final Answer answer = answers.get(id);
+        if (answer == null) return;
+        unindex(answer);
+        epoch++;
+        undo(() -> index(answer));
+    }
+
+    private void index(Answer answer) {
+        final int id = answer.getId();
+        answers.put(id, answer);
+        answersByWorkerAndTask.put(key(answer.getWorkerId(), answer.getTaskId()), id);
+        answersByWorker.computeIfAbsent((int) answer.getWorkerId(), k -> new IntAVLTreeSet()).add(id);
+        answersByTask.computeIfAbsent((int) answer.getTaskId(), k -> new IntAVLTreeSet()).add(id);
+    }
+
+    private void unindex(Answer answer) {
+        final int id = answer.getId();
+        answers.remove(id);
+        answersByWorkerAndTask.remove(key(answer.getWorkerId(), answer.getTaskId()));
+        answersByWorker.get((int) answer.getWorkerId()).remove(id);
+        answersByTask.get((int) answer.getTaskId()).remove(id);
+    }
+
+    void putAggregation(int taskId, Aggregation aggregation) {
+        if (!tasks.containsKey(taskId)) throw new IllegalArgumentException("No such task: " + taskId);
+        final Aggregation previous = aggregations.put(taskId, aggregation);
+        undo(() -> {
+            if (previous == null) aggregations.remove(taskId);
+            else aggregations.put(taskId, previous);
+        });
+    }
+
+    void removeAggregation(int taskId) {
+        final Aggregation aggregation = aggregations.remove(taskId);
+        if (aggregation != null) undo(() -> aggregations.put(taskId, aggregation));
+    }
+
+    void putRanking(int workerId, Ranking ranking) {
+        if (!workers.containsKey(workerId)) throw new IllegalArgumentException("No such worker: " + workerId);
+        final Ranking previous = rankings.put(workerId, ranking);
+        undo(() -> {
+            if (previous == null) rankings.remove(workerId);
+            else rankings.put(workerId, previous);
+        });
+    }
+
+    void removeRanking(int workerId) {
+        final Ranking ranking = rankings.remove(workerId);
+        if (ranking != null) undo(() -> rankings.put(workerId, ranking));
+    }
+
+    void putComputation(String kind, Computation computation) {
+        final Computation previous = computations.put(kind, computation);
+        undo(() -> {
+            if (previous == null) computations.remove(kind);
+            else computations.put(kind, previous);
+        });
+    }
+
+    boolean isComputed(String kind, String model, String version) {
+        final Computation computation = computations.get(kind);
+        return computation != null && computation.model.equals(model) && computation.version.equals(version);
+    }
+
+    static final class Computation {
+        final String model;
+        final String version;
+
+        Computation(String model, String version) {
+            this.model = model;
+            this.version = version;
+        }
+    }
+
+    static final class Aggregation {
+        final String model;
+        final String version;
+        final String type;
+        final List<String> answers;
+        final List<Double> confidences;
+
+        Aggregation(String model, String version, String type, List<String> answers, List<Double> confidences) {
+            this.model = model;
+            this.version = version;
+            this.type = type;
+            this.answers = answers;
+            this.confidences = confidences;
+        }
+    }
+
+    static final class Ranking {
+        final String model;
+        final String version;
+        final String type;
+        final double reputation;
+
+        Ranking(String model, String version, String type, double reputation) {
+            this.model = model;
+            this.version = version;
+            this.type = type;
+            this.reputation = reputation;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.sql;
+
+import mtsar.api.AnswerAggregation;
+import mtsar.util.PostgresUtils;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the answer aggregations computed by the stage aggregator, so they can be served
+ * without recomputation while the stage data remain unchanged.
+ */
+@RegisterMapper(AnswerAggregationDAO.Mapper.class)
+public interface AnswerAggregationDAO extends Transactional<AnswerAggregationDAO> {
+    @SqlQuery("select tasks.*, aggregations.type as aggregation_type, aggregations.answers as aggregation_answers, aggregations.confidences as aggregation_confidences from aggregations join tasks on tasks.id = aggregations.task_id and tasks.stage = aggregations.stage where aggregations.stage = :stage and aggregations.model = :model and aggregations.version = :version")
+    List<AnswerAggregation> listForStage(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlQuery("select exists (select 1 from computations where stage = :stage and kind = 'aggregations' and model = :model and version = :version)")
+    boolean isComputed(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    /**
+     * Lists the stored aggregations if they have been computed by the given model for the given version,
+     * even if there are none of them, so that an empty result is not recomputed on every request.
+     *
+     * @param dao     the DAO.
+     * @param stage   the stage name.
+     * @param model   the model name.
+     * @param version the stage version.
+     * @return the stored aggregations, or null if they have to be computed.
+     */
+    static List<AnswerAggregation> listComputed(AnswerAggregationDAO dao, String stage, String model, String version) {
+        return dao.inTransaction(TransactionIsolationLevel.REPEATABLE_READ, (transactional, status) ->
+                transactional.isComputed(stage, model, version) ? transactional.listForStage(stage, model, version) : null);
+    }
+
+    @SqlBatch("insert into aggregations (stage, task_id, datetime, model, version, type, answers, confidences) values (:stage, :taskId, localtimestamp, :model, :version, :type, cast(:answers as text[]), cast(:confidences as double precision[])) on conflict (stage, task_id) do update set datetime = excluded.datetime, model = excluded.model, version = excluded.version, type = excluded.type, answers = excluded.answers, confidences = excluded.confidences")
+    @BatchChunkSize(1000)
+    void insert(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version,
+                @Bind("taskId") List<Integer> taskIds, @Bind("type") List<String> types,
+                @Bind("answers") List<String> answers, @Bind("confidences") List<String> confidences);
+
+    /*
+     * Replaces the stored aggregations of the given stage with the freshly computed ones in a single transaction.
+     */
+    static void insert(AnswerAggregationDAO dao, String stage, String model, String version, Collection<AnswerAggregation> aggregations) {
+        dao.inTransaction((transactional, status) -> {
+            transactional.deleteOutdated(stage, model, version);
+            transactional.insertComputation(stage, model, version);
+            if (aggregations.isEmpty()) return null;
+            transactional.insert(stage, model, version,
+                    aggregations.stream().map(aggregation -> aggregation.getTask().getId()).collect(Collectors.toList()),
+                    aggregations.stream().map(AnswerAggregation::getType).collect(Collectors.toList()),
+                    aggregations.stream().map(aggregation -> PostgresUtils.buildArrayString(aggregation.getAnswers())).collect(Collectors.toList()),
+                    aggregations.stream().map(aggregation -> PostgresUtils.buildArrayString(aggregation.getConfidences().stream().
+                            map(Object::toString).collect(Collectors.toList()))).collect(Collectors.toList())
+            );
+            return null;
+        });
+    }
+
+    @SqlUpdate("insert into computations (stage, kind, datetime, model, version) values (:stage, 'aggregations', localtimestamp, :model, :version) on conflict (stage, kind) do update set datetime = excluded.datetime, model = excluded.model, version = excluded.version")
+    void insertComputation(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlUpdate("delete from aggregations where stage = :stage and (model <> :model or version <> :version)")
+    void deleteOutdated(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlUpdate("delete from aggregations where stage = :stage")
+    void deleteAll(@Bind("stage") String stage);
+
+
+    void close();
+
+    class Mapper implements ResultSetMapper<AnswerAggregation> {
+        private final TaskDAO.Mapper taskMapper = new TaskDAO.Mapper();
+
+        @Override
+        public AnswerAggregation map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return new AnswerAggregation.Builder().
+                    setType(r.getString("aggregation_type")).
+                    setTask(taskMapper.map(index, r, ctx)).
+                    addAllAnswers(Arrays.asList((String[]) r.getArray("aggregation_answers").getArray())).
+                    addAllConfidences(Arrays.asList((Double[]) r.getArray("aggregation_confidences").getArray())).
+                    build();
+        }
+    }
+}
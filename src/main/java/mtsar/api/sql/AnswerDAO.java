@@ -16,42 +16,159 @@
 
 package mtsar.api.sql;
 
+import it.unimi.dsi.fastutil.ints.Int2IntAVLTreeMap;
+import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
 import mtsar.api.Answer;
+import mtsar.util.PostgresUtils;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
 import org.skife.jdbi.v2.sqlobject.*;
 import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.FetchSize;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.function.Consumer;
 
 @UseStringTemplate3StatementLocator
 @RegisterMapper(AnswerDAO.Mapper.class)
-public interface AnswerDAO {
+public interface AnswerDAO extends Transactional<AnswerDAO> {
     String ANSWER_TYPE_ANSWER = "answer";
     String ANSWER_TYPE_DEFAULT = ANSWER_TYPE_ANSWER;
     String ANSWER_TYPE_SKIP = "skip";
+    String PROJECTION = "id, stage, type, worker_id, task_id, answers";
 
     @SqlQuery("select * from answers where stage = :stage")
     List<Answer> listForStage(@Bind("stage") String stage);
 
-    @SqlQuery("select * from answers where task_id = :taskId and stage = :stage")
+    @SqlQuery("select * from answers where stage = :stage and id > :after order by id limit :limit")
+    List<Answer> listForStage(@Bind("stage") String stage, @Bind("after") int after, @Bind("limit") int limit);
+
+    /**
+     * Lists the answers of the given stage with only the columns required by the processors.
+     * The tags and metadata of the returned answers are empty, and their timestamps are not loaded and left null.
+     *
+     * @param stage the stage name.
+     * @return the answers.
+     */
+    @SqlQuery("select " + PROJECTION + " from answers where stage = :stage")
+    @org.skife.jdbi.v2.sqlobject.customizers.Mapper(ProjectionMapper.class)
+    List<Answer> listForProcessing(@Bind("stage") String stage);
+
+    /**
+     * Streams the answers of the given stage in the order of their identifiers with only the columns
+     * required by the processors, just like {@link #listForProcessing(String)} does.
+     * The cursor is used only inside a transaction, and the iterator must be closed after use.
+     *
+     * @param stage the stage name.
+     * @param after the identifier after which the answers are streamed.
+     * @param lows  the first identifiers of the ranges not exceeding the given one that are streamed as well.
+     * @param highs the last identifiers of these ranges.
+     * @return the answer iterator.
+     */
+    @SqlQuery("select " + PROJECTION + " from answers where stage = :stage and id > :after union all " +
+            "select " + PROJECTION + " from answers join unnest(:lows, :highs) as gaps (low, high) on id between low and high where stage = :stage " +
+            "order by id")
+    @FetchSize(1000)
+    @org.skife.jdbi.v2.sqlobject.customizers.Mapper(ProjectionMapper.class)
+    ResultIterator<Answer> streamForProcessing(@Bind("stage") String stage, @Bind("after") int after, @BindIntArray("lows") int[] lows, @BindIntArray("highs") int[] highs);
+
+    /**
+     * Streams the answers of the given stage that the cursor has not seen yet and checks whether
+     * the cursor has seen all the stage answers. Both are done in a single REPEATABLE READ transaction,
+     * so the answers committed meanwhile are not streamed; they are picked up by the next streaming.
+     * This must not be called inside a transaction, since the greatest allocated identifier is read before the snapshot.
+     *
+     * @param dao      the DAO.
+     * @param stage    the stage name.
+     * @param cursor   the cursor.
+     * @param consumer the consumer of the streamed answers.
+     * @return whether the cursor is consistent with the stage answers.
+     */
+    static boolean stream(AnswerDAO dao, String stage, Cursor cursor, Consumer<Answer> consumer) {
+        final int allocated = dao.lastId();
+        return dao.inTransaction(TransactionIsolationLevel.REPEATABLE_READ, (transactional, status) -> {
+            final String snapshot = transactional.snapshot();
+            try (final ResultIterator<Answer> answers = transactional.streamForProcessing(stage, cursor.after, cursor.lows(), cursor.highs())) {
+                while (answers.hasNext()) {
+                    final Answer answer = answers.next();
+                    cursor.seen(answer.getId());
+                    consumer.accept(answer);
+                }
+            }
+            cursor.settle(snapshot, allocated);
+            return cursor.isConsistent(transactional.epoch(stage));
+        });
+    }
+
+    /**
+     * Streams the answers of the given stage in the order of their identifiers using a server-side cursor.
+     * The cursor is used only inside a transaction, and the iterator must be closed after use.
+     *
+     * @param stage the stage name.
+     * @param after the identifier after which the answers are streamed.
+     * @return the answer iterator.
+     */
+    @SqlQuery("select * from answers where stage = :stage and id > :after order by id")
+    @FetchSize(1000)
+    ResultIterator<Answer> streamForStage(@Bind("stage") String stage, @Bind("after") int after);
+
+    /**
+     * Streams the answers of the given stage ordered by the task identifiers using a server-side cursor.
+     * The cursor is used only inside a transaction, and the iterator must be closed after use.
+     *
+     * @param stage the stage name.
+     * @return the answer iterator.
+     */
+    @SqlQuery("select * from answers where stage = :stage order by task_id, id")
+    @FetchSize(1000)
+    ResultIterator<Answer> streamForStageByTask(@Bind("stage") String stage);
+
+    /**
+     * Makes the current transaction read-only; this should be the first statement in the transaction.
+     */
+    @SqlUpdate("set transaction read only")
+    void setReadOnly();
+
+    /**
+     * Lists the answers to a pseudo-random sample of the stage tasks that is reproducible for the same seed.
+     * The tasks are taken in the order of their identifier hashes starting from the hash of the seed,
+     * which is a range scan of the hash index instead of sorting all the stage tasks.
+     *
+     * @param stage the stage name.
+     * @param seed  the sample seed.
+     * @param limit the number of tasks to sample.
+     * @return the answers to the sampled tasks.
+     */
+    @SqlQuery("select " + PROJECTION + " from answers where stage = :stage and type = 'answer' and task_id in (select id from (" +
+            "(select id from tasks where stage = :stage and hashint4(id) >= hashint8(:seed) order by hashint4(id), id limit :limit) union all " +
+            "(select id from tasks where stage = :stage and not hashint4(id) >= hashint8(:seed) order by hashint4(id), id limit :limit)" +
+            ") as sample limit :limit)")
+    @org.skife.jdbi.v2.sqlobject.customizers.Mapper(ProjectionMapper.class)
+    List<Answer> listForSample(@Bind("stage") String stage, @Bind("seed") long seed, @Bind("limit") int limit);
+
+    @SqlQuery("select * from answers where stage = :stage and task_id = :taskId order by id")
     List<Answer> listForTask(@Bind("taskId") Integer taskId, @Bind("stage") String stage);
 
-    @SqlQuery("select * from answers where worker_id = :workerId and stage = :stage")
+    @SqlQuery("select * from answers where stage = :stage and task_id = :taskId and id > :after order by id limit :limit")
+    List<Answer> listForTask(@Bind("taskId") Integer taskId, @Bind("stage") String stage, @Bind("after") int after, @Bind("limit") int limit);
+
+    @SqlQuery("select * from answers where stage = :stage and worker_id = :workerId order by id")
     List<Answer> listForWorker(@Bind("workerId") Integer workerId, @Bind("stage") String stage);
 
+    @SqlQuery("select * from answers where stage = :stage and worker_id = :workerId and id > :after order by id limit :limit")
+    List<Answer> listForWorker(@Bind("workerId") Integer workerId, @Bind("stage") String stage, @Bind("after") int after, @Bind("limit") int limit);
+
     @SqlQuery("select * from answers where id = :id and stage = :stage limit 1")
     Answer find(@Bind("id") Integer id, @Bind("stage") String stage);
 
-    @SqlQuery("select * from answers where stage = :stage and worker_id = :worker_id and task_id = :task_id limit 1")
+    @SqlQuery("select * from answers where stage = :stage and worker_id = :worker_id and task_id = :task_id")
     Answer findByWorkerAndTask(@Bind("stage") String stage, @Bind("worker_id") Integer workerId, @Bind("task_id") Integer taskId);
 
     @SqlQuery("insert into answers (stage, datetime, tags, type, worker_id, task_id, answers) values (:stage, coalesce(:dateTime, localtimestamp), cast(:tagsTextArray as text[]), cast(:type as answer_type), :workerId, :taskId, cast(:answersTextArray as text[])) returning id")
@@ -61,12 +178,32 @@ public interface AnswerDAO {
     @BatchChunkSize(1000)
     int[] insert(@BindBean Iterator<Answer> answers);
 
-    /*
-     * This is a slow method for inserting the given collection of answers and returning all the inserted objects.
+    /**
+     * Inserts the given collection of answers by a single statement and returns the inserted objects.
+     * The answers that conflict with the already stored ones are silently skipped, so the caller should
+     * compare the result with the input to find them.
+     *
+     * @param answers the answers.
+     * @return the inserted answers.
      */
-    static List<Answer> insert(AnswerDAO dao, Collection<Answer> answers) {
-        return answers.stream().map(answer -> dao.find(dao.insert(answer), answer.getStage())).collect(Collectors.toList());
-    }
+    @SqlQuery("insert into answers (stage, datetime, tags, type, worker_id, task_id, answers) select e->>'stage', coalesce(cast(e->>'dateTime' as timestamp), localtimestamp), cast(e->>'tags' as text[]), cast(e->>'type' as answer_type), cast(e->>'workerId' as integer), cast(e->>'taskId' as integer), cast(e->>'answers' as text[]) from jsonb_array_elements(cast(:answers as jsonb)) with ordinality as rows(e, n) order by n on conflict (stage, worker_id, task_id) do nothing returning *")
+    List<Answer> insertUnique(@BindAnswers("answers") Collection<Answer> answers);
+
+    /**
+     * Provides the task DAO sharing the handle, and therefore the transaction, of this one.
+     *
+     * @return Task DAO.
+     */
+    @CreateSqlObject
+    TaskDAO taskDAO();
+
+    /**
+     * Provides the worker DAO sharing the handle, and therefore the transaction, of this one.
+     *
+     * @return Worker DAO.
+     */
+    @CreateSqlObject
+    WorkerDAO workerDAO();
 
     @SqlQuery("select count(*) from answers")
     int count();
@@ -74,12 +211,75 @@ public interface AnswerDAO {
     @SqlQuery("select count(*) from answers where stage = :stage")
     int count(@Bind("stage") String stage);
 
+    /**
+     * Provides the version of the given stage that identifies the data the stored computations are based on.
+     * It consists of the greatest identifiers of the stage workers, tasks and answers, which grow as they are added,
+     * and the stage epoch, which increases whenever they are changed or removed. None of these locks the stage row
+     * on insert, so a row committed after another one with a greater identifier is taken into account by the next change.
+     *
+     * @param stage the stage name.
+     * @return the stage version.
+     */
+    @SqlQuery("select (select coalesce(max(id), 0) from workers where stage = :stage) || ':' || " +
+            "(select coalesce(max(id), 0) from tasks where stage = :stage) || ':' || " +
+            "(select coalesce(max(id), 0) from answers where stage = :stage) || ':' || epoch from stages where id = :stage")
+    String version(@Bind("stage") String stage);
+
+    /**
+     * Increases the epoch of the given stage after an import, since the imported rows keep their own identifiers
+     * that may be below the greatest ones, which are taken into account by the versions and the cursors.
+     *
+     * @param stage the stage name.
+     */
+    @SqlUpdate("update stages set epoch = epoch + 1 where id = :stage")
+    void invalidate(@Bind("stage") String stage);
+
+    /**
+     * Provides the epoch of the given stage, which increases whenever its answers are changed or removed.
+     *
+     * @param stage the stage name.
+     * @return the stage epoch.
+     */
+    @SqlQuery("select cast(epoch as text) from stages where id = :stage")
+    String epoch(@Bind("stage") String stage);
+
+    /**
+     * Provides the greatest answer identifier allocated so far in any stage, whether committed or not.
+     *
+     * @return the greatest allocated identifier.
+     */
+    @SqlQuery("select case when is_called then last_value else 0 end from answers_id_seq")
+    int lastId();
+
+    /**
+     * Provides the snapshot of the current transaction in the xmin:xmax:running format of {@code txid_current_snapshot()}.
+     *
+     * @return the transaction snapshot.
+     */
+    @SqlQuery("select cast(txid_current_snapshot() as text)")
+    String snapshot();
+
     @SqlUpdate("delete from answers where id = :id and stage = :stage")
     void delete(@Bind("id") Integer id, @Bind("stage") String stage);
 
-    @SqlUpdate("delete from answers where stage = :stage")
+    /**
+     * Removes all the answers of the given stage by truncating its partition.
+     *
+     * @param stage the stage name.
+     */
+    @SqlUpdate("call truncate_stage_answers(:stage)")
     void deleteAll(@Bind("stage") String stage);
 
+    /**
+     * Detaches the partition of the given stage, so its answers disappear at once, and
+     * attaches an empty one instead. The detached table is dropped by {@link mtsar.dropwizard.hk2.PurgeService}.
+     *
+     * @param stage the stage name.
+     * @return the name of the detached table, or null if nothing is left to purge.
+     */
+    @SqlQuery("select detach_stage_partition('answers', :stage)")
+    String detach(@Bind("stage") String stage);
+
     @SqlUpdate("delete from answers")
     void deleteAll();
 
@@ -88,6 +288,84 @@ public interface AnswerDAO {
 
     void close();
 
+    /**
+     * Keeps track of the stage answers that have been streamed by {@link #stream(AnswerDAO, String, Cursor, Consumer)}.
+     * A transaction may commit an answer after another one with a greater identifier has been streamed,
+     * so the skipped identifiers are remembered as ranges and looked up again by the next streaming until
+     * they are settled: the identifiers allocated before a snapshot cannot appear any more once every
+     * transaction running at that snapshot has finished, whichever stage they have been allocated for.
+     * Only the {@link #MAX_GAPS} greatest ranges are remembered, so an answer committed in an older one
+     * is missed; a changed or removed answer makes the cursor inconsistent.
+     */
+    final class Cursor {
+        public static final int MAX_GAPS = 1000;
+        private static final int MAX_WATERMARKS = 100;
+        /* the first identifiers of the skipped ranges mapped to the last ones */
+        private final Int2IntSortedMap gaps = new Int2IntAVLTreeMap();
+        /* the xmax values of the previous snapshots and the greatest identifiers allocated before them */
+        private final Deque<long[]> watermarks = new ArrayDeque<>();
+        private int after;
+        private String epoch;
+
+        public void reset() {
+            gaps.clear();
+            watermarks.clear();
+            after = 0;
+            epoch = null;
+        }
+
+        private int[] lows() {
+            return gaps.keySet().toIntArray();
+        }
+
+        private int[] highs() {
+            return gaps.values().toIntArray();
+        }
+
+        private void seen(int id) {
+            if (id > after) {
+                if (id > after + 1) gaps.put(after + 1, id - 1);
+                while (gaps.size() > MAX_GAPS) gaps.remove(gaps.firstIntKey());
+                after = id;
+                return;
+            }
+            final Int2IntSortedMap head = gaps.headMap(id + 1);
+            if (head.isEmpty()) return;
+            final int low = head.lastIntKey(), high = gaps.get(low);
+            if (high < id) return;
+            gaps.remove(low);
+            if (low < id) gaps.put(low, id - 1);
+            if (id < high) gaps.put(id + 1, high);
+        }
+
+        /**
+         * Forgets the ranges that cannot be filled any more. The identifiers allocated before a snapshot
+         * belong to the transactions that either had finished or were running then, so they are final
+         * once the oldest running transaction of a later snapshot, this one included, is newer than them.
+         *
+         * @param snapshot  the snapshot of the streaming transaction.
+         * @param allocated the greatest identifier allocated before the snapshot.
+         */
+        private void settle(String snapshot, int allocated) {
+            final String[] parts = snapshot.split(":");
+            final long xmin = Long.parseLong(parts[0]), xmax = Long.parseLong(parts[1]);
+            watermarks.addLast(new long[]{xmax, allocated});
+            while (watermarks.size() > MAX_WATERMARKS) watermarks.removeFirst();
+            int settled = 0;
+            while (!watermarks.isEmpty() && watermarks.peekFirst()[0] <= xmin) settled = Math.max(settled, (int) watermarks.removeFirst()[1]);
+            while (!gaps.isEmpty() && gaps.firstIntKey() <= settled) {
+                final int low = gaps.firstIntKey(), high = gaps.remove(low);
+                if (high > settled) gaps.put(settled + 1, high);
+            }
+        }
+
+        private boolean isConsistent(String current) {
+            if (current == null) return false;
+            if (epoch == null) epoch = current;
+            return epoch.equals(current);
+        }
+    }
+
     class Mapper implements ResultSetMapper<Answer> {
         @Override
         public Answer map(int index, ResultSet r, StatementContext ctx) throws SQLException {
@@ -96,12 +374,32 @@ public interface AnswerDAO {
                     setStage(r.getString("stage")).
                     setDateTime(r.getTimestamp("datetime")).
                     addAllTags(Arrays.asList((String[]) r.getArray("tags").getArray())).
+                    setTagsTextArray(r.getString("tags")).
                     setMetadata(r.getString("metadata")).
                     setType(r.getString("type")).
                     setWorkerId(r.getInt("worker_id")).
                     setTaskId(r.getInt("task_id")).
                     addAllAnswers(Arrays.asList((String[]) r.getArray("answers").getArray())).
-                    build();
+                    setAnswersTextArray(r.getString("answers")).
+                    buildRaw();
+        }
+    }
+
+    class ProjectionMapper implements ResultSetMapper<Answer> {
+        @Override
+        public Answer map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return new Answer.Builder().
+                    setId(r.getInt("id")).
+                    setStage(r.getString("stage")).
+                    setDateTime(null).
+                    setType(r.getString("type")).
+                    setWorkerId(r.getInt("worker_id")).
+                    setTaskId(r.getInt("task_id")).
+                    setTagsTextArray(PostgresUtils.EMPTY_ARRAY).
+                    setMetadataJSON(PostgresUtils.EMPTY_JSON).
+                    addAllAnswers(Arrays.asList((String[]) r.getArray("answers").getArray())).
+                    setAnswersTextArray(r.getString("answers")).
+                    buildRaw();
         }
     }
 }
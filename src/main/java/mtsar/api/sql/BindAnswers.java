@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.sql;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import mtsar.api.Answer;
+import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.BinderFactory;
+import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
+
+import java.lang.annotation.*;
+import java.util.Collection;
+
+/**
+ * Binds a collection of answers as a JSON array, so the statement can expand it by {@code jsonb_array_elements}.
+ * The tags and the answers are rendered as the PostgreSQL text array literals.
+ */
+@BindingAnnotation(BindAnswers.Factory.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface BindAnswers {
+    String value();
+
+    class Factory implements BinderFactory {
+        @Override
+        public Binder build(Annotation annotation) {
+            return (Binder<BindAnswers, Collection<Answer>>) (q, bind, answers) -> q.bind(bind.value(), json(answers));
+        }
+
+        private static String json(Collection<Answer> answers) {
+            final ArrayNode array = JsonNodeFactory.instance.arrayNode();
+            for (final Answer answer : answers) {
+                array.addObject().
+                        put("stage", answer.getStage()).
+                        put("dateTime", answer.getDateTime() == null ? null : answer.getDateTime().toString()).
+                        put("tags", answer.getTagsTextArray()).
+                        put("type", answer.getType()).
+                        put("workerId", answer.getWorkerId()).
+                        put("taskId", answer.getTaskId()).
+                        put("answers", answer.getAnswersTextArray());
+            }
+            return array.toString();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.sql;
+
+import org.skife.jdbi.v2.sqlobject.Binder;
+import org.skife.jdbi.v2.sqlobject.BinderFactory;
+import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
+
+import java.lang.annotation.*;
+import java.util.Arrays;
+
+/**
+ * Binds an array of integers as a PostgreSQL integer array, so the statement can use it as {@code any(:name)} or {@code unnest(:name)}.
+ */
+@BindingAnnotation(BindIntArray.Factory.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface BindIntArray {
+    String value();
+
+    class Factory implements BinderFactory {
+        @Override
+        public Binder build(Annotation annotation) {
+            return (Binder<BindIntArray, int[]>) (q, bind, values) -> q.bind(bind.value(), (position, statement, ctx) ->
+                    statement.setArray(position, ctx.getConnection().createArrayOf("integer", Arrays.stream(values).boxed().toArray())));
+        }
+    }
+}
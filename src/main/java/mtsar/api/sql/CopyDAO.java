@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.sql;
+
+import com.google.common.collect.Sets;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bulk import and export of tasks, workers and answers using the PostgreSQL COPY protocol.
+ * The uploaded CSV is re-arranged into the fixed column order and streamed into a temporary table
+ * without creating any objects per row; the rows are then converted and inserted by a single statement.
+ * The exports have the same layout as the ones produced by {@link mtsar.api.csv.TaskCSV} and its siblings,
+ * but they are written by the database server directly.
+ */
+public class CopyDAO {
+    private static final CSVFormat FORMAT = CSVFormat.EXCEL.withHeader();
+    private static final String[] TASK_COLUMNS = {"id", "datetime", "tags", "type", "description", "answers"};
+    private static final String[] WORKER_COLUMNS = {"id", "datetime", "tags"};
+    private static final String[] ANSWER_COLUMNS = {"id", "datetime", "tags", "type", "task_id", "worker_id", "answers"};
+
+    private final DBI dbi;
+
+    @Inject
+    public CopyDAO(DBI dbi) {
+        this.dbi = requireNonNull(dbi);
+    }
+
+    public int insertTasks(String stage, Reader reader) {
+        return copy(stage, reader, TASK_COLUMNS,
+                "insert into tasks (id, stage, datetime, tags, type, description, answers) select " +
+                        "coalesce(cast(nullif(id, '') as integer), nextval('tasks_id_seq')), :stage, " + datetime() + ", " + array("tags") + ", " +
+                        "cast(coalesce(nullif(type, ''), '" + TaskDAO.TASK_TYPE_SINGLE + "') as task_type), description, " + array("answers") +
+                        " from csv_import",
+                "select setval('tasks_id_seq', coalesce((select max(id) + 1 from tasks), 1), false)");
+    }
+
+    public int insertWorkers(String stage, Reader reader) {
+        return copy(stage, reader, WORKER_COLUMNS,
+                "insert into workers (id, stage, datetime, tags) select " +
+                        "coalesce(cast(nullif(id, '') as integer), nextval('workers_id_seq')), :stage, " + datetime() + ", " + array("tags") +
+                        " from csv_import",
+                "select setval('workers_id_seq', coalesce((select max(id) + 1 from workers), 1), false)");
+    }
+
+    public int insertAnswers(String stage, Reader reader) {
+        return copy(stage, reader, ANSWER_COLUMNS,
+                "insert into answers (id, stage, datetime, tags, type, worker_id, task_id, answers) select " +
+                        "coalesce(cast(nullif(id, '') as integer), nextval('answers_id_seq')), :stage, " + datetime() + ", " + array("tags") + ", " +
+                        "cast(coalesce(nullif(type, ''), '" + AnswerDAO.ANSWER_TYPE_DEFAULT + "') as answer_type), " +
+                        "cast(worker_id as integer), cast(task_id as integer), " + array("answers") +
+                        " from csv_import",
+                "select setval('answers_id_seq', coalesce((select max(id) + 1 from answers), 1), false)");
+    }
+
+    public long copyTasks(String stage, OutputStream output) {
+        return copy("select id, stage, " + epoch() + ", " + string("tags") + ", type, description, " + string("answers") +
+                " from tasks where stage = %L order by id", stage, output);
+    }
+
+    public long copyWorkers(String stage, OutputStream output) {
+        return copy("select id, stage, " + epoch() + ", " + string("tags") +
+                " from workers where stage = %L order by id", stage, output);
+    }
+
+    public long copyAnswers(String stage, OutputStream output) {
+        return copy("select id, stage, " + epoch() + ", " + string("tags") + ", type, task_id, worker_id, " + string("answers") +
+                " from answers where stage = %L order by task_id, id", stage, output);
+    }
+
+    /* the CSV timestamps are the numbers of seconds since the epoch, stored in the session time zone like the missing ones */
+    private static String datetime() {
+        return "coalesce(cast(to_timestamp(cast(nullif(datetime, '') as bigint)) as timestamp), localtimestamp)";
+    }
+
+    /* the CSV arrays are separated by the vertical bars */
+    private static String array(String column) {
+        return "coalesce(string_to_array(nullif(" + column + ", ''), '|'), '{}')";
+    }
+
+    /* the stored timestamps are in the session time zone, as DateTimeUtils describes */
+    private static String epoch() {
+        return "cast(extract(epoch from cast(datetime as timestamptz)) as bigint) as datetime";
+    }
+
+    private static String string(String column) {
+        return "array_to_string(" + column + ", '|') as " + column;
+    }
+
+    /* COPY does not accept bind parameters, so the stage is bound to format() and quoted by the server */
+    private long copy(String select, String stage, OutputStream output) {
+        try (final Handle handle = dbi.open()) {
+            return handle.inTransaction((h, status) -> {
+                h.execute("set transaction read only");
+                final String sql = h.createQuery("select format(:sql, :stage)").
+                        bind("sql", "copy (" + select + ") to stdout with (format csv, header)").
+                        bind("stage", stage).
+                        mapTo(String.class).first();
+                final CopyManager copyManager = h.getConnection().unwrap(PGConnection.class).getCopyAPI();
+                return copyManager.copyOut(sql, output);
+            });
+        }
+    }
+
+    private int copy(String stage, Reader reader, String[] columns, String insert, String resetSequence) {
+        final String names = String.join(", ", columns);
+        try (final Handle handle = dbi.open()) {
+            return handle.inTransaction((h, status) -> {
+                h.execute("create temporary table csv_import (" + String.join(" text, ", columns) + " text) on commit drop");
+
+                final CopyManager copyManager = h.getConnection().unwrap(PGConnection.class).getCopyAPI();
+                try (final CSVParser csv = new CSVParser(reader, FORMAT);
+                     final Writer writer = new OutputStreamWriter(new PGCopyOutputStream(
+                             copyManager.copyIn("copy csv_import (" + names + ") from stdin with (format csv)")), StandardCharsets.UTF_8)) {
+                    transform(csv, columns, writer);
+                }
+
+                final int count = h.createStatement(insert).bind("stage", stage).execute();
+                h.createQuery(resetSequence).list();
+                return count;
+            });
+        }
+    }
+
+    /**
+     * Re-arranges the CSV records into the given column order, the absent columns are left empty.
+     *
+     * @param csv     the parsed CSV with a header.
+     * @param columns the output columns.
+     * @param writer  the output writer.
+     * @throws IOException in case of an I/O error.
+     */
+    public static void transform(CSVParser csv, String[] columns, Appendable writer) throws IOException {
+        final Set<String> header = csv.getHeaderMap().keySet();
+        checkArgument(!Sets.intersection(header, Sets.newHashSet(columns)).isEmpty(), "Unknown CSV header: %s", String.join(",", header));
+
+        final CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT);
+        for (final CSVRecord row : csv) {
+            for (final String column : columns) printer.print(row.isSet(column) ? row.get(column) : null);
+            printer.println();
+        }
+        printer.flush();
+    }
+}
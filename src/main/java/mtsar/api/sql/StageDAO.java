@@ -40,12 +40,25 @@ public interface StageDAO {
     @SqlQuery("select count(*) from stages")
     int count();
 
+    /**
+     * Inserts the stage definition. The stage partitions of the tasks and answers tables
+     * are created by the database trigger within the same statement.
+     *
+     * @param definition the stage definition.
+     * @return the stage identifier.
+     */
     @SqlQuery("insert into stages (id, description, worker_ranker, task_allocator, answer_aggregator, options, datetime) values (:id, :description, :workerRanker, :taskAllocator, :answerAggregator, cast(:optionsJSON as jsonb), coalesce(:dateTime, localtimestamp)) returning id")
     String insert(@BindBean Stage.Definition definition);
 
     @SqlUpdate("update stages set description=:description, worker_ranker=:workerRanker, task_allocator=:taskAllocator, answer_aggregator=:answerAggregator, options=cast(:optionsJSON as jsonb) where id=:id")
     void update(@BindBean Stage.Definition definition);
 
+    /**
+     * Deletes the stage definition. The stage partitions of the tasks and answers tables
+     * are detached and dropped by the database trigger instead of deleting their rows.
+     *
+     * @param id the stage identifier.
+     */
     @SqlUpdate("delete from stages where id = :id")
     void delete(@Bind("id") String id);
 
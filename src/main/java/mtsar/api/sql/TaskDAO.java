@@ -17,10 +17,15 @@
 package mtsar.api.sql;
 
 import mtsar.api.Task;
+import mtsar.util.PostgresUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.*;
 import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.FetchSize;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.unstable.BindIn;
@@ -33,15 +38,47 @@ import java.util.List;
 
 @UseStringTemplate3StatementLocator
 @RegisterMapper(TaskDAO.Mapper.class)
-public interface TaskDAO {
+public interface TaskDAO extends Transactional<TaskDAO> {
     String TASK_TYPE_SINGLE = "single";
+    String TASK_TYPE_MULTIPLE = "multiple";
 
     @SqlQuery("select * from tasks where stage = :stage")
     List<Task> listForStage(@Bind("stage") String stage);
 
+    @SqlQuery("select * from tasks where stage = :stage and id > :after order by id limit :limit")
+    List<Task> listForStage(@Bind("stage") String stage, @Bind("after") int after, @Bind("limit") int limit);
+
+    /**
+     * Streams the tasks of the given stage in the order of their identifiers using a server-side cursor.
+     * The cursor is used only inside a transaction, and the iterator must be closed after use.
+     *
+     * @param stage the stage name.
+     * @return the task iterator.
+     */
+    @SqlQuery("select * from tasks where stage = :stage order by id")
+    @FetchSize(1000)
+    ResultIterator<Task> streamForStage(@Bind("stage") String stage);
+
+    /**
+     * Makes the current transaction read-only; this should be the first statement in the transaction.
+     */
+    @SqlUpdate("set transaction read only")
+    void setReadOnly();
+
     @SqlQuery("select * from tasks where id = :id and stage = :stage limit 1")
     Task find(@Bind("id") Integer id, @Bind("stage") String stage);
 
+    /**
+     * Lists the tasks of the given stage with only the columns required by the processors to know the possible answers.
+     * The tags, metadata and descriptions of the returned tasks are empty, and their timestamps are not loaded and left null.
+     *
+     * @param stage the stage name.
+     * @return the tasks.
+     */
+    @SqlQuery("select id, stage, type, answers from tasks where stage = :stage")
+    @org.skife.jdbi.v2.sqlobject.customizers.Mapper(ProjectionMapper.class)
+    List<Task> listForProcessing(@Bind("stage") String stage);
+
     @SqlQuery("select * from tasks where id in (<ids>) and stage = :stage")
     List<Task> select(@BindIn("ids") List<Integer> ids, @Bind("stage") String stage);
 
@@ -64,6 +101,16 @@ public interface TaskDAO {
     @SqlQuery("select count(distinct tasks.id) from tasks left join answers on answers.task_id = tasks.id and answers.stage = tasks.stage and answers.worker_id = :worker_id where tasks.stage = :stage and answers.id is null")
     int remaining(@Bind("stage") String stage, @Bind("worker_id") Integer workerId);
 
+    /**
+     * Counts the answers to every task of the given stage, except the skips.
+     *
+     * @param stage the stage name.
+     * @return the task identifiers paired with their answer counts.
+     */
+    @SqlQuery("select tasks.id, coalesce(counts.count, 0) as count from tasks left join (select task_id, count(*) from answers where stage = :stage and type <> 'skip' group by task_id) counts on counts.task_id = tasks.id where tasks.stage = :stage")
+    @org.skife.jdbi.v2.sqlobject.customizers.Mapper(CountMapper.class)
+    List<Pair<Integer, Integer>> listCounts(@Bind("stage") String stage);
+
     @SqlQuery("insert into tasks (stage, datetime, tags, type, description, answers) values (:stage, coalesce(:dateTime, localtimestamp), cast(:tagsTextArray as text[]), cast(:type as task_type), :description, cast(:answersTextArray as text[])) returning id")
     int insert(@BindBean Task t);
 
@@ -77,6 +124,16 @@ public interface TaskDAO {
     @SqlUpdate("delete from tasks where stage = :stage")
     void deleteAll(@Bind("stage") String stage);
 
+    /**
+     * Detaches the partition of the given stage, so its tasks and their aggregations disappear at once,
+     * and attaches an empty one instead. The detached table is dropped by {@link mtsar.dropwizard.hk2.PurgeService}.
+     *
+     * @param stage the stage name.
+     * @return the name of the detached table, or null if nothing is left to purge.
+     */
+    @SqlQuery("select detach_stage_partition('tasks', :stage)")
+    String detach(@Bind("stage") String stage);
+
     @SqlUpdate("delete from tasks")
     void deleteAll();
 
@@ -93,11 +150,37 @@ public interface TaskDAO {
                     setStage(r.getString("stage")).
                     setDateTime(r.getTimestamp("datetime")).
                     addAllTags(Arrays.asList((String[]) r.getArray("tags").getArray())).
+                    setTagsTextArray(r.getString("tags")).
                     setMetadata(r.getString("metadata")).
                     setType(r.getString("type")).
                     setDescription(r.getString("description")).
                     addAllAnswers(Arrays.asList((String[]) r.getArray("answers").getArray())).
-                    build();
+                    setAnswersTextArray(r.getString("answers")).
+                    buildRaw();
+        }
+    }
+
+    class ProjectionMapper implements ResultSetMapper<Task> {
+        @Override
+        public Task map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return new Task.Builder().
+                    setId(r.getInt("id")).
+                    setStage(r.getString("stage")).
+                    setDateTime(null).
+                    setType(r.getString("type")).
+                    setDescription("").
+                    setTagsTextArray(PostgresUtils.EMPTY_ARRAY).
+                    setMetadataJSON(PostgresUtils.EMPTY_JSON).
+                    addAllAnswers(Arrays.asList((String[]) r.getArray("answers").getArray())).
+                    setAnswersTextArray(r.getString("answers")).
+                    buildRaw();
+        }
+    }
+
+    class CountMapper implements ResultSetMapper<Pair<Integer, Integer>> {
+        @Override
+        public Pair<Integer, Integer> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return Pair.of(r.getInt("id"), r.getInt("count"));
         }
     }
 }
@@ -17,10 +17,13 @@
 package mtsar.api.sql;
 
 import mtsar.api.Worker;
+import org.skife.jdbi.v2.ResultIterator;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.sqlobject.*;
 import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.FetchSize;
 import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 import org.skife.jdbi.v2.sqlobject.stringtemplate.UseStringTemplate3StatementLocator;
 import org.skife.jdbi.v2.tweak.ResultSetMapper;
 import org.skife.jdbi.v2.unstable.BindIn;
@@ -33,10 +36,30 @@ import java.util.List;
 
 @UseStringTemplate3StatementLocator
 @RegisterMapper(WorkerDAO.Mapper.class)
-public interface WorkerDAO {
+public interface WorkerDAO extends Transactional<WorkerDAO> {
     @SqlQuery("select * from workers where stage = :stage")
     List<Worker> listForStage(@Bind("stage") String stage);
 
+    @SqlQuery("select * from workers where stage = :stage and id > :after order by id limit :limit")
+    List<Worker> listForStage(@Bind("stage") String stage, @Bind("after") int after, @Bind("limit") int limit);
+
+    /**
+     * Streams the workers of the given stage in the order of their identifiers using a server-side cursor.
+     * The cursor is used only inside a transaction, and the iterator must be closed after use.
+     *
+     * @param stage the stage name.
+     * @return the worker iterator.
+     */
+    @SqlQuery("select * from workers where stage = :stage order by id")
+    @FetchSize(1000)
+    ResultIterator<Worker> streamForStage(@Bind("stage") String stage);
+
+    /**
+     * Makes the current transaction read-only; this should be the first statement in the transaction.
+     */
+    @SqlUpdate("set transaction read only")
+    void setReadOnly();
+
     @SqlQuery("select * from workers where id = :id and stage = :stage limit 1")
     Worker find(@Bind("id") Integer id, @Bind("stage") String stage);
 
@@ -79,8 +102,9 @@ public interface WorkerDAO {
                     setStage(r.getString("stage")).
                     setDateTime(r.getTimestamp("datetime")).
                     addAllTags(Arrays.asList((String[]) r.getArray("tags").getArray())).
+                    setTagsTextArray(r.getString("tags")).
                     setMetadata(r.getString("metadata")).
-                    build();
+                    buildRaw();
         }
     }
 }
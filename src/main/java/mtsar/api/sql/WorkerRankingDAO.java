@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.api.sql;
+
+import mtsar.api.WorkerRanking;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.BatchChunkSize;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the worker rankings computed by the stage ranker, so they can be served
+ * without recomputation while the stage data remain unchanged.
+ */
+@RegisterMapper(WorkerRankingDAO.Mapper.class)
+public interface WorkerRankingDAO extends Transactional<WorkerRankingDAO> {
+    @SqlQuery("select workers.*, rankings.type as ranking_type, rankings.reputation as ranking_reputation from rankings join workers on workers.id = rankings.worker_id and workers.stage = rankings.stage where rankings.stage = :stage and rankings.model = :model and rankings.version = :version")
+    List<WorkerRanking> listForStage(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlQuery("select exists (select 1 from computations where stage = :stage and kind = 'rankings' and model = :model and version = :version)")
+    boolean isComputed(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    /**
+     * Lists the stored rankings if they have been computed by the given model for the given version,
+     * even if there are none of them, so that an empty result is not recomputed on every request.
+     *
+     * @param dao     the DAO.
+     * @param stage   the stage name.
+     * @param model   the model name.
+     * @param version the stage version.
+     * @return the stored rankings, or null if they have to be computed.
+     */
+    static List<WorkerRanking> listComputed(WorkerRankingDAO dao, String stage, String model, String version) {
+        return dao.inTransaction(TransactionIsolationLevel.REPEATABLE_READ, (transactional, status) ->
+                transactional.isComputed(stage, model, version) ? transactional.listForStage(stage, model, version) : null);
+    }
+
+    @SqlBatch("insert into rankings (stage, worker_id, datetime, model, version, type, reputation) values (:stage, :workerId, localtimestamp, :model, :version, :type, :reputation) on conflict (stage, worker_id) do update set datetime = excluded.datetime, model = excluded.model, version = excluded.version, type = excluded.type, reputation = excluded.reputation")
+    @BatchChunkSize(1000)
+    void insert(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version,
+                @Bind("workerId") List<Integer> workerIds, @Bind("type") List<String> types,
+                @Bind("reputation") List<Double> reputations);
+
+    /*
+     * Replaces the stored rankings of the given stage with the freshly computed ones in a single transaction.
+     */
+    static void insert(WorkerRankingDAO dao, String stage, String model, String version, Collection<WorkerRanking> rankings) {
+        dao.inTransaction((transactional, status) -> {
+            transactional.deleteOutdated(stage, model, version);
+            transactional.insertComputation(stage, model, version);
+            if (rankings.isEmpty()) return null;
+            transactional.insert(stage, model, version,
+                    rankings.stream().map(ranking -> ranking.getWorker().getId()).collect(Collectors.toList()),
+                    rankings.stream().map(WorkerRanking::getType).collect(Collectors.toList()),
+                    rankings.stream().map(WorkerRanking::getReputation).collect(Collectors.toList())
+            );
+            return null;
+        });
+    }
+
+    @SqlUpdate("insert into computations (stage, kind, datetime, model, version) values (:stage, 'rankings', localtimestamp, :model, :version) on conflict (stage, kind) do update set datetime = excluded.datetime, model = excluded.model, version = excluded.version")
+    void insertComputation(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlUpdate("delete from rankings where stage = :stage and (model <> :model or version <> :version)")
+    void deleteOutdated(@Bind("stage") String stage, @Bind("model") String model, @Bind("version") String version);
+
+    @SqlUpdate("delete from rankings where stage = :stage")
+    void deleteAll(@Bind("stage") String stage);
+
+
+    void close();
+
+    class Mapper implements ResultSetMapper<WorkerRanking> {
+        private final WorkerDAO.Mapper workerMapper = new WorkerDAO.Mapper();
+
+        @Override
+        public WorkerRanking map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+            return new WorkerRanking.Builder().
+                    setType(r.getString("ranking_type")).
+                    setWorker(workerMapper.map(index, r, ctx)).
+                    setReputation(r.getDouble("ranking_reputation")).
+                    build();
+        }
+    }
+}
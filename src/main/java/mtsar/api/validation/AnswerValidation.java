@@ -18,18 +18,22 @@ package mtsar.api.validation;
 
 import io.dropwizard.validation.ValidationMethod;
 import mtsar.api.Answer;
-import mtsar.api.sql.AnswerDAO;
 import org.inferred.freebuilder.FreeBuilder;
 
 @FreeBuilder
 public interface AnswerValidation {
     Answer getAnswer();
 
-    AnswerDAO getAnswerDAO();
+    /**
+     * Whether the database has refused to store the answer because of the unique (stage, worker_id, task_id) constraint.
+     *
+     * @return Conflict flag.
+     */
+    boolean isConflicting();
 
     @ValidationMethod(message = "#answer-duplicate: worker has already completed this task")
     default boolean isAnswerUnique() {
-        return getAnswerDAO().findByWorkerAndTask(getAnswer().getStage(), getAnswer().getWorkerId(), getAnswer().getTaskId()) == null;
+        return !isConflicting();
     }
 
     class Builder extends AnswerValidation_Builder {
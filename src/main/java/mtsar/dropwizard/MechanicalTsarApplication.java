@@ -29,7 +29,12 @@ import mtsar.cli.AboutCommand;
 import mtsar.cli.ConsoleCommand;
 import mtsar.cli.EvaluateCommand;
 import mtsar.cli.SimulateCommand;
+import mtsar.dropwizard.hk2.AnswerWriter;
 import mtsar.dropwizard.hk2.ApplicationBinder;
+import mtsar.dropwizard.hk2.ImportService;
+import mtsar.dropwizard.hk2.PurgeService;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.dropwizard.hk2.UnitOfWork;
 import mtsar.resources.MetaResource;
 import mtsar.resources.StageResource;
 import org.eclipse.jetty.servlets.CrossOriginFilter;
@@ -98,9 +103,18 @@ public class MechanicalTsarApplication extends Application<MechanicalTsarConfigu
 
         environment.jersey().disable(ServerProperties.WADL_FEATURE_DISABLE);
         environment.jersey().register(new ValidatorBinder(environment));
+        environment.jersey().register(new UniqueViolationExceptionMapper());
+        environment.jersey().register(new UnitOfWorkListener(requireNonNull(getLocator().getService(UnitOfWork.class))));
         environment.jersey().register(requireNonNull(getLocator().getService(MetaResource.class)));
         environment.jersey().register(requireNonNull(getLocator().getService(StageResource.class)));
 
+        environment.lifecycle().manage(requireNonNull(getLocator().getService(ImportService.class)));
+        environment.lifecycle().manage(requireNonNull(getLocator().getService(ReadReplica.class)));
+        environment.lifecycle().manage(requireNonNull(getLocator().getService(AnswerWriter.class)));
+        environment.lifecycle().manage(requireNonNull(getLocator().getService(PurgeService.class)));
+
+        environment.admin().addServlet("purges", new PurgeServlet(requireNonNull(getLocator().getService(PurgeService.class)), environment.getObjectMapper())).addMapping("/purges");
+
         environment.healthChecks().register("version", requireNonNull(getLocator().getService(MechanicalTsarVersionHealthCheck.class)));
     }
 
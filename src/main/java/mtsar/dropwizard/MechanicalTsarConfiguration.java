@@ -19,9 +19,12 @@ package mtsar.dropwizard;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import io.dropwizard.db.DataSourceFactory;
+import mtsar.api.Storage;
 
+import javax.annotation.Nullable;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 
 public class MechanicalTsarConfiguration extends Configuration {
     @Valid
@@ -29,7 +32,48 @@ public class MechanicalTsarConfiguration extends Configuration {
     @JsonProperty
     private final DataSourceFactory database = new DataSourceFactory();
 
+    @Valid
+    @JsonProperty
+    private DataSourceFactory replica;
+
+    @JsonProperty
+    private boolean writeBehind = false;
+
+    @NotNull
+    @Pattern(regexp = Storage.POSTGRESQL + "|" + Storage.MEMORY)
+    @JsonProperty
+    private String storage = Storage.POSTGRESQL;
+
     public DataSourceFactory getDataSourceFactory() {
         return database;
     }
+
+    /**
+     * The optional read replica of the database for the heavy read-only queries.
+     *
+     * @return the replica data source factory, or null if none is configured.
+     */
+    @Nullable
+    public DataSourceFactory getReplicaDataSourceFactory() {
+        return replica;
+    }
+
+    /**
+     * Whether the submitted answers are group-committed by {@link mtsar.dropwizard.hk2.AnswerWriter}.
+     *
+     * @return whether the write-behind answer ingestion is enabled.
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * The storage backend, either {@link Storage#POSTGRESQL} or {@link Storage#MEMORY}.
+     * The in-memory storage is ephemeral and does not support the COPY imports and exports.
+     *
+     * @return the storage backend name.
+     */
+    public String getStorage() {
+        return storage;
+    }
 }
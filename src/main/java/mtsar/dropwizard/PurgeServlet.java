@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mtsar.dropwizard.hk2.PurgeService;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Admin endpoint reporting the progress of the background purges, optionally filtered by the stage parameter.
+ */
+public class PurgeServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private final transient PurgeService purgeService;
+    private final transient ObjectMapper mapper;
+
+    public PurgeServlet(PurgeService purgeService, ObjectMapper mapper) {
+        this.purgeService = requireNonNull(purgeService);
+        this.mapper = requireNonNull(mapper);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        final String stage = req.getParameter("stage");
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(MediaType.APPLICATION_JSON);
+        resp.setHeader("Cache-Control", "must-revalidate,no-cache,no-store");
+        mapper.writeValue(resp.getOutputStream(), stage == null ? purgeService.getJobs() : purgeService.getJobs(stage));
+    }
+}
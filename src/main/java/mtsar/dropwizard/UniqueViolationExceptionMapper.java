@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.jersey.errors.LoggingExceptionMapper;
+import mtsar.util.PostgresUtils;
+import org.skife.jdbi.v2.exceptions.DBIException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+
+/**
+ * Answers the writes violating a unique constraint, e.g., a duplicate answer in a batch or COPY import,
+ * or a foreign key, e.g., removing the tasks the answers still refer to, with 409 Conflict naming
+ * the conflicting key. The other database errors are logged as usual.
+ */
+public class UniqueViolationExceptionMapper extends LoggingExceptionMapper<DBIException> {
+    @Override
+    public Response toResponse(DBIException e) {
+        Optional<String> detail = PostgresUtils.findUniqueViolation(e);
+        if (!detail.isPresent()) detail = PostgresUtils.findForeignKeyViolation(e);
+        if (!detail.isPresent()) return super.toResponse(e);
+        return Response.status(Response.Status.CONFLICT).
+                type(MediaType.APPLICATION_JSON_TYPE).
+                entity(new ErrorMessage(Response.Status.CONFLICT.getStatusCode(), detail.get())).
+                build();
+    }
+}
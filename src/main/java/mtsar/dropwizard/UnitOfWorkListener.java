@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard;
+
+import mtsar.dropwizard.hk2.UnitOfWork;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Wraps every request into a {@link UnitOfWork}, so the DAOs, resources and processors
+ * share one database handle per request instead of checking out a connection per call.
+ * The unit of work is ended when the request is finished, even if it has failed with
+ * an exception that no mapper has handled, so the handle never outlives its request.
+ */
+public class UnitOfWorkListener implements ApplicationEventListener {
+    private final UnitOfWork unitOfWork;
+
+    public UnitOfWorkListener(UnitOfWork unitOfWork) {
+        this.unitOfWork = requireNonNull(unitOfWork);
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        unitOfWork.begin();
+        return this::onRequestEvent;
+    }
+
+    private void onRequestEvent(RequestEvent event) {
+        if (event.getType() == RequestEvent.Type.FINISHED) unitOfWork.end();
+    }
+}
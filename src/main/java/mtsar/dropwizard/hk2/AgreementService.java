@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import mtsar.api.AgreementReport;
+import mtsar.api.Answer;
+import mtsar.api.Stage;
+import mtsar.api.agreement.SparseCodingStudy;
+import mtsar.api.sql.AnswerDAO;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Maintains the agreement study of every stage between the requests.
+ * The study is brought up to date by streaming only the answers that have not been seen yet,
+ * and the reports are cached until the stage answers change. Changing or deleting answers causes the study to be rebuilt.
+ * <p>
+ * The approximate reports are computed on a sample of tasks and provide the bootstrap confidence intervals.
+ */
+public class AgreementService {
+    private static final String[] MEASURES = {"percentage", "weightedKappa", "nominalAlpha", "ordinalAlpha", "randolphKappa"};
+    /* the bootstrap is never stopped by the time budget before this number of replicates */
+    private static final int MIN_REPLICATES = 20;
+    /* the number of tasks whose minimal replicates are measured in a millisecond, which bounds the sample under a budget */
+    public static final int SAMPLE_PER_MILLISECOND = 100;
+    public static final int MAX_REPLICATES = 10000;
+    public static final int MAX_SAMPLE = 100000;
+    private final AnswerDAO answerDAO;
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>();
+
+    @Inject
+    public AgreementService(@Named(ReadReplica.NAME) AnswerDAO answerDAO) {
+        this.answerDAO = requireNonNull(answerDAO);
+    }
+
+    public AgreementReport getReport(Stage stage, boolean breakdown) {
+        final State state = states.computeIfAbsent(stage.getId(), id -> new State());
+
+        synchronized (state) {
+            if (!update(stage, state)) {
+                state.reset();
+                update(stage, state);
+            }
+
+            if (state.report == null) {
+                state.report = new AgreementReport.Builder().compute(state.study).build();
+            }
+
+            if (!breakdown) return state.report;
+
+            if (state.breakdown == null) {
+                state.breakdown = new AgreementReport.Builder().mergeFrom(state.report).breakdown(state.study).build();
+            }
+
+            return state.breakdown;
+        }
+    }
+
+    /**
+     * Forgets the study of the stage, e.g., when all its answers are purged.
+     *
+     * @param stage the stage identifier.
+     */
+    public void evict(String stage) {
+        states.remove(stage);
+    }
+
+    /**
+     * Computes the agreement on a reproducible sample of the stage tasks and estimates
+     * the percentile bootstrap confidence intervals by resampling the sampled tasks.
+     *
+     * @param stage      the stage.
+     * @param sample     the number of tasks to sample, at most {@link #MAX_SAMPLE} and, under a budget,
+     *                   at most {@link #SAMPLE_PER_MILLISECOND} per millisecond of it.
+     * @param seed       the seed of both the sample and the bootstrap.
+     * @param replicates the maximum number of the bootstrap replicates, at most {@link #MAX_REPLICATES}.
+     * @param budget     the time budget of the sample and the bootstrap in milliseconds, zero means no budget.
+     * @return Approximate agreement report.
+     */
+    public AgreementReport getApproximateReport(Stage stage, int sample, long seed, int replicates, long budget) {
+        sample = Math.min(sample, MAX_SAMPLE);
+        if (budget > 0) sample = (int) Math.min(sample, Math.max(1, Math.min(budget, MAX_SAMPLE) * SAMPLE_PER_MILLISECOND));
+        replicates = Math.min(replicates, MAX_REPLICATES);
+        final Map<Integer, Map<Integer, String>> tasks = answerDAO.listForSample(stage.getId(), seed, sample).stream().
+                filter(answer -> answer.getAnswer().isPresent()).
+                collect(Collectors.groupingBy(Answer::getTaskId, TreeMap::new,
+                        Collectors.toMap(Answer::getWorkerId, answer -> answer.getAnswer().get(), (a1, a2) -> a2)));
+        final List<Map<Integer, String>> items = new ArrayList<>(tasks.values());
+
+        final SparseCodingStudy study = new SparseCodingStudy();
+        for (int i = 0; i < items.size(); i++) study.setItem(i, items.get(i));
+        final AgreementReport.Builder builder = new AgreementReport.Builder().compute(study).setSample(items.size());
+
+        final Random random = new Random(seed);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        final double[][] estimates = new double[MEASURES.length][replicates];
+        int count = 0;
+        while (count < replicates && !items.isEmpty()) {
+            if (budget > 0 && count >= MIN_REPLICATES && System.nanoTime() > deadline) break;
+            final SparseCodingStudy replicate = new SparseCodingStudy();
+            for (int i = 0; i < items.size(); i++) replicate.setItem(i, items.get(random.nextInt(items.size())));
+            final double[] measures = measure(replicate);
+            for (int m = 0; m < MEASURES.length; m++) estimates[m][count] = measures[m];
+            count++;
+        }
+        builder.setReplicates(count);
+
+        for (int m = 0; m < MEASURES.length; m++) {
+            final double[] values = Arrays.stream(estimates[m], 0, count).filter(value -> !Double.isNaN(value)).sorted().toArray();
+            if (values.length == 0) continue;
+            builder.putIntervals(MEASURES[m], Arrays.asList(percentile(values, 0.025), percentile(values, 0.975)));
+        }
+
+        return builder.build();
+    }
+
+    private static double[] measure(SparseCodingStudy study) {
+        return new double[]{
+                study.getPercentage(),
+                study.getWeightedKappa(),
+                study.getNominalAlpha(),
+                study.getOrdinalAlpha(),
+                study.getRandolphKappa()
+        };
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        final double rank = p * (sorted.length - 1);
+        final int lower = (int) Math.floor(rank), upper = (int) Math.ceil(rank);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    /**
+     * Streams the answers that have not been seen yet and checks whether the study reflects all the stage answers.
+     *
+     * @param stage the stage.
+     * @param state the stage state.
+     * @return whether the study is consistent with the stage answers.
+     */
+    private boolean update(Stage stage, State state) {
+        return AnswerDAO.stream(answerDAO, stage.getId(), state.cursor, state::update);
+    }
+
+    private static class State {
+        private final AnswerDAO.Cursor cursor = new AnswerDAO.Cursor();
+        private SparseCodingStudy study = new SparseCodingStudy();
+        private AgreementReport report, breakdown;
+
+        private void reset() {
+            cursor.reset();
+            study = new SparseCodingStudy();
+            report = null;
+            breakdown = null;
+        }
+
+        private void update(Answer answer) {
+            if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) return;
+            if (!answer.getAnswer().isPresent()) return;
+            study.setRating(answer.getTaskId(), answer.getWorkerId(), answer.getAnswer().get());
+            report = null;
+            breakdown = null;
+        }
+    }
+}
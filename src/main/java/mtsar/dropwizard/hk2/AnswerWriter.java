@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import io.dropwizard.lifecycle.Managed;
+import mtsar.api.Answer;
+import mtsar.api.sql.AnswerDAO;
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Write-behind ingestion of the answers. The submissions are appended to a bounded queue, and
+ * a single writer thread inserts everything that has accumulated since the previous commit by one
+ * statement in one transaction, so the commit overhead is shared by the concurrent submissions.
+ * Each submission is acknowledged only after its batch is committed, and it is still atomic:
+ * if any of its answers is a duplicate or the batch fails otherwise, the batch is rolled back and
+ * its submissions are committed one by one, so only the offending ones are rejected.
+ */
+public class AnswerWriter implements Managed {
+    public static final int CAPACITY = 10000;
+    public static final int BATCH_SIZE = 1000;
+    public static final long TIMEOUT = 30;
+    private static final Logger log = LoggerFactory.getLogger(AnswerWriter.class);
+    private final AnswerDAO answerDAO;
+    private final boolean enabled;
+    private final BlockingQueue<Submission> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean running;
+
+    public AnswerWriter(AnswerDAO answerDAO, boolean enabled) {
+        this.answerDAO = requireNonNull(answerDAO);
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enqueues the answers and waits until they are committed, at most {@link #TIMEOUT} seconds in total.
+     *
+     * @param answers the answers to insert.
+     * @return the inserted answers.
+     * @throws ConflictException          if some of the answers are duplicates; none of them are inserted then.
+     * @throws RejectedExecutionException if the queue is full or the writer is not running.
+     * @throws TimeoutException           if the batch has not been committed in time.
+     * @throws InterruptedException       if the waiting has been interrupted.
+     */
+    public List<Answer> write(Collection<Answer> answers) throws InterruptedException, TimeoutException {
+        if (answers.isEmpty()) return Collections.emptyList();
+        if (!running) throw new RejectedExecutionException("The answer writer is not running");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        final Submission submission = new Submission(answers);
+        if (!queue.offer(submission, TIMEOUT, TimeUnit.SECONDS)) {
+            throw new RejectedExecutionException("The answer queue is full");
+        }
+        try {
+            return submission.result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        executor.execute(this::run);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) executor.shutdownNow();
+    }
+
+    private void run() {
+        final List<Submission> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                final Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        final List<Submission> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.forEach(submission -> submission.result.completeExceptionally(new RejectedExecutionException("The answer writer has been stopped")));
+    }
+
+    private void commit(List<Submission> batch) {
+        final List<List<Answer>> results;
+        try {
+            results = answerDAO.inTransaction((dao, status) -> insert(dao, batch));
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                /* the whole batch has been rolled back, so the submissions are retried one by one to isolate the failing ones */
+                if (!(e instanceof ConflictException)) log.warn("Could not commit a batch of {} submissions, retrying them one by one", batch.size(), e);
+                batch.forEach(submission -> commit(Collections.singletonList(submission)));
+            } else {
+                if (!(e instanceof ConflictException)) log.error("Could not commit a submission", e);
+                batch.get(0).result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) batch.get(i).result.complete(results.get(i));
+    }
+
+    /**
+     * Inserts the answers of all the submissions by one statement and assigns the stored answers
+     * to their submissions in the queue order.
+     *
+     * @throws ConflictException if some answers of a submission have not been inserted; since it is
+     *                           called in a transaction, this rolls back the whole batch.
+     */
+    private static List<List<Answer>> insert(AnswerDAO dao, List<Submission> batch) {
+        final List<Answer> answers = batch.stream().flatMap(submission -> submission.answers.stream()).collect(Collectors.toList());
+        final Map<Triple<String, Integer, Integer>, Answer> inserted = dao.insertUnique(answers).stream().
+                collect(Collectors.toMap(AnswerWriter::key, answer -> answer, (a, b) -> a));
+        final List<List<Answer>> results = new ArrayList<>(batch.size());
+        for (final Submission submission : batch) {
+            final List<Answer> stored = new ArrayList<>(), conflicting = new ArrayList<>();
+            for (final Answer answer : submission.answers) {
+                final Answer row = inserted.remove(key(answer));
+                if (row == null) {
+                    conflicting.add(answer);
+                } else {
+                    stored.add(row);
+                }
+            }
+            if (!conflicting.isEmpty()) throw new ConflictException(conflicting);
+            results.add(stored);
+        }
+        return results;
+    }
+
+    private static Triple<String, Integer, Integer> key(Answer answer) {
+        return Triple.of(answer.getStage(), answer.getWorkerId(), answer.getTaskId());
+    }
+
+    private static class Submission {
+        private final Collection<Answer> answers;
+        private final CompletableFuture<List<Answer>> result = new CompletableFuture<>();
+
+        Submission(Collection<Answer> answers) {
+            this.answers = answers;
+        }
+    }
+
+    /**
+     * Thrown when a submission contains the answers conflicting with the already stored ones.
+     */
+    public static class ConflictException extends RuntimeException {
+        private final List<Answer> conflicting;
+
+        public ConflictException(List<Answer> conflicting) {
+            super("Duplicate answers: " + conflicting.size());
+            this.conflicting = conflicting;
+        }
+
+        public List<Answer> getConflicting() {
+            return conflicting;
+        }
+    }
+}
@@ -16,16 +16,17 @@
 
 package mtsar.dropwizard.hk2;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.jdbi.DBIFactory;
 import io.dropwizard.setup.Environment;
 import mtsar.MechanicalTsarVersion;
 import mtsar.api.Stage;
-import mtsar.api.sql.AnswerDAO;
-import mtsar.api.sql.StageDAO;
-import mtsar.api.sql.TaskDAO;
-import mtsar.api.sql.WorkerDAO;
+import mtsar.api.Storage;
+import mtsar.api.memory.MemoryStorage;
+import mtsar.api.sql.*;
 import mtsar.dropwizard.MechanicalTsarConfiguration;
 import mtsar.dropwizard.MechanicalTsarVersionHealthCheck;
+import mtsar.processors.answer.OnlineEMAggregator;
 import mtsar.resources.MetaResource;
 import mtsar.resources.StageResource;
 import org.glassfish.hk2.api.ServiceLocator;
@@ -34,10 +35,18 @@ import org.glassfish.jersey.internal.inject.Injections;
 import org.skife.jdbi.v2.DBI;
 
 import javax.inject.Singleton;
+import java.sql.SQLException;
 import java.util.Map;
 
 public class ApplicationBinder extends AbstractBinder {
     private final DBI jdbi;
+    private final UnitOfWork unitOfWork;
+    private final ReadReplica replica;
+    private final Storage storage;
+    private final Storage replicaStorage;
+    private final AnswerWriter answerWriter;
+    private final PurgeService purgeService;
+    private final ObjectMapper mapper;
     private final ServiceLocator locator;
 
     public ServiceLocator getLocator() {
@@ -45,19 +54,55 @@ public class ApplicationBinder extends AbstractBinder {
     }
 
     public ApplicationBinder(MechanicalTsarConfiguration configuration, Environment environment) {
-        jdbi = new DBIFactory().build(environment, configuration.getDataSourceFactory(), "postgresql");
+        if (Storage.MEMORY.equals(configuration.getStorage())) {
+            jdbi = new DBI(() -> {
+                throw new SQLException("The database is not available with the in-memory storage");
+            });
+            unitOfWork = new UnitOfWork(jdbi);
+            replica = new ReadReplica(jdbi, null);
+            storage = replicaStorage = new MemoryStorage();
+        } else {
+            jdbi = new DBIFactory().build(environment, configuration.getDataSourceFactory(), "postgresql");
+            unitOfWork = new UnitOfWork(jdbi);
+            replica = new ReadReplica(jdbi, configuration.getReplicaDataSourceFactory() == null ? null :
+                    new DBIFactory().build(environment, configuration.getReplicaDataSourceFactory(), ReadReplica.NAME));
+            storage = unitOfWork;
+            replicaStorage = replica;
+        }
+        answerWriter = new AnswerWriter(storage.onDemand(AnswerDAO.class), configuration.isWriteBehind());
+        purgeService = new PurgeService(Storage.MEMORY.equals(configuration.getStorage()) ? null : jdbi,
+                storage.onDemand(TaskDAO.class), storage.onDemand(AnswerDAO.class));
+        mapper = environment.getObjectMapper();
         locator = Injections.createLocator(this);
+        purgeService.addListener(stage -> locator.getService(OnlineEMAggregator.Models.class).evict(stage));
+        purgeService.addListener(stage -> locator.getService(AgreementService.class).evict(stage));
     }
 
     @Override
     protected void configure() {
         bind(jdbi).to(DBI.class);
-        bind(jdbi.onDemand(StageDAO.class)).to(StageDAO.class);
-        bind(jdbi.onDemand(WorkerDAO.class)).to(WorkerDAO.class);
-        bind(jdbi.onDemand(TaskDAO.class)).to(TaskDAO.class);
-        bind(jdbi.onDemand(AnswerDAO.class)).to(AnswerDAO.class);
+        bind(unitOfWork).to(UnitOfWork.class);
+        bind(storage).to(Storage.class);
+        bind(storage.onDemand(StageDAO.class)).to(StageDAO.class);
+        bind(storage.onDemand(WorkerDAO.class)).to(WorkerDAO.class);
+        bind(storage.onDemand(TaskDAO.class)).to(TaskDAO.class);
+        bind(storage.onDemand(AnswerDAO.class)).to(AnswerDAO.class);
+        bind(storage.onDemand(AnswerAggregationDAO.class)).to(AnswerAggregationDAO.class);
+        bind(storage.onDemand(WorkerRankingDAO.class)).to(WorkerRankingDAO.class);
+        bindAsContract(CopyDAO.class).in(Singleton.class);
+        bind(mapper).to(ObjectMapper.class);
+
+        bind(answerWriter).to(AnswerWriter.class);
+        bind(purgeService).to(PurgeService.class);
+        bind(replica).to(ReadReplica.class);
+        bind(replicaStorage.onDemand(WorkerDAO.class)).named(ReadReplica.NAME).to(WorkerDAO.class);
+        bind(replicaStorage.onDemand(TaskDAO.class)).named(ReadReplica.NAME).to(TaskDAO.class);
+        bind(replicaStorage.onDemand(AnswerDAO.class)).named(ReadReplica.NAME).to(AnswerDAO.class);
 
         bindAsContract(StageService.class).in(Singleton.class);
+        bindAsContract(AgreementService.class).in(Singleton.class);
+        bindAsContract(ImportService.class).in(Singleton.class);
+        bindAsContract(OnlineEMAggregator.Models.class).in(Singleton.class);
         bindAsContract(MetaResource.class).in(Singleton.class);
         bindAsContract(StageResource.class).in(Singleton.class);
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Function;
+
+/**
+ * Creates the DAOs that choose the target DAO on every call, so {@link UnitOfWork} and {@link ReadReplica}
+ * can route the calls of any DAO interface.
+ */
+final class DAOProxy {
+    private DAOProxy() {
+    }
+
+    /**
+     * Creates the DAO delegating every call to the chosen target.
+     *
+     * @param dao    the DAO interface.
+     * @param target the function choosing the target of the called method, or null to skip the call.
+     * @param <T>    the DAO type.
+     * @return the DAO.
+     */
+    static <T> T create(Class<T> dao, Function<Method, T> target) {
+        return dao.cast(Proxy.newProxyInstance(dao.getClassLoader(), new Class<?>[]{dao}, (proxy, method, args) -> {
+            final T delegate = target.apply(method);
+            if (delegate == null) return null;
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }));
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import io.dropwizard.lifecycle.Managed;
+import mtsar.api.ImportJob;
+import mtsar.api.ImportReport;
+import mtsar.api.csv.CSVPipeline;
+import mtsar.api.csv.ImportException;
+import mtsar.util.PostgresUtils;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs the CSV imports in background. The upload is spooled to a temporary file, so the request
+ * is acknowledged as soon as the file is received, and a small pool of threads performs the imports
+ * while their progress is available through {@link #getJobs(String)}. The spooled files are deleted
+ * as soon as the job is finished or cancelled, and the finished jobs are forgotten after an hour.
+ * The service also owns the pool of CSV parsers shared by all the imports, see {@link #pipeline(Function, Consumer)}.
+ */
+public class ImportService implements Managed {
+    public static final int THREADS = 2;
+    public static final int MAX_FINISHED = 100;
+    public static final long RETENTION = TimeUnit.HOURS.toNanos(1);
+    private static final Logger log = LoggerFactory.getLogger(ImportService.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private final ExecutorService parsers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface Importer {
+        /**
+         * Imports the records.
+         *
+         * @param csv      the parsed CSV.
+         * @param progress the consumer of the number of the just stored records.
+         * @return the import report.
+         * @throws InterruptedException if the import has been interrupted.
+         */
+        ImportReport run(CSVParser csv, LongConsumer progress) throws InterruptedException;
+    }
+
+    /**
+     * Spools the stream and schedules the import.
+     *
+     * @param stage    the stage identifier.
+     * @param type     what is being imported.
+     * @param format   the CSV format.
+     * @param stream   the uploaded file.
+     * @param importer the import procedure.
+     * @return the job snapshot.
+     * @throws IOException in case of an I/O error.
+     */
+    public ImportJob submit(String stage, String type, CSVFormat format, InputStream stream, Importer importer) throws IOException {
+        final Path path = Files.createTempFile("mtsar-import-", ".csv");
+        try {
+            Files.copy(stream, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+
+        final Job job = new Job(UUID.randomUUID().toString(), stage, type, path, format, importer);
+        try {
+            job.future = executor.submit(job::run);
+        } catch (RejectedExecutionException e) {
+            delete(path);
+            throw e;
+        }
+        evict();
+        jobs.put(job.id, job);
+        return job.snapshot();
+    }
+
+    /**
+     * Creates the import pipeline that parses the records on the shared pool of this service.
+     *
+     * @param parser the record parser.
+     * @param writer the writer of the parsed chunks.
+     * @param <T>    type of the imported objects.
+     * @return the pipeline.
+     */
+    public <T> CSVPipeline<T> pipeline(Function<CSVRecord, T> parser, Consumer<List<T>> writer) {
+        return new CSVPipeline<>(parsers, parser, writer);
+    }
+
+    public Optional<ImportJob> getJob(String stage, String id) {
+        final Job job = jobs.get(id);
+        if (job == null || !job.stage.equals(stage)) return Optional.empty();
+        return Optional.of(job.snapshot());
+    }
+
+    public Collection<ImportJob> getJobs(String stage) {
+        evict();
+        return jobs.values().stream().filter(job -> job.stage.equals(stage)).map(Job::snapshot).collect(Collectors.toList());
+    }
+
+    /**
+     * Cancels the job. The pending job is removed from the queue together with its spooled file,
+     * and the running one is interrupted, which rolls its transaction back.
+     *
+     * @param stage the stage identifier.
+     * @param id    the job identifier.
+     * @return the job snapshot.
+     */
+    public Optional<ImportJob> cancel(String stage, String id) {
+        final Job job = jobs.get(id);
+        if (job == null || !job.stage.equals(stage)) return Optional.empty();
+        job.cancel();
+        return Optional.of(job.snapshot());
+    }
+
+    /* the finished jobs are kept for RETENTION, but no more than MAX_FINISHED of them */
+    private void evict() {
+        final long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.finished != 0 && now - job.finished > RETENTION);
+        final List<Job> finished = jobs.values().stream().
+                filter(job -> job.finished != 0).
+                sorted(Comparator.comparingLong(job -> job.finished)).
+                collect(Collectors.toList());
+        for (int i = 0; i < finished.size() - MAX_FINISHED; i++) jobs.remove(finished.get(i).id);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Unable to delete {}", path, e);
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    /* the queued jobs never run, so their files are deleted here */
+    @Override
+    public void stop() throws InterruptedException {
+        jobs.values().forEach(Job::cancel);
+        executor.shutdownNow();
+        parsers.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        parsers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private static class Job {
+        private final String id;
+        private final String stage;
+        private final String type;
+        private final Path path;
+        private final CSVFormat format;
+        private final Importer importer;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicReference<String> status = new AtomicReference<>(ImportJob.STATUS_PENDING);
+        private volatile Future<?> future;
+        private volatile boolean cancelled;
+        private volatile long started;
+        private volatile long finished;
+        private volatile ImportReport report;
+        private volatile String message;
+
+        private Job(String id, String stage, String type, Path path, CSVFormat format, Importer importer) {
+            this.id = id;
+            this.stage = stage;
+            this.type = type;
+            this.path = path;
+            this.format = format;
+            this.importer = importer;
+        }
+
+        private void run() {
+            if (!status.compareAndSet(ImportJob.STATUS_PENDING, ImportJob.STATUS_RUNNING)) return;
+            started = System.nanoTime();
+            String outcome = ImportJob.STATUS_FAILED;
+            try (final Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+                 final CSVParser csv = new CSVParser(reader, format)) {
+                report = importer.run(csv, processed::addAndGet);
+                outcome = ImportJob.STATUS_DONE;
+            } catch (ImportException e) {
+                report = e.getReport();
+                message = e.getMessage();
+            } catch (InterruptedException e) {
+                message = "Interrupted";
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                if (!cancelled) log.warn("Import {} has failed", id, e);
+                message = PostgresUtils.findUniqueViolation(e).orElse(String.valueOf(e.getMessage()));
+            } finally {
+                finished = System.nanoTime();
+                status.set(cancelled && !outcome.equals(ImportJob.STATUS_DONE) ? ImportJob.STATUS_CANCELLED : outcome);
+                delete(path);
+            }
+        }
+
+        private void cancel() {
+            if (status.compareAndSet(ImportJob.STATUS_PENDING, ImportJob.STATUS_CANCELLED)) {
+                if (future != null) future.cancel(false);
+                finished = System.nanoTime();
+                delete(path);
+            } else if (status.get().equals(ImportJob.STATUS_RUNNING)) {
+                cancelled = true;
+                future.cancel(true);
+            }
+        }
+
+        private ImportJob snapshot() {
+            final long count = processed.get();
+            final long elapsed = (finished > 0 ? finished : System.nanoTime()) - started;
+            final ImportJob.Builder builder = new ImportJob.Builder().
+                    setId(id).
+                    setStage(stage).
+                    setType(type).
+                    setStatus(status.get()).
+                    setProcessed(count).
+                    setThroughput(started == 0 || elapsed <= 0 ? 0 : count * 1e9 / elapsed).
+                    setMessage(Optional.ofNullable(message));
+            if (report != null) builder.putAllErrors(report.getErrors());
+            return builder.build();
+        }
+    }
+}
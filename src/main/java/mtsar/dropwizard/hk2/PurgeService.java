@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import io.dropwizard.lifecycle.Managed;
+import mtsar.api.PurgeJob;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.util.StringColumnMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Removes all the tasks or answers of a stage. The deleting request detaches the stage partition,
+ * which changes only the metadata, makes the data invisible at once and attaches an empty partition
+ * instead. The job then resets the sequence and drops the detached table in background, so the request
+ * waits for neither the sequence scan nor the storage release. The listeners forget the cached state
+ * of the purged stage, so it is not kept for the data that is gone.
+ * The progress is available through {@link #getJobs()}; the finished jobs are forgotten after an hour.
+ */
+public class PurgeService implements Managed {
+    public static final int MAX_FINISHED = 100;
+    public static final long RETENTION = TimeUnit.HOURS.toNanos(1);
+    private static final Logger log = LoggerFactory.getLogger(PurgeService.class);
+    private static final Pattern TABLE = Pattern.compile("purge_(tasks|answers)_[0-9a-f]{32}");
+    private final DBI dbi;
+    private final TaskDAO taskDAO;
+    private final AnswerDAO answerDAO;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * @param dbi       the database holding the detached tables, or null for the in-memory storage, which has none.
+     * @param taskDAO   the task DAO.
+     * @param answerDAO the answer DAO.
+     */
+    public PurgeService(@Nullable DBI dbi, TaskDAO taskDAO, AnswerDAO answerDAO) {
+        this.dbi = dbi;
+        this.taskDAO = requireNonNull(taskDAO);
+        this.answerDAO = requireNonNull(answerDAO);
+    }
+
+    /**
+     * Registers the callback receiving the identifier of every purged stage.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(requireNonNull(listener));
+    }
+
+    /**
+     * Removes all the tasks or answers of the stage at once and schedules the release of their storage.
+     * The removal fails here, e.g., when the answers still refer to the removed tasks.
+     *
+     * @param stage the stage identifier.
+     * @param type  either {@link PurgeJob#TYPE_TASKS} or {@link PurgeJob#TYPE_ANSWERS}.
+     * @return the job snapshot.
+     */
+    public PurgeJob submit(String stage, String type) {
+        checkArgument(PurgeJob.TYPE_TASKS.equals(type) || PurgeJob.TYPE_ANSWERS.equals(type), "Unknown purge type: %s", type);
+        final String table = PurgeJob.TYPE_TASKS.equals(type) ? taskDAO.detach(requireNonNull(stage)) : answerDAO.detach(requireNonNull(stage));
+        listeners.forEach(listener -> listener.accept(stage));
+        return submit(new Job(UUID.randomUUID().toString(), stage, type, table));
+    }
+
+    private PurgeJob submit(Job job) {
+        evict();
+        jobs.put(job.id, job);
+        executor.execute(job::run);
+        return job.snapshot();
+    }
+
+    public Collection<PurgeJob> getJobs() {
+        evict();
+        return jobs.values().stream().map(Job::snapshot).collect(Collectors.toList());
+    }
+
+    public Collection<PurgeJob> getJobs(String stage) {
+        evict();
+        return jobs.values().stream().filter(job -> stage.equals(job.stage)).map(Job::snapshot).collect(Collectors.toList());
+    }
+
+    /* the finished jobs are kept for RETENTION, but no more than MAX_FINISHED of them */
+    private void evict() {
+        final long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.finished != 0 && now - job.finished > RETENTION);
+        final List<Job> finished = jobs.values().stream().
+                filter(job -> job.finished != 0).
+                sorted(Comparator.comparingLong(job -> job.finished)).
+                collect(Collectors.toList());
+        for (int i = 0; i < finished.size() - MAX_FINISHED; i++) jobs.remove(finished.get(i).id);
+    }
+
+    /**
+     * Drops the detached tables left by the previous shutdown.
+     */
+    @Override
+    public void start() {
+        if (dbi == null) return;
+        final List<String> tables;
+        try (final Handle handle = dbi.open()) {
+            tables = handle.createQuery("select relname from pg_class where relkind = 'r' and relname like 'purge\\_%'").
+                    map(StringColumnMapper.INSTANCE).list();
+        }
+        for (final String table : tables) {
+            final Matcher matcher = TABLE.matcher(table);
+            if (matcher.matches()) submit(new Job(UUID.randomUUID().toString(), null, matcher.group(1), table));
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private class Job {
+        private final String id;
+        private final String stage;
+        private final String type;
+        private final String table;
+        private volatile String status = PurgeJob.STATUS_PENDING;
+        private volatile String message;
+        private volatile long processed;
+        private volatile long finished;
+
+        private Job(String id, @Nullable String stage, String type, @Nullable String table) {
+            this.id = id;
+            this.stage = stage;
+            this.type = type;
+            this.table = table;
+        }
+
+        private void run() {
+            status = PurgeJob.STATUS_RUNNING;
+            try {
+                if (stage != null) {
+                    if (PurgeJob.TYPE_TASKS.equals(type)) {
+                        taskDAO.resetSequence();
+                    } else {
+                        answerDAO.resetSequence();
+                    }
+                }
+                /* the in-memory storage removes the data at once and leaves no table */
+                if (table != null) {
+                    checkArgument(TABLE.matcher(table).matches(), "Not a detached table: %s", table);
+                    try (final Handle handle = requireNonNull(dbi).open()) {
+                        final long count = handle.createQuery("select count(*) from " + table).mapTo(Long.class).first();
+                        handle.execute("drop table " + table);
+                        processed = count;
+                    }
+                }
+                status = PurgeJob.STATUS_DONE;
+            } catch (RuntimeException e) {
+                log.warn("Purge of the {} of stage {} has failed", type, stage, e);
+                message = String.valueOf(e.getMessage());
+                status = PurgeJob.STATUS_FAILED;
+            } finally {
+                finished = System.nanoTime();
+            }
+        }
+
+        private PurgeJob snapshot() {
+            return new PurgeJob.Builder().
+                    setId(id).
+                    setStage(Optional.ofNullable(stage)).
+                    setType(type).
+                    setTable(Optional.ofNullable(table)).
+                    setStatus(status).
+                    setProcessed(processed).
+                    setMessage(Optional.ofNullable(message)).
+                    build();
+        }
+    }
+}
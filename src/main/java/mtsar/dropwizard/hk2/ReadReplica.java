@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import io.dropwizard.lifecycle.Managed;
+import mtsar.api.Storage;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes the heavy read-only queries to the optional read replica. The DAOs created by
+ * {@link #onDemand(Class)} are bound under the {@link #NAME} qualifier and delegate every call
+ * to the replica while it responds to the periodic checks, and to the primary database otherwise.
+ * The replica may lag behind the primary, so it must only be used where slightly stale data are
+ * acceptable, e.g., by the answer aggregators, the worker rankers and the exports.
+ */
+public class ReadReplica implements Managed, Storage {
+    public static final String NAME = "replica";
+    public static final int CHECK_INTERVAL = 10;
+    public static final int CHECK_TIMEOUT = 5;
+    private static final Logger log = LoggerFactory.getLogger(ReadReplica.class);
+    private final DBI primary;
+    private final DBI replica;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private volatile boolean healthy;
+
+    public ReadReplica(DBI primary, @Nullable DBI replica) {
+        this.primary = requireNonNull(primary);
+        this.replica = replica;
+    }
+
+    public boolean isConfigured() {
+        return replica != null;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Creates the DAO routed to the replica when it is healthy and to the primary database otherwise.
+     * If no replica is configured, the primary DAO is returned as is.
+     *
+     * @param dao the DAO interface.
+     * @param <T> the DAO type.
+     * @return the routed DAO.
+     */
+    @Override
+    public <T> T onDemand(Class<T> dao) {
+        final T primaryDAO = primary.onDemand(dao);
+        if (replica == null) return primaryDAO;
+        final T replicaDAO = replica.onDemand(dao);
+        return DAOProxy.create(dao, method -> healthy ? replicaDAO : primaryDAO);
+    }
+
+    /**
+     * Checks whether the replica accepts connections and updates its health status.
+     *
+     * @return whether the replica is healthy.
+     */
+    public boolean check() {
+        if (replica == null) return false;
+        boolean valid;
+        try (final Handle handle = replica.open()) {
+            valid = handle.getConnection().isValid(CHECK_TIMEOUT);
+        } catch (Exception e) {
+            log.debug("Read replica check failed", e);
+            valid = false;
+        }
+        if (valid != healthy) {
+            if (valid) {
+                log.info("Read replica is available, routing the read-only queries to it");
+            } else {
+                log.warn("Read replica is unavailable, routing the read-only queries to the primary database");
+            }
+        }
+        return healthy = valid;
+    }
+
+    @Override
+    public void start() {
+        if (replica == null) return;
+        check();
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.dropwizard.hk2;
+
+import mtsar.api.Storage;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Shares one database handle between all the DAO calls made while serving a request.
+ * The DAOs created by {@link #onDemand(Class)} are attached to the handle of the current unit
+ * of work, which is opened on the first call and closed by {@link #release()} or {@link #end()};
+ * outside of a unit of work, e.g., in the background jobs, they behave like the usual on-demand DAOs.
+ */
+public class UnitOfWork implements Storage {
+    private final DBI dbi;
+    private final ThreadLocal<Work> current = new ThreadLocal<>();
+
+    public UnitOfWork(DBI dbi) {
+        this.dbi = requireNonNull(dbi);
+    }
+
+    /**
+     * Starts the unit of work on the current thread, ending the previous one if it has been left open.
+     */
+    public void begin() {
+        end();
+        current.set(new Work());
+    }
+
+    /**
+     * Ends the unit of work on the current thread and closes its handle, if it has been opened.
+     */
+    public void end() {
+        final Work work = current.get();
+        if (work == null) return;
+        current.remove();
+        work.close();
+    }
+
+    /**
+     * Closes the handle of the current unit of work, if it has been opened, so the connection is not held
+     * while the request computes without the database, e.g., while aggregating the answers; the next DAO
+     * call opens a new handle. The unit of work remains active.
+     *
+     * @throws IllegalStateException if the handle is in a transaction.
+     */
+    public void release() {
+        final Work work = current.get();
+        if (work != null) work.release();
+    }
+
+    public boolean isActive() {
+        return current.get() != null;
+    }
+
+    /**
+     * Creates the DAO that uses the handle of the current unit of work if there is one,
+     * and checks out a connection per call otherwise. Closing such a DAO inside a unit of work
+     * has no effect, since the handle is owned by the unit of work.
+     *
+     * @param dao the DAO interface.
+     * @param <T> the DAO type.
+     * @return the DAO.
+     */
+    @Override
+    public <T> T onDemand(Class<T> dao) {
+        final T onDemandDAO = dbi.onDemand(dao);
+        return DAOProxy.create(dao, method -> {
+            final Work work = current.get();
+            if (work == null) return onDemandDAO;
+            return method.getName().equals("close") && method.getParameterCount() == 0 ? null : work.attach(dao);
+        });
+    }
+
+    private class Work {
+        private final Map<Class<?>, Object> daos = new HashMap<>();
+        private Handle handle;
+
+        private <T> T attach(Class<T> dao) {
+            if (handle == null) handle = dbi.open();
+            return dao.cast(daos.computeIfAbsent(dao, handle::attach));
+        }
+
+        private void release() {
+            if (handle == null) return;
+            checkState(!handle.isInTransaction(), "The handle is in a transaction");
+            daos.clear();
+            handle.close();
+            handle = null;
+        }
+
+        private void close() {
+            if (handle != null) handle.close();
+        }
+    }
+}
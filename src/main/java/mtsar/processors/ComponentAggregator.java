@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Task;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An answer aggregator that is able to process any part of the stage independently of the rest,
+ * e.g., a connected component of the worker-task answer graph.
+ *
+ * @see mtsar.processors.answer.PartitioningAggregator
+ */
+public interface ComponentAggregator extends AnswerAggregator {
+    /**
+     * Given the tasks and their answers, an aggregator maps these tasks to the aggregated answers
+     * without accessing any other tasks or answers of the stage.
+     *
+     * @param taskMap tasks indexed by their identifiers.
+     * @param answers answers for these tasks.
+     * @return Aggregated answers.
+     */
+    @Nonnull
+    Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> taskMap, @Nonnull Collection<Answer> answers);
+}
@@ -20,13 +20,16 @@ import java.util.stream.Collectors;
  */
 public abstract class SQUARE {
     protected Models<Integer, Integer, String> compute(Stage stage, AnswerDAO answerDAO, Map<Integer, Task> taskMap) {
+        return compute(taskMap, answerDAO.listForProcessing(stage.getId()));
+    }
+
+    protected Models<Integer, Integer, String> compute(Map<Integer, Task> taskMap, Collection<Answer> answers) {
         final Models<Integer, Integer, String> models = new Models<>();
 
         final Set<String> categories = taskMap.values().stream().flatMap(t -> t.getAnswers().stream()).collect(Collectors.toSet());
         models.setResponseCategories(new TreeSet<>(categories));
 
         final Map<Integer, workersDataStruct<Integer, String>> workers = new HashMap<>();
-        final List<Answer> answers = answerDAO.listForStage(stage.getId());
         for (final Answer answer : answers) {
             if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) continue;
             if (answer.getAnswers().isEmpty()) continue;
@@ -26,12 +26,14 @@ import mtsar.api.Stage;
 import mtsar.api.Task;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
-import mtsar.processors.AnswerAggregator;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.ComponentAggregator;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.RealDistribution;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -49,7 +51,7 @@ import static java.util.Objects.requireNonNull;
  * @see <a href="http://pubsonline.informs.org/doi/abs/10.1287/opre.2013.1235">10.1287/opre.2013.1235</a>
  * @see MajorityVoting
  */
-public class KOSAggregator implements AnswerAggregator {
+public class KOSAggregator implements ComponentAggregator {
     protected final static Predicate<Task> SINGLE_BINARY_TYPE = task -> task.getAnswers().size() == 2 && task.getType().equalsIgnoreCase(TaskDAO.TASK_TYPE_SINGLE);
     @Inject
     protected Stage stage;
@@ -62,7 +64,7 @@ public class KOSAggregator implements AnswerAggregator {
     }
 
     @Inject
-    public KOSAggregator(TaskDAO taskDAO, AnswerDAO answerDAO) {
+    public KOSAggregator(@Named(ReadReplica.NAME) TaskDAO taskDAO, @Named(ReadReplica.NAME) AnswerDAO answerDAO) {
         this.taskDAO = requireNonNull(taskDAO);
         this.answerDAO = requireNonNull(answerDAO);
     }
@@ -74,10 +76,17 @@ public class KOSAggregator implements AnswerAggregator {
         checkArgument(tasks.stream().allMatch(SINGLE_BINARY_TYPE), "tasks should be of the type single and have only two possible answers");
         if (tasks.isEmpty()) return Collections.emptyMap();
 
-        final List<Answer> answers = answerDAO.listForStage(stage.getId());
+        final List<Answer> answers = answerDAO.listForProcessing(stage.getId());
         if (answers.isEmpty()) return Collections.emptyMap();
 
-        final Map<Integer, Task> taskMap = taskDAO.listForStage(stage.getId()).stream().
+        return aggregate(taskDAO.listForStage(stage.getId()).stream().
+                collect(Collectors.toMap(Task::getId, Function.identity())), answers);
+    }
+
+    @Override
+    @Nonnull
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> tasks, @Nonnull Collection<Answer> answers) {
+        final Map<Integer, Task> taskMap = tasks.values().stream().
                 filter(SINGLE_BINARY_TYPE).collect(Collectors.toMap(Task::getId, Function.identity()));
 
         final Map<Integer, BiMap<String, Short>> answerIndex = taskMap.values().stream().collect(Collectors.toMap(Task::getId,
@@ -94,6 +103,7 @@ public class KOSAggregator implements AnswerAggregator {
 
         for (final Answer answer : answers) {
             if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) continue;
+            if (!answerIndex.containsKey(answer.getTaskId())) continue;
             graph.put(answer.getTaskId(), answer.getWorkerId(), answerIndex.get(answer.getTaskId()).get(answer.getAnswers().get(0)));
         }
 
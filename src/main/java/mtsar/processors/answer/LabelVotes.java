@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-label vote counters of a task stored as bit-sliced words: the i-th plane holds the i-th bit
+ * of the counters of 64 labels, so a whole label set encoded as a bitset is counted
+ * by a ripple-carry addition over the planes instead of a loop over the labels.
+ */
+final class LabelVotes {
+    private final int labels;
+    private final int words;
+    /* planes[bit][word] */
+    private long[][] planes = new long[0][];
+    private int voters;
+
+    LabelVotes(int labels) {
+        this.labels = labels;
+        this.words = (labels + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    int getLabels() {
+        return labels;
+    }
+
+    int getVoters() {
+        return voters;
+    }
+
+    /**
+     * Encodes the given answers as a bitset over the task answer options.
+     *
+     * @param index   answer options of the task mapped to their positions.
+     * @param answers given answers.
+     * @return Bitset, or null if an answer is not an option of the task.
+     */
+    long[] encode(Map<String, Integer> index, List<String> answers) {
+        final long[] bits = new long[words];
+        for (final String answer : answers) {
+            final Integer position = index.get(answer);
+            if (position == null) return null;
+            bits[position / Long.SIZE] |= 1L << (position % Long.SIZE);
+        }
+        return bits;
+    }
+
+    void add(long[] bits) {
+        voters++;
+        for (int w = 0; w < words; w++) {
+            long carry = bits[w];
+            for (int b = 0; carry != 0; b++) {
+                if (b == planes.length) grow();
+                final long sum = planes[b][w] ^ carry;
+                carry &= planes[b][w];
+                planes[b][w] = sum;
+            }
+        }
+    }
+
+    private void grow() {
+        planes = Arrays.copyOf(planes, planes.length + 1);
+        planes[planes.length - 1] = new long[words];
+    }
+
+    int count(int label) {
+        final int w = label / Long.SIZE, shift = label % Long.SIZE;
+        int count = 0;
+        for (int b = 0; b < planes.length; b++) count |= (int) ((planes[b][w] >>> shift) & 1L) << b;
+        return count;
+    }
+
+    int[] counts() {
+        final int[] counts = new int[labels];
+        for (int label = 0; label < labels; label++) counts[label] = count(label);
+        return counts;
+    }
+}
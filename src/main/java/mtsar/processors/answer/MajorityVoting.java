@@ -16,18 +16,21 @@
 
 package mtsar.processors.answer;
 
+import mtsar.api.Answer;
 import mtsar.api.AnswerAggregation;
 import mtsar.api.Stage;
 import mtsar.api.Task;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
-import mtsar.processors.AnswerAggregator;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.ComponentAggregator;
 import mtsar.processors.SQUARE;
 import org.square.qa.algorithms.MajorityVoteGeneralized;
 import org.square.qa.utilities.constructs.Models;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -38,7 +41,7 @@ import java.util.stream.Collectors;
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
-public class MajorityVoting extends SQUARE implements AnswerAggregator {
+public class MajorityVoting extends SQUARE implements ComponentAggregator {
     protected final static Predicate<Task> SINGLE_TYPE = task -> task.getType().equalsIgnoreCase(TaskDAO.TASK_TYPE_SINGLE);
     @Inject
     protected Stage stage;
@@ -50,7 +53,7 @@ public class MajorityVoting extends SQUARE implements AnswerAggregator {
     }
 
     @Inject
-    public MajorityVoting(AnswerDAO answerDAO) {
+    public MajorityVoting(@Named(ReadReplica.NAME) AnswerDAO answerDAO) {
         this.answerDAO = requireNonNull(answerDAO);
     }
 
@@ -61,14 +64,21 @@ public class MajorityVoting extends SQUARE implements AnswerAggregator {
         checkArgument(tasks.stream().allMatch(SINGLE_TYPE), "tasks should be of the type single");
         if (tasks.isEmpty()) return Collections.emptyMap();
         final Map<Integer, Task> taskIds = tasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
-        final Models.MajorityModel<Integer, Integer, String> majorityModel = compute(stage, answerDAO, taskIds).getMajorityModel();
+        return aggregate(taskIds, answerDAO.listForProcessing(stage.getId()));
+    }
+
+    @Nonnull
+    @Override
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> taskMap, @Nonnull Collection<Answer> answers) {
+        checkArgument(taskMap.values().stream().allMatch(SINGLE_TYPE), "tasks should be of the type single");
+        final Models.MajorityModel<Integer, Integer, String> majorityModel = compute(taskMap, answers).getMajorityModel();
         final MajorityVoteGeneralized<Integer, Integer, String> majorityVoting = new MajorityVoteGeneralized<>(majorityModel);
         majorityVoting.computeLabelEstimates();
         final Map<Integer, AnswerAggregation> aggregations = majorityVoting.getCurrentModel().getCombinedEstLabels().entrySet().stream().
-                filter(entry -> taskIds.containsKey(entry.getKey())).
+                filter(entry -> taskMap.containsKey(entry.getKey())).
                 collect(Collectors.toMap(Map.Entry::getKey,
                         entry -> new AnswerAggregation.Builder()
-                                .setTask(taskIds.get(entry.getKey()))
+                                .setTask(taskMap.get(entry.getKey()))
                                 .addAnswers(entry.getValue().getSecond(), true)
                                 .build()
                 ));
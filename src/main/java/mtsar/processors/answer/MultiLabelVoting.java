@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.ComponentAggregator;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Majority voting that supports both the single-label and the multi-label tasks.
+ * Every answer is encoded as a bitset over the task answer options and the votes are counted per option
+ * by {@link LabelVotes}. A single-label task is assigned the most voted option, while a multi-label task
+ * is assigned every option chosen by more than the {@code threshold} share of the workers (one half by default);
+ * a multi-label task having no such options is not aggregated.
+ *
+ * @see MajorityVoting
+ */
+public class MultiLabelVoting implements ComponentAggregator {
+    @Inject
+    protected Stage stage;
+    protected final AnswerDAO answerDAO;
+
+    MultiLabelVoting(Stage stage, AnswerDAO answerDAO) {
+        this(answerDAO);
+        this.stage = stage;
+    }
+
+    @Inject
+    public MultiLabelVoting(@Named(ReadReplica.NAME) AnswerDAO answerDAO) {
+        this.answerDAO = requireNonNull(answerDAO);
+    }
+
+    @Nonnull
+    @Override
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Collection<Task> tasks) {
+        requireNonNull(stage, "the stage provider should not provide null");
+        if (tasks.isEmpty()) return Collections.emptyMap();
+        final Map<Integer, Task> taskMap = tasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
+        return aggregate(taskMap, answerDAO.listForProcessing(stage.getId()));
+    }
+
+    @Nonnull
+    @Override
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> taskMap, @Nonnull Collection<Answer> answers) {
+        final Map<Integer, Map<String, Integer>> indices = new HashMap<>();
+        final Map<Integer, LabelVotes> votes = new HashMap<>();
+
+        for (final Answer answer : answers) {
+            if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) continue;
+            if (answer.getAnswers().isEmpty()) continue;
+            final Task task = taskMap.get(answer.getTaskId());
+            if (task == null) continue;
+
+            final Map<String, Integer> index = indices.computeIfAbsent(task.getId(), id -> {
+                final Map<String, Integer> map = new HashMap<>(task.getAnswers().size());
+                for (int i = 0; i < task.getAnswers().size(); i++) map.putIfAbsent(task.getAnswers().get(i), i);
+                return map;
+            });
+
+            final LabelVotes taskVotes = votes.computeIfAbsent(task.getId(), id -> new LabelVotes(task.getAnswers().size()));
+            final long[] bits = taskVotes.encode(index, answer.getAnswers());
+            if (bits != null) taskVotes.add(bits);
+        }
+
+        final double threshold = getThreshold();
+        final Map<Integer, AnswerAggregation> aggregations = new HashMap<>();
+
+        for (final Map.Entry<Integer, LabelVotes> entry : votes.entrySet()) {
+            final LabelVotes taskVotes = entry.getValue();
+            if (taskVotes.getVoters() == 0) continue;
+
+            final Task task = taskMap.get(entry.getKey());
+            final int[] counts = taskVotes.counts();
+            final AnswerAggregation.Builder builder = new AnswerAggregation.Builder().setTask(task);
+
+            if (task.getType().equalsIgnoreCase(TaskDAO.TASK_TYPE_MULTIPLE)) {
+                for (int label = 0; label < counts.length; label++) {
+                    if (counts[label] > threshold * taskVotes.getVoters()) {
+                        builder.addAnswers(task.getAnswers().get(label));
+                        builder.addConfidences((double) counts[label] / taskVotes.getVoters());
+                    }
+                }
+            } else {
+                int winner = 0;
+                for (int label = 1; label < counts.length; label++) if (counts[label] > counts[winner]) winner = label;
+                builder.addAnswers(task.getAnswers().get(winner));
+                builder.addConfidences((double) counts[winner] / taskVotes.getVoters());
+            }
+
+            final AnswerAggregation aggregation = builder.build();
+            if (!aggregation.getAnswers().isEmpty()) aggregations.put(task.getId(), aggregation);
+        }
+
+        return aggregations;
+    }
+
+    private double getThreshold() {
+        return NumberUtils.toDouble(stage.getOptions().get("threshold"), 0.5);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.AnswerAggregator;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Online variant of the Dawid-Skene expectation-maximization algorithm.
+ * Every answer updates the confusion estimates of its worker and the posterior of its task exactly once,
+ * so the state is bounded by O(workers &#215; labels&#178; + tasks &#215; labels) regardless of the answer count.
+ * <p>
+ * The state of each stage is bootstrapped by streaming the answers through a database cursor
+ * and is then kept up to date by streaming only the answers that have not been seen yet.
+ * Changing or deleting answers invalidates the state, which is then rebuilt from scratch
+ * with the same labels and the ones that have appeared since.
+ *
+ * @see <a href="http://dx.doi.org/10.1111/j.1467-9868.2009.00698.x">10.1111/j.1467-9868.2009.00698.x</a>
+ * @see mtsar.processors.meta.DawidSkeneProcessor
+ */
+public class OnlineEMAggregator implements AnswerAggregator {
+    @Inject
+    protected Stage stage;
+    protected final TaskDAO taskDAO;
+    protected final AnswerDAO answerDAO;
+    protected final Models models;
+
+    OnlineEMAggregator(Stage stage, TaskDAO taskDAO, AnswerDAO answerDAO, Models models) {
+        this(taskDAO, answerDAO, models);
+        this.stage = stage;
+    }
+
+    @Inject
+    public OnlineEMAggregator(@Named(ReadReplica.NAME) TaskDAO taskDAO, @Named(ReadReplica.NAME) AnswerDAO answerDAO, Models models) {
+        this.taskDAO = requireNonNull(taskDAO);
+        this.answerDAO = requireNonNull(answerDAO);
+        this.models = requireNonNull(models);
+    }
+
+    @Override
+    @Nonnull
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Collection<Task> tasks) {
+        requireNonNull(stage, "the stage provider should not provide null");
+        if (tasks.isEmpty()) return Collections.emptyMap();
+
+        final Model model = models.get(stage.getId(), this::newModel);
+        final Map<Integer, AnswerAggregation> aggregations = new HashMap<>();
+
+        synchronized (model) {
+            if (!update(model)) {
+                model.reset();
+                update(model);
+            }
+
+            for (final Task task : tasks) {
+                final Map<String, Double> posterior = model.posterior(task);
+                if (posterior.isEmpty()) continue;
+                aggregations.put(task.getId(), new AnswerAggregation.Builder().
+                        setTask(task).
+                        addAnswers(posterior, true).
+                        build());
+            }
+        }
+
+        return aggregations;
+    }
+
+    private Model newModel() {
+        final Set<String> labels = new TreeSet<>();
+        for (final Task task : taskDAO.listForProcessing(stage.getId())) labels.addAll(task.getAnswers());
+        return new Model(labels, NumberUtils.toDouble(stage.getOptions().get("diagonalPrior"), 2.0));
+    }
+
+    /**
+     * Streams the answers that have not been seen yet and checks whether the model reflects all the stage answers.
+     *
+     * @param model the stage model.
+     * @return whether the model is consistent with the stage answers.
+     */
+    private boolean update(Model model) {
+        if (model.stale) return false;
+        return AnswerDAO.stream(answerDAO, stage.getId(), model.cursor, model::update) && !model.stale;
+    }
+
+    /**
+     * Holds the online models of the stages between the requests.
+     */
+    public static class Models {
+        private final ConcurrentMap<String, Model> models = new ConcurrentHashMap<>();
+
+        Model get(String stage, Supplier<Model> supplier) {
+            return models.computeIfAbsent(stage, id -> supplier.get());
+        }
+
+        /**
+         * Forgets the model of the stage, e.g., when all its answers are purged.
+         *
+         * @param stage the stage identifier.
+         */
+        public void evict(String stage) {
+            models.remove(stage);
+        }
+    }
+
+    static class Model {
+        private Map<String, Integer> labels;
+        private String[] names;
+        private double diagonalPrior;
+        /* worker identifiers are mapped to the soft confusion counts of the kind true label by given label */
+        private Map<Integer, double[][]> workers;
+        /* task identifiers are mapped to the log-likelihoods of the true labels */
+        private Map<Integer, double[]> tasks;
+        /* sum of the task posteriors used as the class prior counts */
+        private double[] priors;
+        private final AnswerDAO.Cursor cursor = new AnswerDAO.Cursor();
+        /* labels that have appeared after the model was built */
+        private final Set<String> unknown = new TreeSet<>();
+        private boolean stale;
+
+        Model(Set<String> labels, double diagonalPrior) {
+            reset(labels, diagonalPrior);
+        }
+
+        private void reset(Set<String> labels, double diagonalPrior) {
+            this.labels = new HashMap<>(labels.size());
+            this.names = labels.toArray(new String[labels.size()]);
+            for (int i = 0; i < names.length; i++) this.labels.put(names[i], i);
+            this.diagonalPrior = diagonalPrior;
+            this.workers = new HashMap<>();
+            this.tasks = new HashMap<>();
+            this.priors = new double[names.length];
+            this.cursor.reset();
+            this.unknown.clear();
+            this.stale = false;
+        }
+
+        /**
+         * Clears the model keeping its labels and adding the ones that have appeared since, so the tasks are not reloaded.
+         */
+        void reset() {
+            final Set<String> labels = new TreeSet<>(this.labels.keySet());
+            labels.addAll(unknown);
+            reset(labels, diagonalPrior);
+        }
+
+        void update(Answer answer) {
+            if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER) || answer.getAnswers().isEmpty()) return;
+
+            final int[] given = new int[answer.getAnswers().size()];
+            for (int i = 0; i < given.length; i++) {
+                final Integer label = labels.get(answer.getAnswers().get(i));
+                if (label == null) {
+                    /* the label has appeared after the model was built, so the model should be rebuilt */
+                    unknown.add(answer.getAnswers().get(i));
+                    stale = true;
+                    continue;
+                }
+                given[i] = label;
+            }
+            if (stale) return;
+
+            final int n = names.length;
+            final double[][] confusion = workers.computeIfAbsent(answer.getWorkerId(), id -> new double[n][n]);
+            final double[] known = tasks.get(answer.getTaskId());
+            final double[] likelihood = (known == null) ? new double[n] : known;
+            final double[] before = (known == null) ? new double[n] : posterior(likelihood);
+            if (known == null) tasks.put(answer.getTaskId(), likelihood);
+
+            /* E-step for the task given the current estimate of the worker confusion */
+            for (final int label : given) {
+                for (int k = 0; k < n; k++) likelihood[k] += Math.log(theta(confusion, k, label));
+            }
+
+            final double[] posterior = posterior(likelihood);
+            for (int k = 0; k < n; k++) priors[k] += posterior[k] - before[k];
+
+            /* incremental M-step for the worker given the updated task posterior */
+            for (final int label : given) {
+                for (int k = 0; k < n; k++) confusion[k][label] += posterior[k];
+            }
+        }
+
+        private double theta(double[][] confusion, int truth, int label) {
+            final double[] row = confusion[truth];
+            double sum = 0.0;
+            for (final double value : row) sum += value;
+            final double prior = (truth == label ? diagonalPrior : 1.0);
+            return (row[label] + prior) / (sum + diagonalPrior + row.length - 1);
+        }
+
+        private static double[] posterior(double[] likelihood) {
+            final double[] posterior = new double[likelihood.length];
+            double max = Double.NEGATIVE_INFINITY, sum = 0.0;
+            for (final double value : likelihood) max = Math.max(max, value);
+            for (int k = 0; k < likelihood.length; k++) sum += (posterior[k] = Math.exp(likelihood[k] - max));
+            for (int k = 0; k < likelihood.length; k++) posterior[k] /= sum;
+            return posterior;
+        }
+
+        Map<String, Double> posterior(Task task) {
+            final double[] likelihood = tasks.get(task.getId());
+            if (likelihood == null) return Collections.emptyMap();
+
+            double total = 0.0;
+            for (final double prior : priors) total += prior;
+
+            final Map<String, Double> scores = new HashMap<>();
+            double max = Double.NEGATIVE_INFINITY;
+            for (final String answer : task.getAnswers()) {
+                final Integer k = labels.get(answer);
+                if (k == null) continue;
+                final double score = likelihood[k] + Math.log((priors[k] + 1.0) / (total + priors.length));
+                scores.put(answer, score);
+                max = Math.max(max, score);
+            }
+
+            double sum = 0.0;
+            for (final Map.Entry<String, Double> entry : scores.entrySet()) {
+                entry.setValue(Math.exp(entry.getValue() - max));
+                sum += entry.getValue();
+            }
+            for (final Map.Entry<String, Double> entry : scores.entrySet()) entry.setValue(entry.getValue() / sum);
+            return scores;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import it.unimi.dsi.fastutil.ints.*;
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.AnswerAggregator;
+import mtsar.processors.ComponentAggregator;
+import mtsar.processors.meta.DawidSkeneProcessor;
+import mtsar.util.UnionFind;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * This aggregator splits the worker-task answer graph of the stage into its connected components
+ * using a disjoint-set forest and runs another aggregator on every component in parallel.
+ * Only the components containing the requested tasks are loaded and processed.
+ * <p>
+ * Since the components share neither tasks nor workers, the results of {@link MajorityVoting}
+ * and {@link KOSAggregator} are the same as if the whole stage was processed. The aggregators
+ * estimating the stage-wide parameters, like the class priors of {@link DawidSkeneProcessor}
+ * and {@link mtsar.processors.meta.ZenCrowd}, estimate them on every component separately,
+ * so their results may differ from the ones on the whole stage.
+ * <p>
+ * The underlying aggregator is specified by the {@code componentAggregator} stage option
+ * and defaults to {@link DawidSkeneProcessor}.
+ */
+public class PartitioningAggregator implements AnswerAggregator {
+    @Inject
+    protected Stage stage;
+    /* the stage-local locator is injected into the field since the constructor is resolved by the global one */
+    @Inject
+    protected ServiceLocator locator;
+    protected final TaskDAO taskDAO;
+    protected final AnswerDAO answerDAO;
+    private ComponentAggregator aggregator;
+
+    PartitioningAggregator(Stage stage, TaskDAO taskDAO, AnswerDAO answerDAO, ComponentAggregator aggregator) {
+        this(taskDAO, answerDAO);
+        this.stage = stage;
+        this.aggregator = aggregator;
+    }
+
+    @Inject
+    public PartitioningAggregator(@Named(ReadReplica.NAME) TaskDAO taskDAO, @Named(ReadReplica.NAME) AnswerDAO answerDAO) {
+        this.taskDAO = requireNonNull(taskDAO);
+        this.answerDAO = requireNonNull(answerDAO);
+    }
+
+    @Override
+    @Nonnull
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Collection<Task> tasks) {
+        requireNonNull(stage, "the stage provider should not provide null");
+        if (tasks.isEmpty()) return Collections.emptyMap();
+
+        final Set<Integer> taskIds = tasks.stream().map(Task::getId).collect(Collectors.toSet());
+        final Component connected = load(taskIds);
+        final Collection<Component> components = partition(connected.taskMap, connected.answers);
+        if (components.isEmpty()) return Collections.emptyMap();
+
+        final ComponentAggregator aggregator = getAggregator();
+        return components.parallelStream().
+                flatMap(component -> aggregator.aggregate(component.taskMap, component.answers).entrySet().stream()).
+                filter(entry -> taskIds.contains(entry.getKey())).
+                collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * Loads the tasks and answers of the components containing the given tasks. The first pass over
+     * the stage answers keeps only their endpoints to find the components, and the second one collects
+     * the answers of these components; both passes read the same REPEATABLE READ snapshot.
+     *
+     * @param taskIds task identifiers.
+     * @return Tasks and answers of the components.
+     */
+    private Component load(Set<Integer> taskIds) {
+        final int[] none = new int[0];
+        return answerDAO.inTransaction(TransactionIsolationLevel.REPEATABLE_READ, (dao, status) -> {
+            final Component component = new Component();
+            final IntSet connected;
+            try (final ResultIterator<Answer> answers = dao.streamForProcessing(stage.getId(), 0, none, none)) {
+                connected = connect(answers, taskIds);
+            }
+            if (connected.isEmpty()) return component;
+            try (final ResultIterator<Task> iterator = dao.taskDAO().streamForStage(stage.getId())) {
+                while (iterator.hasNext()) {
+                    final Task task = iterator.next();
+                    if (connected.contains((int) task.getId())) component.taskMap.put(task.getId(), task);
+                }
+            }
+            try (final ResultIterator<Answer> answers = dao.streamForProcessing(stage.getId(), 0, none, none)) {
+                while (answers.hasNext()) {
+                    final Answer answer = answers.next();
+                    if (connected.contains((int) answer.getTaskId())) component.answers.add(answer);
+                }
+            }
+            return component;
+        });
+    }
+
+    private synchronized ComponentAggregator getAggregator() {
+        if (aggregator == null) {
+            final String name = stage.getOptions().getOrDefault("componentAggregator", DawidSkeneProcessor.class.getName());
+            try {
+                final Class<? extends ComponentAggregator> aggregatorClass = Class.forName(name).asSubclass(ComponentAggregator.class);
+                aggregator = requireNonNull(locator, "the locator should be injected").createAndInitialize(aggregatorClass);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("No class with name " + name, e);
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * Finds the tasks connected to the given ones in the bipartite graph of tasks and workers connected by the answers.
+     * Only the endpoints of the answers are kept in memory.
+     *
+     * @param answers answers.
+     * @param taskIds task identifiers.
+     * @return Identifiers of the connected tasks that have answers.
+     */
+    static IntSet connect(Iterator<Answer> answers, Set<Integer> taskIds) {
+        final Int2IntOpenHashMap taskIndex = new Int2IntOpenHashMap(), workerIndex = new Int2IntOpenHashMap();
+        taskIndex.defaultReturnValue(-1);
+        workerIndex.defaultReturnValue(-1);
+        final IntArrayList edges = new IntArrayList();
+        int vertices = 0;
+        while (answers.hasNext()) {
+            final Answer answer = answers.next();
+            if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) continue;
+            int task = taskIndex.get((int) answer.getTaskId()), worker = workerIndex.get((int) answer.getWorkerId());
+            if (task < 0) taskIndex.put((int) answer.getTaskId(), task = vertices++);
+            if (worker < 0) workerIndex.put((int) answer.getWorkerId(), worker = vertices++);
+            edges.add(task);
+            edges.add(worker);
+        }
+
+        final UnionFind forest = new UnionFind(vertices);
+        for (int i = 0; i < edges.size(); i += 2) forest.union(edges.getInt(i), edges.getInt(i + 1));
+
+        final IntSet roots = new IntOpenHashSet();
+        for (final int taskId : taskIds) {
+            final int task = taskIndex.get(taskId);
+            if (task >= 0) roots.add(forest.find(task));
+        }
+
+        final IntSet connected = new IntOpenHashSet();
+        for (final Int2IntMap.Entry entry : taskIndex.int2IntEntrySet()) {
+            if (roots.contains(forest.find(entry.getIntValue()))) connected.add(entry.getIntKey());
+        }
+        return connected;
+    }
+
+    /**
+     * Splits the bipartite graph of tasks and workers connected by the answers into the connected components.
+     * The tasks that have no answers are omitted.
+     *
+     * @param taskMap tasks indexed by their identifiers.
+     * @param answers answers.
+     * @return Connected components.
+     */
+    static List<Component> partition(Map<Integer, Task> taskMap, Collection<Answer> answers) {
+        final List<Answer> edges = answers.stream().
+                filter(answer -> answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)).
+                filter(answer -> taskMap.containsKey(answer.getTaskId())).
+                collect(Collectors.toList());
+
+        /* tasks and workers are the vertices numbered consecutively, tasks first */
+        final Map<Integer, Integer> taskIndex = new HashMap<>(), workerIndex = new HashMap<>();
+        for (final Answer answer : edges) taskIndex.putIfAbsent(answer.getTaskId(), taskIndex.size());
+        for (final Answer answer : edges)
+            workerIndex.putIfAbsent(answer.getWorkerId(), taskIndex.size() + workerIndex.size());
+
+        final UnionFind forest = new UnionFind(taskIndex.size() + workerIndex.size());
+        for (final Answer answer : edges)
+            forest.union(taskIndex.get(answer.getTaskId()), workerIndex.get(answer.getWorkerId()));
+
+        final Map<Integer, Component> components = new LinkedHashMap<>();
+        for (final Answer answer : edges) {
+            final Component component = components.computeIfAbsent(forest.find(taskIndex.get(answer.getTaskId())), root -> new Component());
+            component.taskMap.putIfAbsent(answer.getTaskId(), taskMap.get(answer.getTaskId()));
+            component.answers.add(answer);
+        }
+
+        return new ArrayList<>(components.values());
+    }
+
+    static class Component {
+        final Map<Integer, Task> taskMap = new LinkedHashMap<>();
+        final List<Answer> answers = new ArrayList<>();
+    }
+}
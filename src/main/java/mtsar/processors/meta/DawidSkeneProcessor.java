@@ -23,13 +23,15 @@ import com.ipeirotis.gal.core.Datum;
 import mtsar.api.*;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
-import mtsar.processors.AnswerAggregator;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.ComponentAggregator;
 import mtsar.processors.WorkerRanker;
 import mtsar.util.StreamUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -43,7 +45,7 @@ import static java.util.Objects.requireNonNull;
  * @see <a href="http://dl.acm.org/citation.cfm?id=1401965">10.1145/1401890.1401965</a>
  * @see <a href="http://www.jstor.org/stable/2346806">10.2307/2346806</a>
  */
-public class DawidSkeneProcessor implements WorkerRanker, AnswerAggregator {
+public class DawidSkeneProcessor implements WorkerRanker, ComponentAggregator {
     protected final TaskDAO taskDAO;
     protected final AnswerDAO answerDAO;
     @Inject
@@ -55,7 +57,7 @@ public class DawidSkeneProcessor implements WorkerRanker, AnswerAggregator {
     }
 
     @Inject
-    public DawidSkeneProcessor(TaskDAO taskDAO, AnswerDAO answerDAO) {
+    public DawidSkeneProcessor(@Named(ReadReplica.NAME) TaskDAO taskDAO, @Named(ReadReplica.NAME) AnswerDAO answerDAO) {
         this.taskDAO = requireNonNull(taskDAO);
         this.answerDAO = requireNonNull(answerDAO);
     }
@@ -65,8 +67,13 @@ public class DawidSkeneProcessor implements WorkerRanker, AnswerAggregator {
     public Map<Integer, AnswerAggregation> aggregate(@Nonnull Collection<Task> tasks) {
         requireNonNull(stage, "the stage provider should not provide null");
         if (tasks.isEmpty()) return Collections.emptyMap();
-        final Map<Integer, Task> taskMap = getTaskMap();
-        final DawidSkene ds = compute(taskMap);
+        return aggregate(getTaskMap(), answerDAO.listForProcessing(stage.getId()));
+    }
+
+    @Override
+    @Nonnull
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> taskMap, @Nonnull Collection<Answer> answers) {
+        final DawidSkene ds = compute(taskMap, answers);
         final Map<Integer, AnswerAggregation> results = ds.getObjects().values().stream().collect(Collectors.toMap(
                 datum -> Integer.valueOf(datum.getName()),
                 datum -> {
@@ -91,7 +98,7 @@ public class DawidSkeneProcessor implements WorkerRanker, AnswerAggregator {
     @Nonnull
     public Map<Integer, WorkerRanking> rank(@Nonnull Collection<Worker> workers) {
         final Map<Integer, Task> taskMap = getTaskMap();
-        final DawidSkene ds = compute(taskMap);
+        final DawidSkene ds = compute(taskMap, answerDAO.listForProcessing(stage.getId()));
         ds.evaluateWorkers();
         final Map<Integer, WorkerRanking> rankings = workers.stream().collect(Collectors.toMap(Worker::getId,
                 worker -> {
@@ -115,15 +122,13 @@ public class DawidSkeneProcessor implements WorkerRanker, AnswerAggregator {
         return NumberUtils.toDouble(stage.getOptions().get("precision"), 0.0001);
     }
 
-    private DawidSkene compute(Map<Integer, Task> taskMap) {
+    private DawidSkene compute(Map<Integer, Task> taskMap, Collection<Answer> answers) {
         final Set<Category> categories = taskMap.values().stream().
                 flatMap(task -> task.getAnswers().stream().map(Category::new)).
                 collect(Collectors.toSet());
 
         final DawidSkene ds = new DawidSkene(categories);
 
-        final List<Answer> answers = answerDAO.listForStage(stage.getId());
-
         for (final Answer answer : answers) {
             if (!answer.getType().equalsIgnoreCase(AnswerDAO.ANSWER_TYPE_ANSWER)) continue;
             for (final String label : answer.getAnswers()) {
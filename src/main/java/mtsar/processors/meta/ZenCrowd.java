@@ -19,7 +19,8 @@ package mtsar.processors.meta;
 import mtsar.api.*;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
-import mtsar.processors.AnswerAggregator;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.processors.ComponentAggregator;
 import mtsar.processors.SQUARE;
 import mtsar.processors.WorkerRanker;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -31,6 +32,7 @@ import org.square.qa.utilities.constructs.Models;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -44,7 +46,7 @@ import static java.util.Objects.requireNonNull;
  *
  * @see <a href="http://dx.doi.org/10.1007/s00778-013-0324-z">10.1007/s00778-013-0324-z</a>
  */
-public class ZenCrowd extends SQUARE implements WorkerRanker, AnswerAggregator {
+public class ZenCrowd extends SQUARE implements WorkerRanker, ComponentAggregator {
     private static final Logger log = LoggerFactory.getLogger(ZenCrowd.class);
     @Inject
     private Stage stage;
@@ -57,7 +59,7 @@ public class ZenCrowd extends SQUARE implements WorkerRanker, AnswerAggregator {
     }
 
     @Inject
-    public ZenCrowd(TaskDAO taskDAO, AnswerDAO answerDAO) {
+    public ZenCrowd(@Named(ReadReplica.NAME) TaskDAO taskDAO, @Named(ReadReplica.NAME) AnswerDAO answerDAO) {
         this.taskDAO = requireNonNull(taskDAO);
         this.answerDAO = requireNonNull(answerDAO);
     }
@@ -68,7 +70,18 @@ public class ZenCrowd extends SQUARE implements WorkerRanker, AnswerAggregator {
         requireNonNull(stage, "the stage provider should not provide null");
         if (tasks.isEmpty()) return Collections.emptyMap();
         final Map<Integer, Task> taskIds = tasks.stream().collect(Collectors.toMap(Task::getId, Function.identity()));
-        final Models.ZenModel<Integer, Integer, String> zenModel = compute(stage, answerDAO, getTaskMap()).getZenModel();
+        return aggregate(getTaskMap(), answerDAO.listForProcessing(stage.getId()), taskIds);
+    }
+
+    @Nonnull
+    @Override
+    public Map<Integer, AnswerAggregation> aggregate(@Nonnull Map<Integer, Task> taskMap, @Nonnull Collection<Answer> answers) {
+        requireNonNull(stage, "the stage provider should not provide null");
+        return aggregate(taskMap, answers, taskMap);
+    }
+
+    private Map<Integer, AnswerAggregation> aggregate(Map<Integer, Task> taskMap, Collection<Answer> answers, Map<Integer, Task> taskIds) {
+        final Models.ZenModel<Integer, Integer, String> zenModel = compute(taskMap, answers).getZenModel();
         final ZenCrowdEM<Integer, Integer, String> zenCrowd = new ZenCrowdEM<>(zenModel);
         zenCrowd.setNumIterations(getMaxIterations());
         log.info("Running ZenCrowd on {} iterations", getMaxIterations());
@@ -19,7 +19,6 @@ package mtsar.processors.task;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
 import org.apache.commons.lang3.tuple.Triple;
-import org.skife.jdbi.v2.DBI;
 
 import javax.inject.Inject;
 import java.util.List;
@@ -32,8 +31,8 @@ public class FixedNumberAllocator extends InverseCountAllocator {
     protected Integer answersPerTask = null;
 
     @Inject
-    public FixedNumberAllocator(DBI dbi, TaskDAO taskDAO, AnswerDAO answerDAO) {
-        super(dbi, taskDAO, answerDAO);
+    public FixedNumberAllocator(TaskDAO taskDAO, AnswerDAO answerDAO) {
+        super(taskDAO, answerDAO);
     }
 
     @Override
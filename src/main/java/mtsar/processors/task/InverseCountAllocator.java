@@ -22,18 +22,10 @@ import mtsar.api.sql.TaskDAO;
 import mtsar.processors.TaskAllocator;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
-import org.skife.jdbi.v2.DBI;
-import org.skife.jdbi.v2.StatementContext;
-import org.skife.jdbi.v2.sqlobject.Bind;
-import org.skife.jdbi.v2.sqlobject.SqlQuery;
-import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
-import org.skife.jdbi.v2.tweak.ResultSetMapper;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -43,22 +35,18 @@ public class InverseCountAllocator implements TaskAllocator {
     protected static final Comparator<Triple<Integer, Integer, Double>> INVERSE_COUNT = Comparator.comparing(Triple<Integer, Integer, Double>::getMiddle).thenComparing(Triple::getRight);
     @Inject
     protected Stage stage;
-    protected final DBI dbi;
     protected final TaskDAO taskDAO;
     protected final AnswerDAO answerDAO;
-    protected final CountDAO countDAO;
 
-    InverseCountAllocator(Stage stage, DBI dbi, TaskDAO taskDAO, AnswerDAO answerDAO) {
-        this(dbi, taskDAO, answerDAO);
+    InverseCountAllocator(Stage stage, TaskDAO taskDAO, AnswerDAO answerDAO) {
+        this(taskDAO, answerDAO);
         this.stage = stage;
     }
 
     @Inject
-    public InverseCountAllocator(DBI dbi, TaskDAO taskDAO, AnswerDAO answerDAO) {
-        this.dbi = requireNonNull(dbi);
+    public InverseCountAllocator(TaskDAO taskDAO, AnswerDAO answerDAO) {
         this.taskDAO = requireNonNull(taskDAO);
         this.answerDAO = requireNonNull(answerDAO);
-        this.countDAO = requireNonNull(dbi.onDemand(CountDAO.class));
     }
 
     @Override
@@ -68,7 +56,7 @@ public class InverseCountAllocator implements TaskAllocator {
         final Set<Integer> answered = answerDAO.listForWorker(worker.getId(), stage.getId()).stream().
                 map(Answer::getTaskId).collect(Collectors.toSet());
 
-        final Map<Integer, Integer> counts = countDAO.getCountsSQL(stage.getId()).stream().
+        final Map<Integer, Integer> counts = taskDAO.listCounts(stage.getId()).stream().
                 filter(pair -> !answered.contains(pair.getKey())).
                 collect(Collectors.toMap(Pair::getKey, Pair::getValue));
 
@@ -96,16 +84,4 @@ public class InverseCountAllocator implements TaskAllocator {
                 map(Triple::getLeft).
                 collect(Collectors.toList());
     }
-
-    @RegisterMapper(CountDAO.Mapper.class)
-    public interface CountDAO {
-        @SqlQuery("select tasks.id, count(answers.id) from tasks left join answers on answers.task_id = tasks.id and answers.stage = tasks.stage and answers.type <> 'skip' where tasks.stage = :stage group by tasks.id")
-        List<Pair<Integer, Integer>> getCountsSQL(@Bind("stage") String stage);
-
-        class Mapper implements ResultSetMapper<Pair> {
-            public Pair<Integer, Integer> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
-                return Pair.of(r.getInt("id"), r.getInt("count"));
-            }
-        }
-    }
 }
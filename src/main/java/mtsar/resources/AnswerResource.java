@@ -20,9 +20,17 @@ import io.dropwizard.jersey.PATCH;
 import mtsar.api.*;
 import mtsar.api.csv.AnswerAggregationCSV;
 import mtsar.api.csv.AnswerCSV;
+import mtsar.api.csv.ImportException;
+import mtsar.api.sql.AnswerAggregationDAO;
 import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.CopyDAO;
 import mtsar.api.sql.TaskDAO;
 import mtsar.api.sql.WorkerDAO;
+import mtsar.dropwizard.hk2.AgreementService;
+import mtsar.dropwizard.hk2.ImportService;
+import mtsar.dropwizard.hk2.PurgeService;
+import mtsar.dropwizard.hk2.UnitOfWork;
+import mtsar.util.GzipUtils;
 import mtsar.views.AnswersView;
 import org.apache.commons.csv.CSVParser;
 import org.glassfish.jersey.media.multipart.FormDataParam;
@@ -37,6 +45,8 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Path("/answers")
 @Produces(mtsar.util.MediaType.APPLICATION_JSON)
@@ -45,17 +55,35 @@ public class AnswerResource {
     private final TaskDAO taskDAO;
     private final WorkerDAO workerDAO;
     private final AnswerDAO answerDAO;
-
-    public AnswerResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO) {
+    private final AnswerDAO replicaAnswerDAO;
+    private final AnswerAggregationDAO answerAggregationDAO;
+    private final AgreementService agreementService;
+    private final CopyDAO copyDAO;
+    private final ImportService importService;
+    private final PurgeService purgeService;
+    private final UnitOfWork unitOfWork;
+
+    public AnswerResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO, AnswerDAO replicaAnswerDAO,
+                          AnswerAggregationDAO answerAggregationDAO, AgreementService agreementService, CopyDAO copyDAO,
+                          ImportService importService, PurgeService purgeService, UnitOfWork unitOfWork) {
         this.stage = stage;
         this.taskDAO = taskDAO;
         this.workerDAO = workerDAO;
         this.answerDAO = answerDAO;
+        this.replicaAnswerDAO = replicaAnswerDAO;
+        this.answerAggregationDAO = answerAggregationDAO;
+        this.agreementService = agreementService;
+        this.copyDAO = copyDAO;
+        this.importService = importService;
+        this.purgeService = purgeService;
+        this.unitOfWork = unitOfWork;
     }
 
     @GET
-    public List<Answer> getAnswers() {
-        return answerDAO.listForStage(stage.getId());
+    public Response getAnswers(@Context UriInfo uriInfo, @QueryParam("after") @DefaultValue("0") int after,
+                               @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit) {
+        Pagination.check(after, limit);
+        return Pagination.page(uriInfo, answerDAO.listForStage(stage.getId(), after, limit), limit, Answer::getId);
     }
 
     @GET
@@ -66,21 +94,71 @@ public class AnswerResource {
 
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response postAnswersCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream stream) throws IOException {
-        try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
-            try (final CSVParser csv = new CSVParser(reader, AnswerCSV.FORMAT)) {
-                answerDAO.insert(AnswerCSV.parse(stage, csv));
+    public Response postAnswersCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream upload,
+                                   @QueryParam("mode") @DefaultValue(ImportMode.BATCH) String mode) throws IOException, InterruptedException {
+        final InputStream stream = GzipUtils.decompress(upload);
+        switch (mode) {
+            case ImportMode.BATCH:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, AnswerCSV.FORMAT)) {
+                        answerDAO.insert(AnswerCSV.parse(stage, csv));
+                    }
+                }
+                answerDAO.resetSequence();
+                break;
+            case ImportMode.PARALLEL: {
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, AnswerCSV.FORMAT)) {
+                        AnswerCSV.checkHeader(csv);
+                        answerDAO.inTransaction((dao, status) -> importService.<Answer>pipeline(row -> AnswerCSV.parse(stage, row), chunk -> dao.insert(chunk.iterator())).run(csv));
+                    }
+                } catch (ImportException e) {
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getReport()).build();
+                }
+                answerDAO.resetSequence();
+                break;
+            }
+            case ImportMode.ASYNC: {
+                final ImportJob job = importService.submit(stage.getId(), "answers", AnswerCSV.FORMAT, stream, (csv, progress) -> {
+                    AnswerCSV.checkHeader(csv);
+                    final ImportReport report = answerDAO.inTransaction((dao, status) -> importService.<Answer>pipeline(row -> AnswerCSV.parse(stage, row), chunk -> {
+                        dao.insert(chunk.iterator());
+                        progress.accept(chunk.size());
+                    }).run(csv));
+                    answerDAO.resetSequence();
+                    answerDAO.invalidate(stage.getId());
+                    return report;
+                });
+                return Response.accepted(job).location(getImportURI(uriInfo, job)).build();
             }
+            case ImportMode.COPY:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    copyDAO.insertAnswers(stage.getId(), reader);
+                }
+                break;
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
-        answerDAO.resetSequence();
+        answerDAO.invalidate(stage.getId());
         return Response.seeOther(getAnswersURI(uriInfo)).build();
     }
 
     @GET
     @Path("aggregations")
     public Map<Integer, AnswerAggregation> getAnswerAggregations() {
+        /* the aggregators read the replica, so its version labels the result, which is stored only if it has not changed meanwhile */
+        final String model = stage.getAnswerAggregatorModel(), version = replicaAnswerDAO.version(stage.getId());
+        final List<AnswerAggregation> stored = AnswerAggregationDAO.listComputed(answerAggregationDAO, stage.getId(), model, version);
+        if (stored != null) {
+            return stored.stream().collect(Collectors.toMap(aggregation -> aggregation.getTask().getId(), Function.identity()));
+        }
+
         final List<Task> tasks = taskDAO.listForStage(stage.getId());
+        unitOfWork.release();
         final Map<Integer, AnswerAggregation> aggregations = stage.getAnswerAggregator().aggregate(tasks);
+        if (version.equals(replicaAnswerDAO.version(stage.getId()))) {
+            AnswerAggregationDAO.insert(answerAggregationDAO, stage.getId(), model, version, aggregations.values());
+        }
         return aggregations;
     }
 
@@ -92,10 +170,24 @@ public class AnswerResource {
         return output -> AnswerAggregationCSV.write(aggregations.values(), output);
     }
 
+    @GET
+    @Path("aggregations.csv.gz")
+    @Produces(mtsar.util.MediaType.APPLICATION_GZIP)
+    public StreamingOutput getAnswerAggregationsCSVGzip() {
+        return GzipUtils.compress(getAnswerAggregationsCSV());
+    }
+
     @GET
     @Path("agreement")
-    public AgreementReport getAgreementReport() {
-        return new AgreementReport.Builder().compute(stage, answerDAO).build();
+    public AgreementReport getAgreementReport(@QueryParam("breakdown") @DefaultValue("false") boolean breakdown,
+                                              @QueryParam("sample") Integer sample, @QueryParam("budget") @DefaultValue("0") long budget,
+                                              @QueryParam("seed") @DefaultValue("0") long seed, @QueryParam("replicates") @DefaultValue("200") int replicates) {
+        if (sample != null || budget > 0) {
+            if (breakdown || (sample != null && sample <= 0) || budget < 0 || replicates < 0)
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+            return agreementService.getApproximateReport(stage, sample == null ? 1000 : sample, seed, replicates, budget);
+        }
+        return agreementService.getReport(stage, breakdown);
     }
 
     @GET
@@ -120,9 +212,8 @@ public class AnswerResource {
     }
 
     @DELETE
-    public void deleteAnswers() {
-        answerDAO.deleteAll(stage.getId());
-        answerDAO.resetSequence();
+    public Response deleteAnswers() {
+        return Response.accepted(purgeService.submit(stage.getId(), PurgeJob.TYPE_ANSWERS)).build();
     }
 
     private Answer fetchAnswer(Integer id) {
@@ -137,4 +228,11 @@ public class AnswerResource {
                 path("answers").
                 build();
     }
+
+    private URI getImportURI(UriInfo uriInfo, ImportJob job) {
+        return uriInfo.getBaseUriBuilder().
+                path("stages").path(stage.getId()).
+                path("imports").path(job.getId()).
+                build();
+    }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.resources;
+
+/**
+ * The ways of exporting the CSV files that are selected by the {@code mode} query parameter.
+ */
+final class ExportMode {
+    /* the rows are fetched as objects and serialized by the application */
+    static final String STREAM = "stream";
+    /* the rows are serialized by the database server using the COPY protocol */
+    static final String COPY = "copy";
+
+    private ExportMode() {
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.resources;
+
+/**
+ * The ways of importing the uploaded CSV files that are selected by the {@code mode} query parameter.
+ */
+final class ImportMode {
+    /* the rows are parsed into objects and inserted in batches */
+    static final String BATCH = "batch";
+    /* the rows are parsed by a pool of threads and inserted in batches by a few writers, the invalid rows are reported */
+    static final String PARALLEL = "parallel";
+    /* the file is spooled and imported in parallel by a background job, the request is answered immediately */
+    static final String ASYNC = "async";
+    /* the rows are streamed into the database using the COPY protocol */
+    static final String COPY = "copy";
+
+    private ImportMode() {
+    }
+}
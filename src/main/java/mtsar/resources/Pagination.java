@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.resources;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination of the listings: a page contains the objects with the identifiers greater than
+ * the {@code after} parameter, and the link to the next page is provided as the {@code Link} header
+ * unless the page is known to be the last one.
+ */
+final class Pagination {
+    static final String DEFAULT_LIMIT = "100";
+    static final int MAX_LIMIT = 10000;
+
+    private Pagination() {
+    }
+
+    static void check(int after, int limit) {
+        if (after < 0 || limit <= 0 || limit > MAX_LIMIT)
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+    }
+
+    static <T> Response page(UriInfo uriInfo, List<T> page, int limit, Function<T, Integer> id) {
+        final Response.ResponseBuilder response = Response.ok(page);
+        if (page.size() == limit) {
+            final Link next = Link.fromUriBuilder(uriInfo.getRequestUriBuilder().
+                    replaceQueryParam("after", id.apply(page.get(page.size() - 1))).
+                    replaceQueryParam("limit", limit)).
+                    rel("next").build();
+            response.links(next);
+        }
+        return response.build();
+    }
+}
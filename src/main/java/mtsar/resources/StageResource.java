@@ -16,26 +16,33 @@
 
 package mtsar.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.jersey.PATCH;
 import mtsar.api.*;
 import mtsar.api.csv.AnswerCSV;
 import mtsar.api.csv.TaskCSV;
 import mtsar.api.csv.WorkerCSV;
-import mtsar.api.sql.AnswerDAO;
-import mtsar.api.sql.StageDAO;
-import mtsar.api.sql.TaskDAO;
-import mtsar.api.sql.WorkerDAO;
+import mtsar.api.sql.*;
+import mtsar.dropwizard.hk2.AgreementService;
+import mtsar.dropwizard.hk2.AnswerWriter;
+import mtsar.dropwizard.hk2.ImportService;
+import mtsar.dropwizard.hk2.PurgeService;
+import mtsar.dropwizard.hk2.ReadReplica;
+import mtsar.dropwizard.hk2.UnitOfWork;
 import mtsar.dropwizard.hk2.StageService;
+import mtsar.util.GzipUtils;
 import mtsar.views.StageView;
 import mtsar.views.StagesView;
+import org.skife.jdbi.v2.ResultIterator;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import java.net.URI;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 
 @Singleton
@@ -46,15 +53,43 @@ public class StageResource {
     private final WorkerDAO workerDAO;
     private final AnswerDAO answerDAO;
     private final StageDAO stageDAO;
+    private final AnswerAggregationDAO answerAggregationDAO;
+    private final WorkerRankingDAO workerRankingDAO;
     private final StageService stageService;
+    private final AgreementService agreementService;
+    private final CopyDAO copyDAO;
+    private final ImportService importService;
+    private final PurgeService purgeService;
+    private final AnswerWriter answerWriter;
+    private final ObjectMapper mapper;
+    private final TaskDAO replicaTaskDAO;
+    private final WorkerDAO replicaWorkerDAO;
+    private final AnswerDAO replicaAnswerDAO;
+    private final UnitOfWork unitOfWork;
 
     @Inject
-    public StageResource(StageService stageService, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO, StageDAO stageDAO) {
+    public StageResource(StageService stageService, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO, StageDAO stageDAO,
+                         AnswerAggregationDAO answerAggregationDAO, WorkerRankingDAO workerRankingDAO, AgreementService agreementService,
+                         CopyDAO copyDAO, ImportService importService, PurgeService purgeService, AnswerWriter answerWriter, ObjectMapper mapper,
+                         @Named(ReadReplica.NAME) TaskDAO replicaTaskDAO, @Named(ReadReplica.NAME) WorkerDAO replicaWorkerDAO,
+                         @Named(ReadReplica.NAME) AnswerDAO replicaAnswerDAO, UnitOfWork unitOfWork) {
         this.stageService = stageService;
         this.taskDAO = taskDAO;
         this.workerDAO = workerDAO;
         this.answerDAO = answerDAO;
         this.stageDAO = stageDAO;
+        this.answerAggregationDAO = answerAggregationDAO;
+        this.workerRankingDAO = workerRankingDAO;
+        this.agreementService = agreementService;
+        this.copyDAO = copyDAO;
+        this.importService = importService;
+        this.purgeService = purgeService;
+        this.answerWriter = answerWriter;
+        this.mapper = mapper;
+        this.replicaTaskDAO = replicaTaskDAO;
+        this.replicaWorkerDAO = replicaWorkerDAO;
+        this.replicaAnswerDAO = replicaAnswerDAO;
+        this.unitOfWork = unitOfWork;
     }
 
     @GET
@@ -136,41 +171,142 @@ public class StageResource {
 
     @Path("{stage}/workers")
     public WorkerResource getWorkers(@PathParam("stage") String id) {
-        return new WorkerResource(fetchStage(id), taskDAO, workerDAO, answerDAO);
+        return new WorkerResource(fetchStage(id), taskDAO, workerDAO, answerDAO, replicaAnswerDAO, workerRankingDAO, copyDAO, importService, answerWriter, unitOfWork);
+    }
+
+    @GET
+    @Path("{stage}/workers.csv.gz")
+    @Produces(mtsar.util.MediaType.APPLICATION_GZIP)
+    public StreamingOutput getWorkersCSVGzip(@PathParam("stage") String id,
+                                             @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        return GzipUtils.compress(getWorkersCSV(id, mode));
     }
 
     @GET
     @Path("{stage}/workers.csv")
     @Produces(mtsar.util.MediaType.TEXT_CSV)
-    public StreamingOutput getWorkersCSV(@PathParam("stage") String id) {
-        final List<Worker> workers = workerDAO.listForStage(fetchStage(id).getId());
-        return output -> WorkerCSV.write(workers, output);
+    public StreamingOutput getWorkersCSV(@PathParam("stage") String id,
+                                         @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        final Stage stage = fetchStage(id);
+        switch (mode) {
+            case ExportMode.STREAM:
+                return output -> replicaWorkerDAO.inTransaction((dao, status) -> {
+                    dao.setReadOnly();
+                    try (final ResultIterator<Worker> workers = dao.streamForStage(stage.getId())) {
+                        WorkerCSV.write(workers, output);
+                    }
+                    return null;
+                });
+            case ExportMode.COPY:
+                return output -> copyDAO.copyWorkers(stage.getId(), output);
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
     }
 
     @Path("{stage}/tasks")
     public TaskResource getTasks(@PathParam("stage") String id) {
-        return new TaskResource(fetchStage(id), taskDAO, workerDAO, answerDAO);
+        return new TaskResource(fetchStage(id), taskDAO, workerDAO, answerDAO, copyDAO, importService, purgeService, unitOfWork);
+    }
+
+    @GET
+    @Path("{stage}/tasks.csv.gz")
+    @Produces(mtsar.util.MediaType.APPLICATION_GZIP)
+    public StreamingOutput getTasksCSVGzip(@PathParam("stage") String id,
+                                           @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        return GzipUtils.compress(getTasksCSV(id, mode));
     }
 
     @GET
     @Path("{stage}/tasks.csv")
     @Produces(mtsar.util.MediaType.TEXT_CSV)
-    public StreamingOutput getTasksCSV(@PathParam("stage") String id) {
-        final List<Task> tasks = taskDAO.listForStage(fetchStage(id).getId());
-        return output -> TaskCSV.write(tasks, output);
+    public StreamingOutput getTasksCSV(@PathParam("stage") String id,
+                                       @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        final Stage stage = fetchStage(id);
+        switch (mode) {
+            case ExportMode.STREAM:
+                return output -> replicaTaskDAO.inTransaction((dao, status) -> {
+                    dao.setReadOnly();
+                    try (final ResultIterator<Task> tasks = dao.streamForStage(stage.getId())) {
+                        TaskCSV.write(tasks, output);
+                    }
+                    return null;
+                });
+            case ExportMode.COPY:
+                return output -> copyDAO.copyTasks(stage.getId(), output);
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
     }
 
     @Path("{stage}/answers")
     public AnswerResource getAnswers(@PathParam("stage") String id) {
-        return new AnswerResource(fetchStage(id), taskDAO, workerDAO, answerDAO);
+        return new AnswerResource(fetchStage(id), taskDAO, workerDAO, answerDAO, replicaAnswerDAO, answerAggregationDAO, agreementService, copyDAO, importService, purgeService, unitOfWork);
+    }
+
+    @GET
+    @Path("{stage}/answers.csv.gz")
+    @Produces(mtsar.util.MediaType.APPLICATION_GZIP)
+    public StreamingOutput getAnswersCSVGzip(@PathParam("stage") String id,
+                                             @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        return GzipUtils.compress(getAnswersCSV(id, mode));
     }
 
     @GET
     @Path("{stage}/answers.csv")
     @Produces(mtsar.util.MediaType.TEXT_CSV)
-    public StreamingOutput getAnswersCSV(@PathParam("stage") String id) {
-        final List<Answer> answers = answerDAO.listForStage(fetchStage(id).getId());
-        return output -> AnswerCSV.write(answers, output);
+    public StreamingOutput getAnswersCSV(@PathParam("stage") String id,
+                                         @QueryParam("mode") @DefaultValue(ExportMode.STREAM) String mode) {
+        final Stage stage = fetchStage(id);
+        switch (mode) {
+            case ExportMode.STREAM:
+                return output -> replicaAnswerDAO.inTransaction((dao, status) -> {
+                    dao.setReadOnly();
+                    try (final ResultIterator<Answer> answers = dao.streamForStageByTask(stage.getId())) {
+                        AnswerCSV.write(answers, output);
+                    }
+                    return null;
+                });
+            case ExportMode.COPY:
+                return output -> copyDAO.copyAnswers(stage.getId(), output);
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+    }
+
+    @GET
+    @Path("{stage}/answers.json")
+    @Produces(mtsar.util.MediaType.APPLICATION_JSON)
+    public StreamingOutput getAnswersJSON(@PathParam("stage") String id) {
+        final Stage stage = fetchStage(id);
+        return output -> replicaAnswerDAO.inTransaction((dao, status) -> {
+            dao.setReadOnly();
+            try (final ResultIterator<Answer> answers = dao.streamForStage(stage.getId(), 0);
+                 final JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+                generator.writeStartArray();
+                while (answers.hasNext()) generator.writeObject(answers.next());
+                generator.writeEndArray();
+            }
+            return null;
+        });
+    }
+
+    @GET
+    @Path("{stage}/imports")
+    public Collection<ImportJob> getImports(@PathParam("stage") String id) {
+        return importService.getJobs(fetchStage(id).getId());
+    }
+
+    @GET
+    @Path("{stage}/imports/{job}")
+    public ImportJob getImport(@PathParam("stage") String id, @PathParam("job") String jobId) {
+        return importService.getJob(fetchStage(id).getId(), jobId).orElseThrow(NotFoundException::new);
+    }
+
+    @DELETE
+    @Path("{stage}/imports/{job}")
+    public ImportJob deleteImport(@PathParam("stage") String id, @PathParam("job") String jobId) {
+        return importService.cancel(fetchStage(id).getId(), jobId).orElseThrow(NotFoundException::new);
     }
 
     private URI getStageURI(UriInfo uriInfo, String id) {
@@ -19,12 +19,21 @@ package mtsar.resources;
 import io.dropwizard.jersey.PATCH;
 import mtsar.api.Answer;
 import mtsar.api.AnswerAggregation;
+import mtsar.api.ImportJob;
+import mtsar.api.ImportReport;
+import mtsar.api.PurgeJob;
 import mtsar.api.Stage;
 import mtsar.api.Task;
+import mtsar.api.csv.ImportException;
 import mtsar.api.csv.TaskCSV;
 import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.CopyDAO;
 import mtsar.api.sql.TaskDAO;
 import mtsar.api.sql.WorkerDAO;
+import mtsar.dropwizard.hk2.ImportService;
+import mtsar.dropwizard.hk2.PurgeService;
+import mtsar.dropwizard.hk2.UnitOfWork;
+import mtsar.util.GzipUtils;
 import mtsar.views.TasksView;
 import org.apache.commons.csv.CSVParser;
 import org.glassfish.jersey.media.multipart.FormDataParam;
@@ -51,17 +60,28 @@ public class TaskResource {
     private final TaskDAO taskDAO;
     private final WorkerDAO workerDAO;
     private final AnswerDAO answerDAO;
+    private final CopyDAO copyDAO;
+    private final ImportService importService;
+    private final PurgeService purgeService;
+    private final UnitOfWork unitOfWork;
 
-    public TaskResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO) {
+    public TaskResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO, CopyDAO copyDAO, ImportService importService, PurgeService purgeService,
+                        UnitOfWork unitOfWork) {
         this.stage = stage;
         this.taskDAO = taskDAO;
         this.workerDAO = workerDAO;
         this.answerDAO = answerDAO;
+        this.copyDAO = copyDAO;
+        this.importService = importService;
+        this.purgeService = purgeService;
+        this.unitOfWork = unitOfWork;
     }
 
     @GET
-    public List<Task> getTasks(@QueryParam("page") @DefaultValue("0") int page) {
-        return taskDAO.listForStage(stage.getId());
+    public Response getTasks(@Context UriInfo uriInfo, @QueryParam("after") @DefaultValue("0") int after,
+                             @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit) {
+        Pagination.check(after, limit);
+        return Pagination.page(uriInfo, taskDAO.listForStage(stage.getId(), after, limit), limit, Task::getId);
     }
 
     @GET
@@ -85,13 +105,52 @@ public class TaskResource {
 
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response postTasksCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream stream) throws IOException {
-        try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
-            try (final CSVParser csv = new CSVParser(reader, TaskCSV.FORMAT)) {
-                taskDAO.insert(TaskCSV.parse(stage, csv));
+    public Response postTasksCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream upload,
+                                 @QueryParam("mode") @DefaultValue(ImportMode.BATCH) String mode) throws IOException, InterruptedException {
+        final InputStream stream = GzipUtils.decompress(upload);
+        switch (mode) {
+            case ImportMode.BATCH:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, TaskCSV.FORMAT)) {
+                        taskDAO.insert(TaskCSV.parse(stage, csv));
+                    }
+                }
+                taskDAO.resetSequence();
+                break;
+            case ImportMode.PARALLEL: {
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, TaskCSV.FORMAT)) {
+                        TaskCSV.checkHeader(csv);
+                        taskDAO.inTransaction((dao, status) -> importService.<Task>pipeline(row -> TaskCSV.parse(stage, row), chunk -> dao.insert(chunk.iterator())).run(csv));
+                    }
+                } catch (ImportException e) {
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getReport()).build();
+                }
+                taskDAO.resetSequence();
+                break;
             }
+            case ImportMode.ASYNC: {
+                final ImportJob job = importService.submit(stage.getId(), "tasks", TaskCSV.FORMAT, stream, (csv, progress) -> {
+                    TaskCSV.checkHeader(csv);
+                    final ImportReport report = taskDAO.inTransaction((dao, status) -> importService.<Task>pipeline(row -> TaskCSV.parse(stage, row), chunk -> {
+                        dao.insert(chunk.iterator());
+                        progress.accept(chunk.size());
+                    }).run(csv));
+                    taskDAO.resetSequence();
+                    answerDAO.invalidate(stage.getId());
+                    return report;
+                });
+                return Response.accepted(job).location(getImportURI(uriInfo, job)).build();
+            }
+            case ImportMode.COPY:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    copyDAO.insertTasks(stage.getId(), reader);
+                }
+                break;
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
-        taskDAO.resetSequence();
+        answerDAO.invalidate(stage.getId());
         return Response.seeOther(getTasksURI(uriInfo)).build();
     }
 
@@ -103,14 +162,17 @@ public class TaskResource {
 
     @GET
     @Path("{task}/answers")
-    public List<Answer> getTaskAnswers(@PathParam("task") Integer id) {
-        return answerDAO.listForTask(id, stage.getId());
+    public Response getTaskAnswers(@Context UriInfo uriInfo, @PathParam("task") Integer id, @QueryParam("after") @DefaultValue("0") int after,
+                                   @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit) {
+        Pagination.check(after, limit);
+        return Pagination.page(uriInfo, answerDAO.listForTask(id, stage.getId(), after, limit), limit, Answer::getId);
     }
 
     @GET
     @Path("{task}/answer")
     public AnswerAggregation getTaskAnswer(@PathParam("task") Integer id) {
         final Task task = fetchTask(id);
+        unitOfWork.release();
         final Optional<AnswerAggregation> aggregation = stage.getAnswerAggregator().aggregate(task);
         return aggregation.isPresent() ? aggregation.get() : null;
     }
@@ -131,9 +193,8 @@ public class TaskResource {
     }
 
     @DELETE
-    public void deleteTasks() {
-        taskDAO.deleteAll(stage.getId());
-        taskDAO.resetSequence();
+    public Response deleteTasks() {
+        return Response.accepted(purgeService.submit(stage.getId(), PurgeJob.TYPE_TASKS)).build();
     }
 
     private Task fetchTask(Integer id) {
@@ -155,4 +216,11 @@ public class TaskResource {
                 path("tasks").path(task.getId().toString()).
                 build();
     }
+
+    private URI getImportURI(UriInfo uriInfo, ImportJob job) {
+        return uriInfo.getBaseUriBuilder().
+                path("stages").path(stage.getId()).
+                path("imports").path(job.getId()).
+                build();
+    }
 }
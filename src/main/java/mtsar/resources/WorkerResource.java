@@ -18,14 +18,21 @@ package mtsar.resources;
 
 import io.dropwizard.jersey.PATCH;
 import mtsar.api.*;
+import mtsar.api.csv.ImportException;
 import mtsar.api.csv.WorkerCSV;
 import mtsar.api.csv.WorkerRankingCSV;
 import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.CopyDAO;
 import mtsar.api.sql.TaskDAO;
 import mtsar.api.sql.WorkerDAO;
+import mtsar.api.sql.WorkerRankingDAO;
 import mtsar.api.validation.AnswerValidation;
 import mtsar.api.validation.TaskAnswerValidation;
+import mtsar.dropwizard.hk2.AnswerWriter;
+import mtsar.dropwizard.hk2.ImportService;
+import mtsar.dropwizard.hk2.UnitOfWork;
 import mtsar.util.DateTimeUtils;
+import mtsar.util.GzipUtils;
 import mtsar.util.ParamsUtils;
 import mtsar.views.WorkersView;
 import org.apache.commons.csv.CSVParser;
@@ -45,6 +52,10 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Path("/workers")
@@ -54,17 +65,33 @@ public class WorkerResource {
     private final TaskDAO taskDAO;
     private final WorkerDAO workerDAO;
     private final AnswerDAO answerDAO;
-
-    public WorkerResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO) {
+    private final AnswerDAO replicaAnswerDAO;
+    private final WorkerRankingDAO workerRankingDAO;
+    private final CopyDAO copyDAO;
+    private final ImportService importService;
+    private final AnswerWriter answerWriter;
+    private final UnitOfWork unitOfWork;
+
+    public WorkerResource(Stage stage, TaskDAO taskDAO, WorkerDAO workerDAO, AnswerDAO answerDAO, AnswerDAO replicaAnswerDAO,
+                          WorkerRankingDAO workerRankingDAO, CopyDAO copyDAO, ImportService importService, AnswerWriter answerWriter,
+                          UnitOfWork unitOfWork) {
         this.stage = stage;
         this.taskDAO = taskDAO;
         this.workerDAO = workerDAO;
         this.answerDAO = answerDAO;
+        this.replicaAnswerDAO = replicaAnswerDAO;
+        this.workerRankingDAO = workerRankingDAO;
+        this.copyDAO = copyDAO;
+        this.importService = importService;
+        this.answerWriter = answerWriter;
+        this.unitOfWork = unitOfWork;
     }
 
     @GET
-    public List<Worker> getWorkers() {
-        return workerDAO.listForStage(stage.getId());
+    public Response getWorkers(@Context UriInfo uriInfo, @QueryParam("after") @DefaultValue("0") int after,
+                               @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit) {
+        Pagination.check(after, limit);
+        return Pagination.page(uriInfo, workerDAO.listForStage(stage.getId(), after, limit), limit, Worker::getId);
     }
 
     @GET
@@ -76,8 +103,19 @@ public class WorkerResource {
     @GET
     @Path("rankings")
     public Map<Integer, WorkerRanking> getWorkerRankings() {
+        /* the rankers read the replica, so its version labels the result, which is stored only if it has not changed meanwhile */
+        final String model = stage.getWorkerRankerModel(), version = replicaAnswerDAO.version(stage.getId());
+        final List<WorkerRanking> stored = WorkerRankingDAO.listComputed(workerRankingDAO, stage.getId(), model, version);
+        if (stored != null) {
+            return stored.stream().collect(Collectors.toMap(ranking -> ranking.getWorker().getId(), Function.identity()));
+        }
+
         final List<Worker> workers = workerDAO.listForStage(stage.getId());
+        unitOfWork.release();
         final Map<Integer, WorkerRanking> rankings = stage.getWorkerRanker().rank(workers);
+        if (version.equals(replicaAnswerDAO.version(stage.getId()))) {
+            WorkerRankingDAO.insert(workerRankingDAO, stage.getId(), model, version, rankings.values());
+        }
         return rankings;
     }
 
@@ -85,20 +123,65 @@ public class WorkerResource {
     @Path("rankings.csv")
     @Produces(mtsar.util.MediaType.TEXT_CSV)
     public StreamingOutput getWorkerRankingsCSV() {
-        final List<Worker> workers = workerDAO.listForStage(stage.getId());
-        final Map<Integer, WorkerRanking> rankings = stage.getWorkerRanker().rank(workers);
+        final Map<Integer, WorkerRanking> rankings = getWorkerRankings();
         return output -> WorkerRankingCSV.write(rankings.values(), output);
     }
 
+    @GET
+    @Path("rankings.csv.gz")
+    @Produces(mtsar.util.MediaType.APPLICATION_GZIP)
+    public StreamingOutput getWorkerRankingsCSVGzip() {
+        return GzipUtils.compress(getWorkerRankingsCSV());
+    }
+
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response postWorkersCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream stream) throws IOException {
-        try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
-            try (final CSVParser csv = new CSVParser(reader, WorkerCSV.FORMAT)) {
-                workerDAO.insert(WorkerCSV.parse(stage, csv));
+    public Response postWorkersCSV(@Context UriInfo uriInfo, @FormDataParam("file") InputStream upload,
+                                   @QueryParam("mode") @DefaultValue(ImportMode.BATCH) String mode) throws IOException, InterruptedException {
+        final InputStream stream = GzipUtils.decompress(upload);
+        switch (mode) {
+            case ImportMode.BATCH:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, WorkerCSV.FORMAT)) {
+                        workerDAO.insert(WorkerCSV.parse(stage, csv));
+                    }
+                }
+                workerDAO.resetSequence();
+                break;
+            case ImportMode.PARALLEL: {
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    try (final CSVParser csv = new CSVParser(reader, WorkerCSV.FORMAT)) {
+                        WorkerCSV.checkHeader(csv);
+                        workerDAO.inTransaction((dao, status) -> importService.<Worker>pipeline(row -> WorkerCSV.parse(stage, row), chunk -> dao.insert(chunk.iterator())).run(csv));
+                    }
+                } catch (ImportException e) {
+                    return Response.status(Response.Status.BAD_REQUEST).entity(e.getReport()).build();
+                }
+                workerDAO.resetSequence();
+                break;
             }
+            case ImportMode.ASYNC: {
+                final ImportJob job = importService.submit(stage.getId(), "workers", WorkerCSV.FORMAT, stream, (csv, progress) -> {
+                    WorkerCSV.checkHeader(csv);
+                    final ImportReport report = workerDAO.inTransaction((dao, status) -> importService.<Worker>pipeline(row -> WorkerCSV.parse(stage, row), chunk -> {
+                        dao.insert(chunk.iterator());
+                        progress.accept(chunk.size());
+                    }).run(csv));
+                    workerDAO.resetSequence();
+                    answerDAO.invalidate(stage.getId());
+                    return report;
+                });
+                return Response.accepted(job).location(getImportURI(uriInfo, job)).build();
+            }
+            case ImportMode.COPY:
+                try (final Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                    copyDAO.insertWorkers(stage.getId(), reader);
+                }
+                break;
+            default:
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
-        workerDAO.resetSequence();
+        answerDAO.invalidate(stage.getId());
         return Response.seeOther(getWorkersURI(uriInfo)).build();
     }
 
@@ -163,9 +246,11 @@ public class WorkerResource {
 
     @GET
     @Path("{worker}/answers")
-    public List<Answer> getWorkerAnswers(@PathParam("worker") Integer id) {
+    public Response getWorkerAnswers(@Context UriInfo uriInfo, @PathParam("worker") Integer id, @QueryParam("after") @DefaultValue("0") int after,
+                                     @QueryParam("limit") @DefaultValue(Pagination.DEFAULT_LIMIT) int limit) {
+        Pagination.check(after, limit);
         final Worker worker = fetchWorker(id);
-        return answerDAO.listForWorker(worker.getId(), stage.getId());
+        return Pagination.page(uriInfo, answerDAO.listForWorker(worker.getId(), stage.getId(), after, limit), limit, Answer::getId);
     }
 
     @PATCH
@@ -173,35 +258,34 @@ public class WorkerResource {
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public Response postAnswers(@Context Validator validator, @Context UriInfo uriInfo, @PathParam("worker") Integer id, @FormParam("type") @DefaultValue(AnswerDAO.ANSWER_TYPE_DEFAULT) String type, @FormParam("tags") List<String> tags, @FormParam("datetime") String datetimeParam, MultivaluedMap<String, String> params) {
         final Timestamp datetime = (datetimeParam == null) ? DateTimeUtils.now() : Timestamp.valueOf(datetimeParam);
-        final Worker worker = fetchWorker(id);
         final Map<String, List<String>> nested = ParamsUtils.nested(params, "answers");
+        final List<Integer> taskIds = nested.keySet().stream().map(Integer::valueOf).collect(Collectors.toList());
 
-        final Map<Answer, Set<ConstraintViolation<Object>>> answers = nested.entrySet().stream().map(entry -> {
-            final Integer taskId = Integer.valueOf(entry.getKey());
-            final Task task = fetchTask(taskId);
+        final List<Answer> inserted = submitAnswers(validator, (workerDAO, taskDAO) -> {
+            final Worker worker = fetchWorker(workerDAO, id);
+            final Map<Integer, Task> tasks = fetchTasks(taskDAO, taskIds);
 
-            final Answer answer = new Answer.Builder().
+            final List<Answer> answers = nested.entrySet().stream().map(entry -> new Answer.Builder().
                     setStage(stage.getId()).
                     addAllTags(tags).
                     setType(type).
-                    setTaskId(task.getId()).
+                    setTaskId(Integer.valueOf(entry.getKey())).
                     setWorkerId(worker.getId()).
                     addAllAnswers(entry.getValue()).
                     setDateTime(datetime).
-                    build();
-
-            final Set<ConstraintViolation<Object>> violations = ParamsUtils.validate(validator,
-                    new TaskAnswerValidation.Builder().setTask(task).setAnswer(answer).build(),
-                    new AnswerValidation.Builder().setAnswer(answer).setAnswerDAO(answerDAO).build()
-            );
+                    build()
+            ).collect(Collectors.toList());
 
-            return Pair.of(answer, violations);
-        }).collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+            final Set<ConstraintViolation<Object>> violations = answers.stream().
+                    flatMap(answer -> ParamsUtils.validate(validator,
+                            new TaskAnswerValidation.Builder().setTask(tasks.get(answer.getTaskId())).setAnswer(answer).build()
+                    ).stream()).
+                    collect(Collectors.toSet());
+            if (!violations.isEmpty()) throw new ConstraintViolationException(violations);
 
-        final Set<ConstraintViolation<Object>> violations = answers.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
-        if (!violations.isEmpty()) throw new ConstraintViolationException(violations);
+            return answers;
+        });
 
-        final List<Answer> inserted = AnswerDAO.insert(answerDAO, answers.keySet());
         return Response.ok(inserted).build();
     }
 
@@ -210,32 +294,25 @@ public class WorkerResource {
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public Response postAnswersSkip(@Context Validator validator, @Context UriInfo uriInfo, @PathParam("worker") Integer id, @FormParam("tags") List<String> tags, @FormParam("datetime") String datetimeParam, @FormParam("tasks") List<Integer> tasks) {
         final Timestamp datetime = (datetimeParam == null) ? DateTimeUtils.now() : Timestamp.valueOf(datetimeParam);
-        final Worker worker = fetchWorker(id);
 
-        final Map<Answer, Set<ConstraintViolation<Object>>> answers = tasks.stream().map(taskId -> {
-            final Task task = fetchTask(taskId);
+        final List<Answer> inserted = submitAnswers(validator, (workerDAO, taskDAO) -> {
+            final Worker worker = fetchWorker(workerDAO, id);
+            fetchTasks(taskDAO, tasks);
 
-            final Answer answer = new Answer.Builder().
+            final List<Answer> answers = tasks.stream().map(taskId -> new Answer.Builder().
                     setStage(stage.getId()).
                     addAllTags(tags).
                     setType(AnswerDAO.ANSWER_TYPE_SKIP).
-                    setTaskId(task.getId()).
+                    setTaskId(taskId).
                     setWorkerId(worker.getId()).
                     setDateTime(datetime).
-                    build();
-
-            /* Since we are skipping the task, the only constraint we need is #answer-duplicate. */
-            final Set<ConstraintViolation<Object>> violations = ParamsUtils.validate(validator,
-                    new AnswerValidation.Builder().setAnswer(answer).setAnswerDAO(answerDAO).build()
-            );
-
-            return Pair.of(answer, violations);
-        }).collect(Collectors.toMap(Pair::getLeft, Pair::getRight));
+                    build()
+            ).collect(Collectors.toList());
 
-        final Set<ConstraintViolation<Object>> violations = answers.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
-        if (!violations.isEmpty()) throw new ConstraintViolationException(violations);
+            /* Since we are skipping the task, the only constraint we need is #answer-duplicate, which is checked on insert. */
+            return answers;
+        });
 
-        final List<Answer> inserted = AnswerDAO.insert(answerDAO, answers.keySet());
         return Response.ok(inserted).build();
     }
 
@@ -260,8 +337,55 @@ public class WorkerResource {
         workerDAO.resetSequence();
     }
 
+    /**
+     * Prepares and stores the answers. Normally, the worker and the tasks are fetched and the answers
+     * are inserted in one transaction. When the write-behind ingestion is enabled, the answers are
+     * prepared outside of a transaction and then group-committed by {@link AnswerWriter}.
+     */
+    private List<Answer> submitAnswers(Validator validator, BiFunction<WorkerDAO, TaskDAO, List<Answer>> prepare) {
+        if (!answerWriter.isEnabled()) {
+            return answerDAO.inTransaction((dao, status) -> insertAnswers(dao, validator, prepare.apply(dao.workerDAO(), dao.taskDAO())));
+        }
+
+        final List<Answer> answers = prepare.apply(workerDAO, taskDAO);
+        try {
+            return answerWriter.write(answers);
+        } catch (AnswerWriter.ConflictException e) {
+            throw new ConstraintViolationException(duplicates(validator, e.getConflicting()));
+        } catch (RejectedExecutionException | TimeoutException e) {
+            throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Inserts the answers by a single statement. Since it is called in a transaction, throwing
+     * the #answer-duplicate violations for the conflicting answers rolls back the other ones.
+     */
+    private List<Answer> insertAnswers(AnswerDAO dao, Validator validator, Collection<Answer> answers) {
+        final List<Answer> inserted = dao.insertUnique(answers);
+        if (inserted.size() == answers.size()) return inserted;
+
+        final List<Pair<Integer, Integer>> keys = inserted.stream().map(answer -> Pair.of(answer.getWorkerId(), answer.getTaskId())).collect(Collectors.toList());
+        throw new ConstraintViolationException(duplicates(validator, answers.stream().
+                filter(answer -> !keys.remove(Pair.of(answer.getWorkerId(), answer.getTaskId()))).
+                collect(Collectors.toList())));
+    }
+
+    private static Set<ConstraintViolation<Object>> duplicates(Validator validator, Collection<Answer> conflicting) {
+        return conflicting.stream().
+                flatMap(answer -> ParamsUtils.validate(validator, new AnswerValidation.Builder().setAnswer(answer).setConflicting(true).build()).stream()).
+                collect(Collectors.toSet());
+    }
+
     private Worker fetchWorker(Integer id) {
-        final Worker worker = workerDAO.find(id, stage.getId());
+        return fetchWorker(workerDAO, id);
+    }
+
+    private Worker fetchWorker(WorkerDAO dao, Integer id) {
+        final Worker worker = dao.find(id, stage.getId());
         if (worker == null) throw new WebApplicationException(Response.Status.NOT_FOUND);
         return worker;
     }
@@ -272,6 +396,13 @@ public class WorkerResource {
         return task;
     }
 
+    private Map<Integer, Task> fetchTasks(TaskDAO dao, List<Integer> ids) {
+        if (ids.isEmpty()) return Collections.emptyMap();
+        final Map<Integer, Task> tasks = dao.select(ids, stage.getId()).stream().collect(Collectors.toMap(Task::getId, Function.identity()));
+        if (!tasks.keySet().containsAll(ids)) throw new WebApplicationException(Response.Status.NOT_FOUND);
+        return tasks;
+    }
+
     private URI getWorkersURI(UriInfo uriInfo) {
         return uriInfo.getBaseUriBuilder().
                 path("stages").path(stage.getId()).
@@ -285,4 +416,11 @@ public class WorkerResource {
                 path("workers").path(worker.getId().toString()).
                 build();
     }
+
+    private URI getImportURI(UriInfo uriInfo, ImportJob job) {
+        return uriInfo.getBaseUriBuilder().
+                path("stages").path(stage.getId()).
+                path("imports").path(job.getId()).
+                build();
+    }
 }
@@ -16,14 +16,42 @@
 
 package mtsar.util;
 
+import org.apache.commons.lang3.StringUtils;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.sql.Timestamp;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 
+/**
+ * The timestamp columns hold the wall-clock time of the session time zone, which the driver sets to the JVM
+ * default one, so every {@link Timestamp} is bound and read as the same instant. The CSV files carry the instants
+ * as the numbers of seconds since the epoch, and {@link mtsar.api.sql.CopyDAO} converts them in the session time zone.
+ */
 public final class DateTimeUtils {
     @Nonnull
     public static Timestamp now() {
-        return Timestamp.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * Parses the CSV timestamp.
+     *
+     * @param seconds the number of seconds since the epoch, or an empty string.
+     * @return the timestamp, the current one if none is given.
+     */
+    @Nonnull
+    public static Timestamp fromEpochSecond(@Nullable String seconds) {
+        return StringUtils.isEmpty(seconds) ? now() : new Timestamp(Long.parseLong(seconds) * 1000L);
+    }
+
+    /**
+     * Formats the CSV timestamp.
+     *
+     * @param timestamp the timestamp.
+     * @return the number of seconds since the epoch.
+     */
+    @Nonnull
+    public static String toEpochSecond(@Nonnull Timestamp timestamp) {
+        return Long.toString(timestamp.toInstant().getEpochSecond());
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.util;
+
+import javax.annotation.Nonnull;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public final class GzipUtils {
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Transparently decompresses the stream if it starts with the gzip magic number.
+     *
+     * @param stream the input stream.
+     * @return the decompressed or the original stream.
+     * @throws IOException in case of an I/O error.
+     */
+    @Nonnull
+    public static InputStream decompress(InputStream stream) throws IOException {
+        final InputStream buffered = stream.markSupported() ? stream : new BufferedInputStream(stream, BUFFER_SIZE);
+        buffered.mark(2);
+        final int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+        return magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+    }
+
+    /**
+     * Compresses the output on the fly.
+     *
+     * @param streaming the uncompressed output.
+     * @return the compressed output.
+     */
+    @Nonnull
+    public static StreamingOutput compress(StreamingOutput streaming) {
+        return output -> {
+            try (final GZIPOutputStream gzip = new GZIPOutputStream(output, BUFFER_SIZE)) {
+                streaming.write(gzip);
+            }
+        };
+    }
+}
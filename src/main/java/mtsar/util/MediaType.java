@@ -19,4 +19,5 @@ package mtsar.util;
 public final class MediaType {
     public final static String APPLICATION_JSON = javax.ws.rs.core.MediaType.APPLICATION_JSON + "; charset=UTF-8";
     public final static String TEXT_CSV = "text/csv; charset=UTF-8";
+    public final static String APPLICATION_GZIP = "application/gzip";
 }
@@ -19,12 +19,20 @@ package mtsar.util;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import org.postgresql.jdbc.PgArray;
+import org.postgresql.util.PSQLException;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static java.util.Objects.requireNonNull;
 
@@ -32,8 +40,22 @@ public class PostgresUtils {
     public final static TypeReference<Map<String, String>> MAP_STRING_TO_STRING = new TypeReference<Map<String, String>>() {
     };
 
+    public final static String EMPTY_ARRAY = "{}";
+    public final static String EMPTY_JSON = "{}";
+    public final static String UNIQUE_VIOLATION = "23505";
+    public final static String FOREIGN_KEY_VIOLATION = "23503";
+
+    /**
+     * The reader and the writer are immutable and thread-safe, so they are shared instead of
+     * creating a new object mapper for every row.
+     */
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+    private final static ObjectReader READER = MAPPER.readerFor(MAP_STRING_TO_STRING);
+    private final static ObjectWriter WRITER = MAPPER.writerFor(MAP_STRING_TO_STRING);
+
     public static String buildArrayString(@Nonnull Collection<String> elements) {
         requireNonNull(elements);
+        if (elements.isEmpty()) return EMPTY_ARRAY;
         return buildArrayString(elements.toArray(new String[elements.size()]));
     }
 
@@ -52,10 +74,49 @@ public class PostgresUtils {
         return sb.append('}').toString();
     }
 
+    /**
+     * Parses the textual representation of a one-dimensional text array as rendered by {@link #buildArrayString(String[])}.
+     *
+     * @param array the array literal.
+     * @return the elements.
+     */
+    public static List<String> parseArrayString(@Nonnull String array) {
+        requireNonNull(array);
+        if (EMPTY_ARRAY.equals(array)) return Collections.emptyList();
+        if (array.length() < 2 || array.charAt(0) != '{' || array.charAt(array.length() - 1) != '}')
+            throw new IllegalArgumentException("Malformed array literal: " + array);
+        final List<String> elements = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        boolean quoted = false, wasQuoted = false;
+        for (int i = 1, len = array.length() - 1; i <= len; i++) {
+            final char c = array.charAt(i);
+            if (quoted) {
+                if (c == '\\') {
+                    sb.append(array.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = wasQuoted = true;
+            } else if (c == ',' || i == len) {
+                final String element = sb.toString();
+                elements.add(!wasQuoted && element.equals("NULL") ? null : element);
+                sb.setLength(0);
+                wasQuoted = false;
+            } else {
+                sb.append(c);
+            }
+        }
+        return elements;
+    }
+
     public static String buildJSONString(@Nonnull Map<String, String> elements) {
         requireNonNull(elements);
         try {
-            return new ObjectMapper().writeValueAsString(elements);
+            if (elements.isEmpty()) return EMPTY_JSON;
+            return WRITER.writeValueAsString(elements);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -64,9 +125,47 @@ public class PostgresUtils {
     public static Map<String, String> parseJSONString(@Nonnull String json) {
         requireNonNull(json);
         try {
-            return new ObjectMapper().readValue(json, MAP_STRING_TO_STRING);
+            if (EMPTY_JSON.equals(json)) return Collections.emptyMap();
+            return READER.readValue(json);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Finds the unique constraint violation among the causes of the exception, including the chained
+     * exceptions of a failed batch.
+     *
+     * @param e the exception.
+     * @return the server message naming the conflicting key, if any.
+     */
+    public static Optional<String> findUniqueViolation(@Nonnull Throwable e) {
+        return findViolation(e, UNIQUE_VIOLATION);
+    }
+
+    /**
+     * Finds the foreign key constraint violation among the causes of the exception, e.g., removing
+     * the tasks the answers still refer to.
+     *
+     * @param e the exception.
+     * @return the server message naming the referring key, if any.
+     */
+    public static Optional<String> findForeignKeyViolation(@Nonnull Throwable e) {
+        return findViolation(e, FOREIGN_KEY_VIOLATION);
+    }
+
+    private static Optional<String> findViolation(@Nonnull Throwable e, @Nonnull String state) {
+        for (Throwable cause = requireNonNull(e); cause != null; cause = cause.getCause()) {
+            if (!(cause instanceof SQLException)) continue;
+            for (SQLException sql = (SQLException) cause; sql != null; sql = sql.getNextException()) {
+                if (!(sql instanceof PSQLException) || !state.equals(sql.getSQLState())) continue;
+                final PSQLException psql = (PSQLException) sql;
+                if (psql.getServerErrorMessage() != null && psql.getServerErrorMessage().getDetail() != null) {
+                    return Optional.of(psql.getServerErrorMessage().getDetail());
+                }
+                return Optional.of(String.valueOf(psql.getMessage()));
+            }
+        }
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.api.Answer;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.dropwizard.hk2.AnswerWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.*;
+
+public class AnswerWriterTest {
+    private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final Answer answer1 = new Answer.Builder().setStage("1").setWorkerId(1).setTaskId(1).addAnswers("1").build();
+    private static final Answer answer2 = new Answer.Builder().setStage("1").setWorkerId(1).setTaskId(2).addAnswers("2").build();
+    private static final Answer stored1 = new Answer.Builder().mergeFrom(answer1).setId(1).build();
+    private static final Answer stored2 = new Answer.Builder().mergeFrom(answer2).setId(2).build();
+
+    private final AnswerWriter writer = new AnswerWriter(answerDAO, true);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        reset(answerDAO);
+        when(answerDAO.inTransaction(any(Transaction.class))).then(invocation ->
+                invocation.getArgumentAt(0, Transaction.class).inTransaction(answerDAO, mock(TransactionStatus.class)));
+        writer.start();
+    }
+
+    @After
+    public void teardown() throws InterruptedException {
+        writer.stop();
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        when(answerDAO.insertUnique(anyCollectionOf(Answer.class))).thenReturn(Arrays.asList(stored1, stored2));
+        assertThat(writer.write(Arrays.asList(answer1, answer2))).containsExactly(stored1, stored2);
+    }
+
+    @Test
+    public void testConflict() throws Exception {
+        when(answerDAO.insertUnique(anyCollectionOf(Answer.class))).thenReturn(Collections.singletonList(stored1));
+        try {
+            writer.write(Arrays.asList(answer1, answer2));
+            fail("the conflict should be reported");
+        } catch (AnswerWriter.ConflictException e) {
+            assertThat(e.getConflicting()).containsExactly(answer2);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetry() throws Exception {
+        final Answer answer3 = new Answer.Builder().setStage("1").setWorkerId(1).setTaskId(3).addAnswers("3").build();
+        final Answer duplicate2 = new Answer.Builder().mergeFrom(answer2).clearAnswers().addAnswers("1").build();
+        final Set<List<Integer>> table = Collections.synchronizedSet(new HashSet<>(Collections.singleton(Arrays.asList(1, 1))));
+        final CountDownLatch entered = new CountDownLatch(1), latch = new CountDownLatch(1);
+        when(answerDAO.inTransaction(any(Transaction.class))).then(invocation -> {
+            final Set<List<Integer>> snapshot = new HashSet<>(table);
+            try {
+                return invocation.getArgumentAt(0, Transaction.class).inTransaction(answerDAO, mock(TransactionStatus.class));
+            } catch (RuntimeException e) {
+                table.retainAll(snapshot);
+                throw e;
+            }
+        });
+        when(answerDAO.insertUnique(anyCollectionOf(Answer.class))).then(invocation -> {
+            entered.countDown();
+            latch.await();
+            final List<Answer> inserted = new ArrayList<>();
+            for (final Answer answer : (Collection<Answer>) invocation.getArgumentAt(0, Collection.class)) {
+                if (table.add(Arrays.asList(answer.getWorkerId(), answer.getTaskId()))) {
+                    inserted.add(new Answer.Builder().mergeFrom(answer).setId(table.size()).build());
+                }
+            }
+            return inserted;
+        });
+
+        /* the first submission holds the writer, so the conflicting one and the next one are committed by one batch */
+        final FutureTask<List<Answer>> first = submit(Collections.singletonList(answer3));
+        entered.await();
+        final FutureTask<List<Answer>> conflicting = submit(Arrays.asList(answer1, answer2));
+        final FutureTask<List<Answer>> next = submit(Collections.singletonList(duplicate2));
+        latch.countDown();
+
+        assertThat(first.get()).hasSize(1);
+        try {
+            conflicting.get();
+            fail("the conflict should be reported");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(AnswerWriter.ConflictException.class);
+            assertThat(((AnswerWriter.ConflictException) e.getCause()).getConflicting()).containsExactly(answer1);
+        }
+        assertThat(next.get()).extracting(Answer::getTaskId).containsExactly(2);
+        assertThat(table).containsOnly(Arrays.asList(1, 1), Arrays.asList(1, 2), Arrays.asList(1, 3));
+        verify(answerDAO, times(4)).insertUnique(anyCollectionOf(Answer.class));
+    }
+
+    /* starts the submission and waits until it is enqueued and waits for the commit */
+    private FutureTask<List<Answer>> submit(List<Answer> answers) throws InterruptedException {
+        final FutureTask<List<Answer>> task = new FutureTask<>(() -> writer.write(answers));
+        final Thread thread = new Thread(task);
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) Thread.sleep(10);
+        return task;
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testDisabled() throws Exception {
+        final List<Answer> answers = Collections.singletonList(answer1);
+        new AnswerWriter(answerDAO, false).write(answers);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.util.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DateTimeUtilsTest {
+    private TimeZone zone;
+
+    @Before
+    public void setup() {
+        zone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(zone);
+    }
+
+    @Test
+    public void testEpochRoundTrip() {
+        final Timestamp timestamp = DateTimeUtils.fromEpochSecond("1456789012");
+        assertThat(timestamp.getTime()).isEqualTo(1456789012000L);
+        assertThat(DateTimeUtils.toEpochSecond(timestamp)).isEqualTo("1456789012");
+    }
+
+    @Test
+    public void testSessionWallClock() {
+        /* the driver binds the wall-clock time of the default zone, which is also the session one */
+        final Timestamp timestamp = DateTimeUtils.fromEpochSecond("0");
+        assertThat(timestamp.toLocalDateTime()).isEqualTo(LocalDateTime.of(1970, 1, 1, 5, 30));
+        assertThat(timestamp.toString()).isEqualTo("1970-01-01 05:30:00.0");
+    }
+
+    @Test
+    public void testNow() {
+        final long before = System.currentTimeMillis();
+        assertThat(DateTimeUtils.now().getTime()).isBetween(before, System.currentTimeMillis());
+        assertThat(DateTimeUtils.fromEpochSecond("").getTime()).isGreaterThanOrEqualTo(before);
+    }
+}
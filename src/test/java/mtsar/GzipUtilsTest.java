@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import com.google.common.io.ByteStreams;
+import mtsar.util.GzipUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipUtilsTest {
+    private static final byte[] CSV = "id,stage\n1,1\n2,1\n".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GzipUtils.compress(output -> output.write(CSV)).write(compressed);
+        assertThat(compressed.toByteArray()).isNotEqualTo(CSV);
+        assertThat(ByteStreams.toByteArray(GzipUtils.decompress(new ByteArrayInputStream(compressed.toByteArray())))).isEqualTo(CSV);
+    }
+
+    @Test
+    public void testPlain() throws IOException {
+        assertThat(ByteStreams.toByteArray(GzipUtils.decompress(new ByteArrayInputStream(CSV)))).isEqualTo(CSV);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import com.google.common.hash.Hashing;
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import mtsar.dropwizard.MechanicalTsarApplication;
+import mtsar.dropwizard.MechanicalTsarConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexUsageTest {
+    private static final String TEST_YAML_ENV = "MTSAR_TEST_YAML";
+    private static final String TEST_YAML = "test.yml";
+    private static final String STAGE = "test";
+    private static final String PARTITION = "answers_" + Hashing.md5().hashString(STAGE, StandardCharsets.UTF_8);
+
+    @ClassRule
+    public static final DropwizardAppRule<MechanicalTsarConfiguration> RULE = new DropwizardAppRule<>(MechanicalTsarApplication.class, StringUtils.defaultString(System.getenv(TEST_YAML_ENV), TEST_YAML));
+
+    @BeforeClass
+    public static void createStage() {
+        final DBI dbi = ((MechanicalTsarApplication) RULE.getApplication()).getLocator().getService(DBI.class);
+        try (final Handle handle = dbi.open()) {
+            handle.execute("insert into stages (id, worker_ranker, task_allocator, answer_aggregator) values (?, ?, ?, ?) on conflict do nothing",
+                    STAGE, "mtsar.processors.worker.ZeroRanker", "mtsar.processors.task.RandomAllocator", "mtsar.processors.answer.MajorityVoting");
+        }
+    }
+
+    /* the test tables are tiny, so the sequential scans are discouraged to see which index the planner picks */
+    private static String explain(String query) {
+        final DBI dbi = ((MechanicalTsarApplication) RULE.getApplication()).getLocator().getService(DBI.class);
+        try (final Handle handle = dbi.open()) {
+            handle.execute("set enable_seqscan = off");
+            return String.join("\n", handle.createQuery("explain " + query).mapTo(String.class).list());
+        }
+    }
+
+    @Test
+    public void testListForTask() {
+        assertThat(explain("select * from answers where stage = 'test' and task_id = 1 and id > 0 order by id limit 100"))
+                .contains(PARTITION + "_stage_task_id_id_idx");
+    }
+
+    @Test
+    public void testListForWorker() {
+        assertThat(explain("select * from answers where stage = 'test' and worker_id = 1 and id > 0 order by id limit 100"))
+                .contains(PARTITION + "_stage_worker_id_id_idx");
+    }
+
+    @Test
+    public void testFindByWorkerAndTask() {
+        assertThat(explain("select * from answers where stage = 'test' and worker_id = 1 and task_id = 1"))
+                .contains(PARTITION).contains("Index").doesNotContain("Seq Scan");
+    }
+
+    @Test
+    public void testPartitionPruning() {
+        assertThat(explain("select * from answers where stage = 'test'"))
+                .contains(PARTITION).doesNotContain("Append");
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.api.Answer;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.Worker;
+import mtsar.api.memory.MemoryStorage;
+import mtsar.api.sql.AnswerAggregationDAO;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.StageDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.api.sql.WorkerDAO;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.exceptions.TransactionFailedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class MemoryStorageTest {
+    private MemoryStorage storage;
+    private WorkerDAO workerDAO;
+    private TaskDAO taskDAO;
+    private AnswerDAO answerDAO;
+    private int worker1, worker2, task1, task2;
+
+    @Before
+    public void setup() {
+        storage = new MemoryStorage();
+        workerDAO = storage.onDemand(WorkerDAO.class);
+        taskDAO = storage.onDemand(TaskDAO.class);
+        answerDAO = storage.onDemand(AnswerDAO.class);
+        storage.onDemand(StageDAO.class).insert(new Stage.Definition.Builder().
+                setId("1").
+                setDescription("").
+                setWorkerRanker("").
+                setTaskAllocator("").
+                setAnswerAggregator("").
+                build());
+        worker1 = workerDAO.insert(new Worker.Builder().setStage("1").addTags("gold").build());
+        worker2 = workerDAO.insert(new Worker.Builder().setStage("1").build());
+        task1 = taskDAO.insert(task());
+        task2 = taskDAO.insert(task());
+    }
+
+    private static Task task() {
+        return new Task.Builder().setStage("1").setType(TaskDAO.TASK_TYPE_SINGLE).setDescription("").addAnswers("1", "2").build();
+    }
+
+    private static Answer answer(int workerId, int taskId, String type) {
+        return new Answer.Builder().setStage("1").setWorkerId(workerId).setTaskId(taskId).setType(type).addAnswers("1").build();
+    }
+
+    @Test
+    public void testIndexes() {
+        answerDAO.insertUnique(Arrays.asList(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER),
+                answer(worker2, task1, AnswerDAO.ANSWER_TYPE_SKIP), answer(worker1, task2, AnswerDAO.ANSWER_TYPE_ANSWER)));
+        assertThat(answerDAO.count("1")).isEqualTo(3);
+        assertThat(answerDAO.count("2")).isEqualTo(0);
+        assertThat(answerDAO.listForWorker(worker1, "1")).extracting(Answer::getTaskId).containsExactly(task1, task2);
+        assertThat(answerDAO.listForTask(task1, "1")).extracting(Answer::getWorkerId).containsExactly(worker1, worker2);
+        assertThat(answerDAO.findByWorkerAndTask("1", worker2, task2)).isNull();
+        assertThat(answerDAO.findByWorkerAndTask("1", worker2, task1).getType()).isEqualTo(AnswerDAO.ANSWER_TYPE_SKIP);
+        assertThat(answerDAO.listForStage("1", 1, 1)).extracting(Answer::getId).containsExactly(2);
+        assertThat(answerDAO.listForSample("1", 0, 2)).hasSize(2);
+        assertThat(taskDAO.listCounts("1")).containsExactly(Pair.of(task1, 1), Pair.of(task2, 1));
+        assertThat(taskDAO.remaining("1", worker2)).isEqualTo(1);
+        assertThat(workerDAO.findByTags("1", Collections.singletonList("gold")).getId()).isEqualTo(worker1);
+    }
+
+    @Test
+    public void testInsertUnique() {
+        answerDAO.insertUnique(Collections.singletonList(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER)));
+        final List<Answer> inserted = answerDAO.insertUnique(Arrays.asList(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER),
+                answer(worker1, task2, AnswerDAO.ANSWER_TYPE_ANSWER)));
+        assertThat(inserted).extracting(Answer::getTaskId).containsExactly(task2);
+        assertThat(inserted.get(0).getAnswers()).containsExactly("1");
+    }
+
+    @Test
+    public void testVersion() {
+        final Answer answer = answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER);
+        final int id = answerDAO.insert(answer);
+        final String version = answerDAO.version("1");
+        answerDAO.delete(id, "1");
+        answerDAO.insert(Collections.singletonList(new Answer.Builder().mergeFrom(answer).setId(id).build()).iterator());
+        assertThat(answerDAO.count("1")).isEqualTo(1);
+        assertThat(answerDAO.version("1")).isNotEqualTo(version);
+        final String taskVersion = answerDAO.version("1");
+        taskDAO.delete(task2, "1");
+        assertThat(answerDAO.version("1")).isNotEqualTo(taskVersion);
+        final String answerVersion = answerDAO.version("1");
+        answerDAO.insert(answer(worker2, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+        assertThat(answerDAO.version("1")).isNotEqualTo(answerVersion);
+        final String importVersion = answerDAO.version("1");
+        answerDAO.invalidate("1");
+        assertThat(answerDAO.version("1")).isNotEqualTo(importVersion);
+    }
+
+    @Test
+    public void testStream() {
+        final Answer answer = answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER);
+        final int id = answerDAO.insert(answer);
+        answerDAO.insert(answer(worker2, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+        final AnswerDAO.Cursor cursor = new AnswerDAO.Cursor();
+        final List<Answer> streamed = new ArrayList<>();
+        assertThat(AnswerDAO.stream(answerDAO, "1", cursor, streamed::add)).isTrue();
+        assertThat(streamed).hasSize(2);
+        answerDAO.delete(id, "1");
+        answerDAO.insert(Collections.singletonList(new Answer.Builder().mergeFrom(answer).setId(id).build()).iterator());
+        assertThat(AnswerDAO.stream(answerDAO, "1", cursor, streamed::add)).isFalse();
+        cursor.reset();
+        assertThat(AnswerDAO.stream(answerDAO, "1", cursor, streamed::add)).isTrue();
+    }
+
+    @Test
+    public void testEmptyComputation() {
+        final AnswerAggregationDAO answerAggregationDAO = storage.onDemand(AnswerAggregationDAO.class);
+        final String version = answerDAO.version("1");
+        assertThat(AnswerAggregationDAO.listComputed(answerAggregationDAO, "1", "model", version)).isNull();
+        AnswerAggregationDAO.insert(answerAggregationDAO, "1", "model", version, Collections.emptyList());
+        assertThat(AnswerAggregationDAO.listComputed(answerAggregationDAO, "1", "model", version)).isEmpty();
+        assertThat(AnswerAggregationDAO.listComputed(answerAggregationDAO, "1", "other", version)).isNull();
+    }
+
+    @Test
+    public void testRollback() {
+        try {
+            answerDAO.inTransaction((dao, status) -> {
+                dao.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+                dao.taskDAO().delete(task2, "1");
+                throw new IllegalStateException("Conflict");
+            });
+            fail("The transaction has not failed");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Conflict");
+        }
+        assertThat(answerDAO.count("1")).isEqualTo(0);
+        assertThat(answerDAO.findByWorkerAndTask("1", worker1, task1)).isNull();
+        assertThat(taskDAO.find(task2, "1")).isNotNull();
+    }
+
+    @Test(expected = TransactionFailedException.class)
+    public void testRollbackOnly() {
+        try {
+            answerDAO.inTransaction((dao, status) -> {
+                dao.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+                status.setRollbackOnly();
+                return null;
+            });
+        } finally {
+            assertThat(answerDAO.count("1")).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void testSavepoint() {
+        answerDAO.inTransaction((dao, status) -> {
+            dao.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+            dao.checkpoint("answer");
+            dao.insert(answer(worker1, task2, AnswerDAO.ANSWER_TYPE_ANSWER));
+            dao.rollback("answer");
+            dao.release("answer");
+            return null;
+        });
+        assertThat(answerDAO.listForStage("1")).extracting(Answer::getTaskId).containsExactly(task1);
+    }
+
+    @Test
+    public void testIsolation() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final String epoch = answerDAO.epoch("1");
+        final AtomicReference<Future<Integer>> other = new AtomicReference<>();
+        try {
+            answerDAO.inTransaction((dao, status) -> {
+                dao.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+                /* the other transaction waits for this one instead of seeing its uncommitted answer */
+                other.set(executor.submit(() -> answerDAO.inTransaction((otherDAO, otherStatus) -> {
+                    otherDAO.insert(answer(worker2, task2, AnswerDAO.ANSWER_TYPE_ANSWER));
+                    return otherDAO.count("1");
+                })));
+                try {
+                    other.get().get(100, TimeUnit.MILLISECONDS);
+                    fail("The other transaction has not been blocked");
+                } catch (TimeoutException e) {
+                    /* the running transaction bounds the identifiers that can still appear */
+                    assertThat(dao.snapshot()).doesNotEndWith(":");
+                }
+                throw new IllegalStateException("Conflict");
+            });
+            fail("The transaction has not failed");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Conflict");
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(other.get().get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(answerDAO.listForStage("1")).extracting(Answer::getWorkerId).containsExactly(worker2);
+        assertThat(answerDAO.epoch("1")).isEqualTo(epoch);
+        assertThat(answerDAO.snapshot()).endsWith(":");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullElements() {
+        storage.onDemand(AnswerAggregationDAO.class).insert("1", "model", answerDAO.version("1"), Collections.singletonList(task1),
+                Collections.singletonList(TaskDAO.TASK_TYPE_SINGLE), Collections.singletonList("{NULL}"), Collections.singletonList("{1}"));
+    }
+
+    @Test
+    public void testCascade() {
+        answerDAO.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+        answerDAO.insert(answer(worker2, task2, AnswerDAO.ANSWER_TYPE_ANSWER));
+        taskDAO.delete(task1, "1");
+        assertThat(answerDAO.listForStage("1")).extracting(Answer::getTaskId).containsExactly(task2);
+        workerDAO.delete(worker2, "1");
+        assertThat(answerDAO.count("1")).isEqualTo(0);
+        assertThat(taskDAO.detach("1")).isNull();
+        assertThat(taskDAO.count("1")).isEqualTo(0);
+        taskDAO.resetSequence();
+        assertThat(taskDAO.insert(task())).isEqualTo(1);
+    }
+
+    @Test
+    public void testRestrict() {
+        answerDAO.insert(answer(worker1, task1, AnswerDAO.ANSWER_TYPE_ANSWER));
+        try {
+            taskDAO.detach("1");
+            fail("The tasks have been removed despite the answers");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("The answers still refer to task " + task1);
+        }
+        assertThat(taskDAO.count("1")).isEqualTo(2);
+        try {
+            workerDAO.deleteAll("1");
+            fail("The workers have been removed despite the answers");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("The answers still refer to worker " + worker1);
+        }
+        assertThat(workerDAO.count("1")).isEqualTo(2);
+        assertThat(answerDAO.detach("1")).isNull();
+        assertThat(taskDAO.detach("1")).isNull();
+        assertThat(taskDAO.count("1")).isEqualTo(0);
+    }
+}
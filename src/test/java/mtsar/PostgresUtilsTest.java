@@ -18,8 +18,15 @@ package mtsar;
 
 import mtsar.util.PostgresUtils;
 import org.junit.Test;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.ServerErrorMessage;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 public class PostgresUtilsTest {
     @Test
@@ -36,4 +43,40 @@ public class PostgresUtilsTest {
     public void testManyElements() {
         assertThat(PostgresUtils.buildArrayString(new String[]{"foo", "b\"a\"r", "b\'a\'z"})).isEqualTo("{\"foo\",\"b\\\"a\\\"r\",\"b'a'z\"}");
     }
+
+    @Test
+    public void testArrayRoundTrip() {
+        final String[] elements = {"foo", "b\"a\"r", "b,a\\z", "", null};
+        assertThat(PostgresUtils.parseArrayString(PostgresUtils.buildArrayString(elements))).containsExactly(elements);
+        assertThat(PostgresUtils.parseArrayString("{foo,NULL}")).containsExactly("foo", null);
+        assertThat(PostgresUtils.parseArrayString(PostgresUtils.EMPTY_ARRAY)).isEmpty();
+    }
+
+    @Test
+    public void testJSONRoundTrip() {
+        final String json = PostgresUtils.buildJSONString(Collections.singletonMap("foo", "bar"));
+        assertThat(json).isEqualTo("{\"foo\":\"bar\"}");
+        assertThat(PostgresUtils.parseJSONString(json)).containsOnly(entry("foo", "bar"));
+    }
+
+    @Test
+    public void testEmptyJSON() {
+        assertThat(PostgresUtils.buildJSONString(Collections.emptyMap())).isEqualTo(PostgresUtils.EMPTY_JSON);
+        assertThat(PostgresUtils.parseJSONString(PostgresUtils.EMPTY_JSON)).isEmpty();
+    }
+
+    @Test
+    public void testUniqueViolation() {
+        final BatchUpdateException batch = new BatchUpdateException("Batch entry 1 was aborted", PostgresUtils.UNIQUE_VIOLATION, new int[0]);
+        batch.setNextException(new PSQLException(new ServerErrorMessage("SERROR\0C23505\0Mduplicate key value violates unique constraint\0DKey (stage, worker_id, task_id)=(1, 2, 3) already exists.\0", 0)));
+        assertThat(PostgresUtils.findUniqueViolation(new RuntimeException(batch))).contains("Key (stage, worker_id, task_id)=(1, 2, 3) already exists.");
+        assertThat(PostgresUtils.findUniqueViolation(new RuntimeException(new SQLException("The database is gone", "08006")))).isEmpty();
+    }
+
+    @Test
+    public void testForeignKeyViolation() {
+        final PSQLException e = new PSQLException(new ServerErrorMessage("SERROR\0C23503\0Mremoving partition \"tasks_1\" violates foreign key constraint\0DKey (id, stage)=(1, 1) is still referenced from table \"answers\".\0", 0));
+        assertThat(PostgresUtils.findForeignKeyViolation(new RuntimeException(e))).contains("Key (id, stage)=(1, 1) is still referenced from table \"answers\".");
+        assertThat(PostgresUtils.findUniqueViolation(new RuntimeException(e))).isEmpty();
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.api.PurgeJob;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.dropwizard.hk2.PurgeService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class PurgeServiceTest {
+    private static final String TABLE = "purge_answers_0123456789abcdef0123456789abcdef";
+    private final DBI dbi = mock(DBI.class);
+    private final Handle handle = mock(Handle.class);
+    @SuppressWarnings("unchecked")
+    private final Query<Map<String, Object>> query = mock(Query.class);
+    @SuppressWarnings("unchecked")
+    private final Query<Long> count = mock(Query.class);
+    private final TaskDAO taskDAO = mock(TaskDAO.class);
+    private final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private final PurgeService service = new PurgeService(dbi, taskDAO, answerDAO);
+
+    @Before
+    public void setup() {
+        reset(dbi, handle, query, count, taskDAO, answerDAO);
+        when(dbi.open()).thenReturn(handle);
+        when(handle.createQuery(anyString())).thenReturn(query);
+        when(query.mapTo(Long.class)).thenReturn(count);
+        when(count.first()).thenReturn(42L);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    private PurgeJob await(PurgeService service, PurgeJob job) throws InterruptedException {
+        final String id = job.getId();
+        for (int i = 0; i < 500; i++) {
+            job = service.getJobs().stream().filter(snapshot -> snapshot.getId().equals(id)).findFirst().get();
+            if (!job.getStatus().equals(PurgeJob.STATUS_PENDING) && !job.getStatus().equals(PurgeJob.STATUS_RUNNING)) break;
+            Thread.sleep(10);
+        }
+        return job;
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        when(answerDAO.detach("1")).thenReturn(TABLE);
+        final PurgeJob job = service.submit("1", PurgeJob.TYPE_ANSWERS);
+        assertThat(job.getType()).isEqualTo(PurgeJob.TYPE_ANSWERS);
+        assertThat(job.getTable()).contains(TABLE);
+        verify(answerDAO).detach("1");
+
+        final PurgeJob done = await(service, job);
+        assertThat(done.getStatus()).isEqualTo(PurgeJob.STATUS_DONE);
+        assertThat(done.getProcessed()).isEqualTo(42L);
+        verify(answerDAO).resetSequence();
+        verify(handle).createQuery("select count(*) from " + TABLE);
+        verify(handle).execute("drop table " + TABLE);
+        verify(handle).close();
+        verifyZeroInteractions(taskDAO);
+        assertThat(service.getJobs()).hasSize(1);
+        assertThat(service.getJobs("2")).isEmpty();
+    }
+
+    @Test
+    public void testMemoryStorage() throws Exception {
+        final PurgeService service = new PurgeService(null, taskDAO, answerDAO);
+        try {
+            service.start();
+            final PurgeJob done = await(service, service.submit("1", PurgeJob.TYPE_TASKS));
+            assertThat(done.getStatus()).isEqualTo(PurgeJob.STATUS_DONE);
+            assertThat(done.getTable()).isEmpty();
+            assertThat(done.getProcessed()).isZero();
+            verify(taskDAO).detach("1");
+            verify(taskDAO).resetSequence();
+        } finally {
+            service.stop();
+        }
+        verifyZeroInteractions(dbi);
+    }
+
+    @Test
+    public void testDetachFailure() {
+        when(taskDAO.detach("1")).thenThrow(new IllegalArgumentException("The answers still refer to the tasks"));
+        try {
+            service.submit("1", PurgeJob.TYPE_TASKS);
+            fail("The detach failure must reach the request");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("The answers still refer to the tasks");
+        }
+        assertThat(service.getJobs()).isEmpty();
+        verify(taskDAO, never()).resetSequence();
+        verifyZeroInteractions(dbi);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        when(answerDAO.detach("1")).thenReturn(TABLE);
+        when(handle.execute("drop table " + TABLE)).thenThrow(new IllegalStateException("The database is gone"));
+        final PurgeJob failed = await(service, service.submit("1", PurgeJob.TYPE_ANSWERS));
+        assertThat(failed.getStatus()).isEqualTo(PurgeJob.STATUS_FAILED);
+        assertThat(failed.getMessage()).contains("The database is gone");
+        assertThat(failed.getProcessed()).isZero();
+        verify(answerDAO).resetSequence();
+        verify(handle).close();
+    }
+
+    @Test
+    public void testListeners() throws Exception {
+        final List<String> purged = new ArrayList<>();
+        final PurgeService service = new PurgeService(null, taskDAO, answerDAO);
+        try {
+            service.addListener(purged::add);
+            service.submit("1", PurgeJob.TYPE_ANSWERS);
+            assertThat(purged).containsExactly("1");
+
+            when(taskDAO.detach("2")).thenThrow(new IllegalArgumentException("The answers still refer to the tasks"));
+            try {
+                service.submit("2", PurgeJob.TYPE_TASKS);
+                fail("The detach failure must reach the request");
+            } catch (IllegalArgumentException e) {
+                assertThat(purged).containsExactly("1");
+            }
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        for (int i = 0; i <= PurgeService.MAX_FINISHED; i++) service.submit(Integer.toString(i), PurgeJob.TYPE_TASKS);
+        for (int i = 0; i < 500 && !service.getJobs().stream().allMatch(job -> job.getStatus().equals(PurgeJob.STATUS_DONE)); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(service.getJobs()).hasSize(PurgeService.MAX_FINISHED);
+        assertThat(service.getJobs("0")).isEmpty();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownType() {
+        service.submit("1", "workers");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.api.sql.AnswerDAO;
+import mtsar.dropwizard.hk2.ReadReplica;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ReadReplicaTest {
+    private final DBI primary = mock(DBI.class);
+    private final DBI replica = mock(DBI.class);
+    private final AnswerDAO primaryDAO = mock(AnswerDAO.class);
+    private final AnswerDAO replicaDAO = mock(AnswerDAO.class);
+    private final Handle handle = mock(Handle.class);
+    private final Connection connection = mock(Connection.class);
+
+    @Before
+    public void setup() {
+        reset(primary, replica, primaryDAO, replicaDAO, handle, connection);
+        when(primary.onDemand(AnswerDAO.class)).thenReturn(primaryDAO);
+        when(replica.onDemand(AnswerDAO.class)).thenReturn(replicaDAO);
+        when(replica.open()).thenReturn(handle);
+        when(handle.getConnection()).thenReturn(connection);
+    }
+
+    @Test
+    public void testNoReplica() {
+        final ReadReplica readReplica = new ReadReplica(primary, null);
+        assertThat(readReplica.isConfigured()).isFalse();
+        assertThat(readReplica.check()).isFalse();
+        assertThat(readReplica.onDemand(AnswerDAO.class)).isSameAs(primaryDAO);
+    }
+
+    @Test
+    public void testHealthyReplica() throws SQLException {
+        when(connection.isValid(anyInt())).thenReturn(true);
+        final ReadReplica readReplica = new ReadReplica(primary, replica);
+        final AnswerDAO dao = readReplica.onDemand(AnswerDAO.class);
+        assertThat(readReplica.check()).isTrue();
+        dao.listForProcessing("1");
+        verify(replicaDAO).listForProcessing("1");
+        verify(primaryDAO, never()).listForProcessing("1");
+        verify(handle).close();
+    }
+
+    @Test
+    public void testUnhealthyReplica() throws SQLException {
+        when(connection.isValid(anyInt())).thenReturn(true);
+        final ReadReplica readReplica = new ReadReplica(primary, replica);
+        final AnswerDAO dao = readReplica.onDemand(AnswerDAO.class);
+        assertThat(readReplica.check()).isTrue();
+        when(replica.open()).thenThrow(new RuntimeException("connection refused"));
+        assertThat(readReplica.check()).isFalse();
+        dao.listForProcessing("1");
+        verify(primaryDAO).listForProcessing("1");
+        verify(replicaDAO, never()).listForProcessing("1");
+    }
+}
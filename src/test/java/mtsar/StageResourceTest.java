@@ -18,15 +18,16 @@ package mtsar;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Maps;
+import io.dropwizard.jackson.Jackson;
 import io.dropwizard.testing.junit.ResourceTestRule;
 import io.dropwizard.views.ViewMessageBodyWriter;
 import io.dropwizard.views.mustache.MustacheViewRenderer;
 import mtsar.api.Stage;
-import mtsar.api.sql.AnswerDAO;
-import mtsar.api.sql.StageDAO;
-import mtsar.api.sql.TaskDAO;
-import mtsar.api.sql.WorkerDAO;
+import mtsar.api.sql.*;
+import mtsar.dropwizard.hk2.AgreementService;
+import mtsar.dropwizard.hk2.AnswerWriter;
 import mtsar.dropwizard.hk2.StageService;
+import mtsar.dropwizard.hk2.UnitOfWork;
 import mtsar.processors.AnswerAggregator;
 import mtsar.processors.TaskAllocator;
 import mtsar.processors.WorkerRanker;
@@ -36,10 +37,13 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.mockito.internal.util.collections.Sets;
+import org.skife.jdbi.v2.DBI;
 
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -61,12 +65,16 @@ public class StageResourceTest {
     private static final TaskDAO taskDAO = mock(TaskDAO.class);
     private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
     private static final StageDAO stageDAO = mock(StageDAO.class);
+    private static final AnswerAggregationDAO answerAggregationDAO = mock(AnswerAggregationDAO.class);
+    private static final WorkerRankingDAO workerRankingDAO = mock(WorkerRankingDAO.class);
     private static final StageService STAGE_SERVICE = mock(StageService.class);
+    private static final AgreementService AGREEMENT_SERVICE = mock(AgreementService.class);
+    private static final CopyDAO COPY_DAO = mock(CopyDAO.class);
 
     @ClassRule
     public static final ResourceTestRule RULE = ResourceTestRule.builder()
             .setTestContainerFactory(new GrizzlyTestContainerFactory())
-            .addResource(new StageResource(STAGE_SERVICE, taskDAO, workerDAO, answerDAO, stageDAO))
+            .addResource(new StageResource(STAGE_SERVICE, taskDAO, workerDAO, answerDAO, stageDAO, answerAggregationDAO, workerRankingDAO, AGREEMENT_SERVICE, COPY_DAO, null, null, new AnswerWriter(answerDAO, false), Jackson.newObjectMapper(), taskDAO, workerDAO, answerDAO, new UnitOfWork(mock(DBI.class))))
             .addProvider(new ViewMessageBodyWriter(new MetricRegistry(), Collections.singletonList(new MustacheViewRenderer())))
             .build();
 
@@ -97,4 +105,23 @@ public class StageResourceTest {
                 .accept(MediaType.TEXT_HTML_TYPE).get().getStatusInfo())
                 .isEqualTo(Response.Status.OK);
     }
+
+    @Test
+    public void testGetTasksCSVCopy() {
+        doAnswer(invocation -> {
+            invocation.getArgumentAt(1, OutputStream.class).write("id,stage\n1,1\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(COPY_DAO).copyTasks(anyString(), any(OutputStream.class));
+        final String csv = RULE.getJerseyTest().target("/stages/1/tasks.csv").queryParam("mode", "copy").request()
+                .accept(mtsar.util.MediaType.TEXT_CSV).get(String.class);
+        assertThat(csv).isEqualTo("id,stage\n1,1\n");
+        verify(COPY_DAO).copyTasks(eq("1"), any(OutputStream.class));
+    }
+
+    @Test
+    public void testGetTasksCSVUnknownMode() {
+        assertThat(RULE.getJerseyTest().target("/stages/1/tasks.csv").queryParam("mode", "foo").request()
+                .accept(mtsar.util.MediaType.TEXT_CSV).get().getStatusInfo())
+                .isEqualTo(Response.Status.BAD_REQUEST);
+    }
 }
@@ -20,14 +20,19 @@ import io.dropwizard.testing.junit.ResourceTestRule;
 import mtsar.api.Stage;
 import mtsar.api.Task;
 import mtsar.api.sql.TaskDAO;
+import mtsar.dropwizard.hk2.UnitOfWork;
 import mtsar.resources.TaskResource;
 import org.glassfish.jersey.test.grizzly.GrizzlyTestContainerFactory;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.List;
 
 import static mtsar.TestHelper.fixture;
 import static mtsar.TestHelper.params;
@@ -42,7 +47,7 @@ public class TaskResourceTest {
     public static final ResourceTestRule RULE = ResourceTestRule.builder()
             .setTestContainerFactory(new GrizzlyTestContainerFactory())
             .addProperty("jersey.config.server.provider.classnames", "org.glassfish.jersey.media.multipart.MultiPartFeature")
-            .addResource(new TaskResource(stage, dao, null, null))
+            .addResource(new TaskResource(stage, dao, null, null, null, null, null, new UnitOfWork(mock(DBI.class))))
             .build();
 
     private static final Task task = fixture("task1.json", Task.class);
@@ -61,6 +66,26 @@ public class TaskResourceTest {
         verify(dao).find(1, "1");
     }
 
+    @Test
+    public void testGetTasks() {
+        when(dao.listForStage(eq("1"), eq(0), eq(1))).thenReturn(Collections.singletonList(task));
+        final Response response = RULE.getJerseyTest().target("/tasks").queryParam("limit", 1).request().get();
+        assertThat(response.readEntity(new GenericType<List<Task>>() {
+        })).containsExactly(task);
+        assertThat(response.getLink("next")).isNotNull();
+        assertThat(response.getLink("next").getUri().getQuery()).contains("after=" + task.getId()).contains("limit=1");
+
+        when(dao.listForStage(eq("1"), eq(task.getId()), eq(1))).thenReturn(Collections.emptyList());
+        final Response last = RULE.getJerseyTest().target("/tasks").queryParam("after", task.getId()).queryParam("limit", 1).request().get();
+        assertThat(last.getLink("next")).isNull();
+    }
+
+    @Test
+    public void testGetTasksLimit() {
+        assertThat(RULE.getJerseyTest().target("/tasks").queryParam("limit", 0).request().get().getStatusInfo())
+                .isEqualTo(Response.Status.BAD_REQUEST);
+    }
+
     @Test
     public void testPostTask() {
         reset(dao);
@@ -20,13 +20,25 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.jackson.Jackson;
 import io.dropwizard.testing.FixtureHelpers;
+import org.mockito.stubbing.Answer;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.exceptions.TransactionFailedException;
+import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
 
 import javax.annotation.Nonnull;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public final class TestHelper {
     public static final TypeReference<Map<String, Object>> MAP_STRING_TO_OBJECT = new TypeReference<Map<String, Object>>() {
@@ -66,4 +78,48 @@ public final class TestHelper {
         params.addAll("datetime", params.remove("dateTime"));
         return params;
     }
+
+    public static <T> ResultIterator<T> iterator(@Nonnull Collection<T> collection) {
+        final Iterator<T> iterator = collection.iterator();
+        return new ResultIterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Stubs {@link Transactional#inTransaction(Transaction)} the way JDBI runs it, with or without the isolation level: the exceptions thrown
+     * by the callback are propagated, and a transaction marked as rollback-only fails on return.
+     */
+    public static <T extends Transactional<T>> Answer<Object> transaction(@Nonnull T dao) {
+        return invocation -> {
+            final AtomicBoolean rollbackOnly = new AtomicBoolean(false);
+            final TransactionStatus status = mock(TransactionStatus.class);
+            doAnswer(setRollbackOnly -> {
+                rollbackOnly.set(true);
+                return null;
+            }).when(status).setRollbackOnly();
+            when(status.isRollbackOnly()).then(isRollbackOnly -> rollbackOnly.get());
+            @SuppressWarnings("unchecked")
+            final Object result = invocation.getArgumentAt(invocation.getArguments().length - 1, Transaction.class).inTransaction(dao, status);
+            if (rollbackOnly.get()) throw new TransactionFailedException("Transaction is marked as rollback-only");
+            return result;
+        };
+    }
 }
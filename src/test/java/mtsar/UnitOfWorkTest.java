@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar;
+
+import mtsar.api.sql.AnswerDAO;
+import mtsar.dropwizard.UnitOfWorkListener;
+import mtsar.dropwizard.hk2.UnitOfWork;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class UnitOfWorkTest {
+    private final DBI dbi = mock(DBI.class);
+    private final Handle handle = mock(Handle.class);
+    private final AnswerDAO onDemandDAO = mock(AnswerDAO.class);
+    private final AnswerDAO attachedDAO = mock(AnswerDAO.class);
+    private final UnitOfWork unitOfWork = new UnitOfWork(dbi);
+
+    @Before
+    public void setup() {
+        reset(dbi, handle, onDemandDAO, attachedDAO);
+        when(dbi.onDemand(AnswerDAO.class)).thenReturn(onDemandDAO);
+        when(dbi.open()).thenReturn(handle);
+        when(handle.attach(AnswerDAO.class)).thenReturn(attachedDAO);
+    }
+
+    @Test
+    public void testOutsideUnitOfWork() {
+        final AnswerDAO dao = unitOfWork.onDemand(AnswerDAO.class);
+        assertThat(unitOfWork.isActive()).isFalse();
+        dao.count("1");
+        verify(onDemandDAO).count("1");
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testSharedHandle() {
+        final AnswerDAO dao = unitOfWork.onDemand(AnswerDAO.class);
+        unitOfWork.begin();
+        assertThat(unitOfWork.isActive()).isTrue();
+        dao.count("1");
+        dao.listForProcessing("1");
+        dao.close();
+        verify(dbi, times(1)).open();
+        verify(attachedDAO).count("1");
+        verify(attachedDAO).listForProcessing("1");
+        verify(attachedDAO, never()).close();
+        verify(handle, never()).close();
+        unitOfWork.end();
+        assertThat(unitOfWork.isActive()).isFalse();
+        verify(handle).close();
+        verifyZeroInteractions(onDemandDAO);
+    }
+
+    @Test
+    public void testLazyHandle() {
+        unitOfWork.begin();
+        unitOfWork.end();
+        verify(dbi, never()).open();
+    }
+
+    @Test
+    public void testRelease() {
+        final AnswerDAO dao = unitOfWork.onDemand(AnswerDAO.class);
+        unitOfWork.begin();
+        dao.count("1");
+        unitOfWork.release();
+        assertThat(unitOfWork.isActive()).isTrue();
+        verify(handle).close();
+        dao.count("1");
+        verify(dbi, times(2)).open();
+        verify(handle, times(2)).attach(AnswerDAO.class);
+        unitOfWork.end();
+        verify(handle, times(2)).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseInTransaction() {
+        when(handle.isInTransaction()).thenReturn(true);
+        final AnswerDAO dao = unitOfWork.onDemand(AnswerDAO.class);
+        unitOfWork.begin();
+        try {
+            dao.count("1");
+            unitOfWork.release();
+        } finally {
+            unitOfWork.end();
+        }
+    }
+
+    @Test
+    public void testListener() {
+        final RequestEvent started = mock(RequestEvent.class), finished = mock(RequestEvent.class);
+        when(started.getType()).thenReturn(RequestEvent.Type.START);
+        when(finished.getType()).thenReturn(RequestEvent.Type.FINISHED);
+        final AnswerDAO dao = unitOfWork.onDemand(AnswerDAO.class);
+        final RequestEventListener listener = new UnitOfWorkListener(unitOfWork).onRequest(started);
+        assertThat(unitOfWork.isActive()).isTrue();
+        dao.count("1");
+        listener.onEvent(finished);
+        assertThat(unitOfWork.isActive()).isFalse();
+        verify(handle).close();
+    }
+}
@@ -21,9 +21,14 @@ import mtsar.api.Answer;
 import mtsar.api.Stage;
 import mtsar.api.Task;
 import mtsar.api.Worker;
+import mtsar.api.WorkerRanking;
 import mtsar.api.sql.AnswerDAO;
 import mtsar.api.sql.TaskDAO;
 import mtsar.api.sql.WorkerDAO;
+import mtsar.api.sql.WorkerRankingDAO;
+import mtsar.dropwizard.hk2.AnswerWriter;
+import mtsar.dropwizard.hk2.UnitOfWork;
+import mtsar.processors.WorkerRanker;
 import mtsar.resources.WorkerResource;
 import mtsar.util.PostgresUtils;
 import org.glassfish.jersey.client.HttpUrlConnectorProvider;
@@ -31,33 +36,42 @@ import org.glassfish.jersey.test.grizzly.GrizzlyTestContainerFactory;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import static mtsar.TestHelper.fixture;
+import static mtsar.TestHelper.transaction;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 public class WorkerResourceTest {
     private static final GenericType<List<Answer>> LIST_ANSWER = new GenericType<List<Answer>>() {
     };
+    private static final GenericType<Map<Integer, WorkerRanking>> MAP_RANKING = new GenericType<Map<Integer, WorkerRanking>>() {
+    };
 
     private static final TaskDAO taskDAO = mock(TaskDAO.class);
     private static final WorkerDAO workerDAO = mock(WorkerDAO.class);
     private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final AnswerDAO replicaAnswerDAO = mock(AnswerDAO.class);
+    private static final WorkerRankingDAO workerRankingDAO = mock(WorkerRankingDAO.class);
     private static final Stage stage = mock(Stage.class);
 
     @ClassRule
     public static final ResourceTestRule RULE = ResourceTestRule.builder()
             .setTestContainerFactory(new GrizzlyTestContainerFactory())
             .addProperty("jersey.config.server.provider.classnames", "org.glassfish.jersey.media.multipart.MultiPartFeature")
-            .addResource(new WorkerResource(stage, taskDAO, workerDAO, answerDAO))
+            .addResource(new WorkerResource(stage, taskDAO, workerDAO, answerDAO, replicaAnswerDAO, workerRankingDAO, null, null, new AnswerWriter(answerDAO, false), new UnitOfWork(mock(DBI.class))))
             .build();
 
     private static final Task task = fixture("task1.json", Task.class);
@@ -68,16 +82,22 @@ public class WorkerResourceTest {
         when(stage.getId()).thenReturn("1");
         when(taskDAO.find(eq(1), eq("1"))).thenReturn(task);
         when(workerDAO.find(eq(1), eq("1"))).thenReturn(worker);
+        when(taskDAO.select(eq(Collections.singletonList(1)), eq("1"))).thenReturn(Collections.singletonList(task));
+    }
+
+    /* the answers are submitted in a transaction of the answer DAO that provides the other DAOs */
+    private static void stubTransaction() {
+        when(answerDAO.inTransaction(any(Transaction.class))).then(transaction(answerDAO));
+        when(answerDAO.taskDAO()).thenReturn(taskDAO);
+        when(answerDAO.workerDAO()).thenReturn(workerDAO);
     }
 
     @Test
     public void testSkipAnswer() {
         reset(answerDAO);
-        when(answerDAO.insert(any(Answer.class))).then((invocation) -> {
-            final Answer answer = new Answer.Builder().mergeFrom(invocation.getArgumentAt(0, Answer.class)).setId(1).build();
-            when(answerDAO.find(eq(answer.getId()), eq(answer.getStage()))).thenReturn(answer);
-            return answer.getId();
-        });
+        stubTransaction();
+        when(answerDAO.insertUnique(anyCollectionOf(Answer.class))).thenReturn(Collections.singletonList(new Answer.Builder().
+                setId(1).setStage("1").setType(AnswerDAO.ANSWER_TYPE_SKIP).setWorkerId(worker.getId()).setTaskId(task.getId()).build()));
         final Map<String, String> fixture = fixture("answers1skip.json", PostgresUtils.MAP_STRING_TO_STRING);
         final MultivaluedMap<String, String> entity = new MultivaluedHashMap<>(fixture);
         final Response response = RULE.getJerseyTest().target("/workers/1/answers/skip").request()
@@ -90,4 +110,67 @@ public class WorkerResourceTest {
         assertThat(answer.getWorkerId()).isEqualTo(worker.getId());
         assertThat(answer.getTaskId()).isEqualTo(task.getId());
     }
+
+    @Test
+    public void testSkipAnswerDuplicate() {
+        reset(answerDAO);
+        stubTransaction();
+        when(answerDAO.insertUnique(anyCollectionOf(Answer.class))).thenReturn(Collections.emptyList());
+        final Map<String, String> fixture = fixture("answers1skip.json", PostgresUtils.MAP_STRING_TO_STRING);
+        final MultivaluedMap<String, String> entity = new MultivaluedHashMap<>(fixture);
+        final Response response = RULE.getJerseyTest().target("/workers/1/answers/skip").request()
+                .property(HttpUrlConnectorProvider.SET_METHOD_WORKAROUND, true)
+                .method("PATCH", Entity.form(entity));
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.readEntity(String.class)).contains("#answer-duplicate");
+    }
+
+    @Test
+    public void testStoredRankings() {
+        reset(replicaAnswerDAO);
+        reset(workerRankingDAO);
+        when(replicaAnswerDAO.version(eq("1"))).thenReturn("3");
+        when(workerRankingDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(workerRankingDAO));
+        when(workerRankingDAO.isComputed(eq("1"), anyString(), eq("3"))).thenReturn(true);
+        when(workerRankingDAO.listForStage(eq("1"), anyString(), eq("3"))).thenReturn(Collections.singletonList(
+                new WorkerRanking.Builder().setWorker(worker).setReputation(0.5).build()
+        ));
+        final Map<Integer, WorkerRanking> rankings = RULE.getJerseyTest().target("/workers/rankings").request().get(MAP_RANKING);
+        assertThat(rankings).hasSize(1);
+        assertThat(rankings.get(worker.getId()).getReputation()).isEqualTo(0.5);
+        verify(stage, never()).getWorkerRanker();
+    }
+
+    @Test
+    public void testStoredEmptyRankings() {
+        reset(replicaAnswerDAO);
+        reset(workerRankingDAO);
+        when(replicaAnswerDAO.version(eq("1"))).thenReturn("3");
+        when(workerRankingDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(workerRankingDAO));
+        when(workerRankingDAO.isComputed(eq("1"), anyString(), eq("3"))).thenReturn(true);
+        when(workerRankingDAO.listForStage(eq("1"), anyString(), eq("3"))).thenReturn(Collections.emptyList());
+        final Map<Integer, WorkerRanking> rankings = RULE.getJerseyTest().target("/workers/rankings").request().get(MAP_RANKING);
+        assertThat(rankings).isEmpty();
+        verify(stage, never()).getWorkerRanker();
+    }
+
+    @Test
+    public void testChangedRankingsNotStored() {
+        reset(replicaAnswerDAO);
+        reset(workerRankingDAO);
+        when(replicaAnswerDAO.version(eq("1"))).thenReturn("3", "4");
+        when(workerRankingDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(workerRankingDAO));
+        when(workerRankingDAO.isComputed(eq("1"), anyString(), eq("3"))).thenReturn(false);
+        when(workerDAO.listForStage(eq("1"))).thenReturn(Collections.singletonList(worker));
+        final WorkerRanker ranker = mock(WorkerRanker.class);
+        when(ranker.rank(anyCollectionOf(Worker.class))).thenReturn(Collections.singletonMap(worker.getId(),
+                new WorkerRanking.Builder().setWorker(worker).setReputation(0.5).build()));
+        when(stage.getWorkerRanker()).thenReturn(ranker);
+        final Map<Integer, WorkerRanking> rankings = RULE.getJerseyTest().target("/workers/rankings").request().get(MAP_RANKING);
+        assertThat(rankings).hasSize(1);
+        /* the answers have changed while ranking, so the rankings are not labelled with the old version */
+        verify(workerRankingDAO, never()).inTransaction(any(Transaction.class));
+        reset(stage);
+        setup();
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.agreement;
+
+import mtsar.api.AgreementReport;
+import mtsar.api.Answer;
+import mtsar.api.Stage;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.dropwizard.hk2.AgreementService;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static mtsar.TestHelper.iterator;
+import static mtsar.TestHelper.transaction;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.*;
+
+public class AgreementServiceTest {
+    private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final Stage stage = mock(Stage.class);
+    private static final List<Answer> answers = Arrays.asList(
+            new Answer.Builder().setId(1).setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
+            new Answer.Builder().setId(2).setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
+            new Answer.Builder().setId(3).setWorkerId(1).setTaskId(2).addAnswers("1").buildPartial(),
+            new Answer.Builder().setId(4).setWorkerId(2).setTaskId(2).addAnswers("2").buildPartial()
+    );
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        reset(answerDAO);
+        when(stage.getId()).thenReturn("1");
+        when(answerDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(answerDAO));
+        when(answerDAO.streamForProcessing(anyString(), anyInt(), any(int[].class), any(int[].class))).then(invocation -> iterator(Collections.<Answer>emptyList()));
+        /* a transaction is running all the time, so the skipped identifiers are never settled */
+        when(answerDAO.snapshot()).thenReturn("1:2:1");
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        final AgreementService service = new AgreementService(answerDAO);
+
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(answers.subList(0, 2)));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        final AgreementReport first = service.getReport(stage, false);
+        assertThat(first.getPercentage()).isCloseTo(1.0, within(1e-9));
+        assertThat(service.getReport(stage, false)).isSameAs(first);
+
+        when(answerDAO.streamForProcessing(anyString(), eq(2), any(int[].class), any(int[].class))).then(invocation -> iterator(answers.subList(2, 4)));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        final AgreementReport second = service.getReport(stage, true);
+        assertThat(second.getPercentage()).isCloseTo(0.5, within(1e-9));
+        assertThat(second.getTasks()).containsOnlyKeys(1, 2);
+        assertThat(second.getWorkers()).containsOnlyKeys(1, 2);
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class));
+    }
+
+    @Test
+    public void testRebuild() {
+        final AgreementService service = new AgreementService(answerDAO);
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(answers));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        assertThat(service.getReport(stage, false).getPercentage()).isCloseTo(0.5, within(1e-9));
+
+        /* the second answer to the second task has been deleted */
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(answers.subList(0, 3)));
+        when(answerDAO.epoch(anyString())).thenReturn("1");
+        assertThat(service.getReport(stage, false).getPercentage()).isCloseTo(1.0, within(1e-9));
+    }
+
+    @Test
+    public void testApproximateReport() {
+        final AgreementService service = new AgreementService(answerDAO);
+        when(answerDAO.listForSample(anyString(), eq(42L), eq(2))).thenReturn(answers);
+        final AgreementReport report = service.getApproximateReport(stage, 2, 42L, 50, 0);
+        assertThat(report.getSample()).contains(2);
+        assertThat(report.getReplicates()).contains(50);
+        assertThat(report.getPercentage()).isCloseTo(0.5, within(1e-9));
+        assertThat(report.getIntervals()).containsKey("percentage");
+        final List<Double> interval = report.getIntervals().get("percentage");
+        assertThat(interval.get(0)).isBetween(0.0, 0.5);
+        assertThat(interval.get(1)).isBetween(0.5, 1.0);
+        assertThat(service.getApproximateReport(stage, 2, 42L, 50, 0).getIntervals()).isEqualTo(report.getIntervals());
+    }
+
+    @Test
+    public void testApproximateReportLimits() {
+        final AgreementService service = new AgreementService(answerDAO);
+        when(answerDAO.listForSample(anyString(), eq(42L), eq(AgreementService.MAX_SAMPLE))).thenReturn(answers);
+        final AgreementReport report = service.getApproximateReport(stage, Integer.MAX_VALUE, 42L, Integer.MAX_VALUE, 0);
+        assertThat(report.getSample()).contains(2);
+        assertThat(report.getReplicates()).contains(AgreementService.MAX_REPLICATES);
+    }
+
+    @Test
+    public void testApproximateReportBudget() {
+        final AgreementService service = new AgreementService(answerDAO);
+        when(answerDAO.listForSample(anyString(), eq(42L), eq(AgreementService.SAMPLE_PER_MILLISECOND))).thenReturn(answers);
+        final AgreementReport report = service.getApproximateReport(stage, AgreementService.MAX_SAMPLE, 42L, 50, 1);
+        assertThat(report.getSample()).contains(2);
+        verify(answerDAO).listForSample(anyString(), eq(42L), eq(AgreementService.SAMPLE_PER_MILLISECOND));
+        assertThat(service.getApproximateReport(stage, 2, 42L, 50, 1).getSample()).contains(0);
+        verify(answerDAO).listForSample(anyString(), eq(42L), eq(2));
+    }
+}
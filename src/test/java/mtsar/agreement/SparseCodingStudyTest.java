@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.agreement;
+
+import de.tudarmstadt.ukp.dkpro.statistics.agreement.coding.*;
+import de.tudarmstadt.ukp.dkpro.statistics.agreement.distance.NominalDistanceFunction;
+import de.tudarmstadt.ukp.dkpro.statistics.agreement.distance.OrdinalDistanceFunction;
+import mtsar.api.agreement.SparseCodingStudy;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SparseCodingStudyTest {
+    /* the reliability data of four observers coding twelve units by Krippendorff (2011), null is a missing value */
+    private static final List<Integer[]> RELIABILITY = Arrays.asList(
+            new Integer[]{1, 1, null, 1},
+            new Integer[]{2, 2, 3, 2},
+            new Integer[]{3, 3, 3, 3},
+            new Integer[]{3, 3, 3, 3},
+            new Integer[]{2, 2, 2, 2},
+            new Integer[]{1, 2, 3, 4},
+            new Integer[]{4, 4, 4, 4},
+            new Integer[]{1, 1, 2, 1},
+            new Integer[]{2, 2, 2, 2},
+            new Integer[]{null, 5, 5, 5},
+            new Integer[]{null, null, 1, 1},
+            new Integer[]{null, 3, null, null}
+    );
+    /* the units every observer has coded */
+    private static final List<Integer[]> COMPLETE = RELIABILITY.subList(1, 9);
+    private SparseCodingStudy study;
+
+    private static Map<Integer, String> item(Object... ratings) {
+        final Map<Integer, String> map = new HashMap<>();
+        for (int i = 0; i < ratings.length; i += 2) map.put((Integer) ratings[i], (String) ratings[i + 1]);
+        return map;
+    }
+
+    @Before
+    public void setup() {
+        study = new SparseCodingStudy();
+        study.setItem(1, item(1, "a", 2, "a", 3, "b"));
+        study.setItem(2, item(1, "b", 2, "b"));
+        study.setItem(3, item(1, "a"));
+    }
+
+    @Test
+    public void testCounts() {
+        assertThat(study.getItemCount()).isEqualTo(3);
+        assertThat(study.getRaterCount()).isEqualTo(3);
+        assertThat(study.getCategoryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testPercentage() {
+        assertThat(study.getPercentage()).isCloseTo(2.0 / 3, within(1e-9));
+        assertThat(study.getRandolphKappa()).isCloseTo(1.0 / 3, within(1e-9));
+    }
+
+    @Test
+    public void testAlpha() {
+        assertThat(study.getNominalAlpha()).isCloseTo(1.0 / 3, within(1e-9));
+        assertThat(study.getOrdinalAlpha()).isCloseTo(1.0 / 3, within(1e-9));
+    }
+
+    @Test
+    public void testOrdinalAlpha() {
+        final SparseCodingStudy ordinal = new SparseCodingStudy();
+        ordinal.setItem(1, item(1, "1", 2, "2"));
+        ordinal.setItem(2, item(1, "3", 2, "3"));
+        ordinal.setItem(3, item(1, "10", 2, "10"));
+        /* the near disagreement is cheaper than in the nominal case */
+        assertThat(ordinal.getOrdinalAlpha()).isGreaterThan(ordinal.getNominalAlpha());
+    }
+
+    @Test
+    public void testWeightedKappa() {
+        assertThat(study.getWeightedKappa()).isCloseTo(0.1, within(1e-9));
+    }
+
+    @Test
+    public void testSetRating() {
+        study.setRating(3, 2, "a");
+        assertThat(study.getItemCount()).isEqualTo(3);
+        assertThat(study.getRatings(3)).containsOnlyKeys(1, 2);
+        assertThat(study.getPercentage()).isCloseTo(7.0 / 9, within(1e-9));
+
+        study.setRating(1, 3, "a");
+        study.removeItem(2);
+        assertThat(study.getPercentage()).isCloseTo(1.0, within(1e-9));
+        assertThat(study.getCategoryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testBreakdown() {
+        final Map<Integer, Double> items = study.getItemPercentages();
+        assertThat(items).containsOnlyKeys(1, 2);
+        assertThat(items.get(1)).isCloseTo(1.0 / 3, within(1e-9));
+        assertThat(items.get(2)).isCloseTo(1.0, within(1e-9));
+
+        final Map<Integer, Double> raters = study.getRaterPercentages();
+        assertThat(raters).containsOnlyKeys(1, 2, 3);
+        assertThat(raters.get(1)).isCloseTo(0.75, within(1e-9));
+        assertThat(raters.get(2)).isCloseTo(0.75, within(1e-9));
+        assertThat(raters.get(3)).isCloseTo(0.0, within(1e-9));
+    }
+
+    private static SparseCodingStudy sparse(List<Integer[]> units) {
+        final SparseCodingStudy sparse = new SparseCodingStudy();
+        for (int i = 0; i < units.size(); i++) {
+            final Map<Integer, String> ratings = new HashMap<>();
+            for (int rater = 0; rater < units.get(i).length; rater++) {
+                if (units.get(i)[rater] != null) ratings.put(rater, units.get(i)[rater].toString());
+            }
+            sparse.setItem(i, ratings);
+        }
+        return sparse;
+    }
+
+    /*
+     * The answers were passed to DKPro as strings, so the ordinal study is built separately
+     * with the integer categories that the DKPro ordinal distance requires.
+     */
+    private static CodingAnnotationStudy dkpro(List<Integer[]> units, boolean ordinal) {
+        final CodingAnnotationStudy dense = new CodingAnnotationStudy(units.get(0).length);
+        for (final Integer[] unit : units) {
+            dense.addItem(ordinal ? unit : Arrays.stream(unit).map(value -> value == null ? null : value.toString()).toArray());
+        }
+        return dense;
+    }
+
+    @Test
+    public void testReliabilityData() {
+        /* the values reported by Krippendorff (2011) */
+        final SparseCodingStudy reliability = sparse(RELIABILITY);
+        assertThat(reliability.getNominalAlpha()).isCloseTo(0.743, within(5e-4));
+        assertThat(reliability.getOrdinalAlpha()).isCloseTo(0.815, within(5e-4));
+
+        final SparseCodingStudy complete = sparse(COMPLETE);
+        assertThat(complete.getPercentage()).isCloseTo(0.75, within(1e-9));
+        assertThat(complete.getWeightedKappa()).isCloseTo(0.645756, within(1e-6));
+    }
+
+    @Test
+    public void testDKPro() {
+        /* the units coded by a single observer are excluded, since DKPro counts them in the ordinal distance */
+        final List<Integer[]> pairable = RELIABILITY.subList(0, 11);
+        final SparseCodingStudy reliability = sparse(pairable);
+        assertThat(reliability.getNominalAlpha()).isCloseTo(new KrippendorffAlphaAgreement(dkpro(pairable, false), new NominalDistanceFunction()).calculateAgreement(), within(1e-9));
+        assertThat(reliability.getOrdinalAlpha()).isCloseTo(new KrippendorffAlphaAgreement(dkpro(pairable, true), new OrdinalDistanceFunction()).calculateAgreement(), within(1e-9));
+
+        final SparseCodingStudy complete = sparse(COMPLETE);
+        final CodingAnnotationStudy dense = dkpro(COMPLETE, false);
+        assertThat(complete.getPercentage()).isCloseTo(new PercentageAgreement(dense).calculateAgreement(), within(1e-9));
+        assertThat(complete.getWeightedKappa()).isCloseTo(new WeightedKappaAgreement(dense, new NominalDistanceFunction()).calculateAgreement(), within(1e-9));
+        assertThat(complete.getRandolphKappa()).isCloseTo(new RandolphKappaAgreement(dense).calculateAgreement(), within(1e-9));
+    }
+
+    @Test
+    public void testEmpty() {
+        final SparseCodingStudy empty = new SparseCodingStudy();
+        assertThat(empty.getPercentage()).isNaN();
+        assertThat(empty.getNominalAlpha()).isNaN();
+        assertThat(empty.getWeightedKappa()).isNaN();
+    }
+}
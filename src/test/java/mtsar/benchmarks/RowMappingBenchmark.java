@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import mtsar.api.Answer;
+import mtsar.api.sql.AnswerDAO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the allocation per answer row of {@link AnswerDAO.Mapper}, which keeps the textual
+ * representations received from the database, with the same row rendered again by {@link Answer.Builder#build()}
+ * as the former mapper did, and with {@link AnswerDAO.ProjectionMapper}. The row is served by a proxy,
+ * whose small per-call overhead is the same for all the paths. Run it with the GC profiler
+ * and compare the gc.alloc.rate.norm values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowMappingBenchmark {
+    static final Map<String, Object> ROW = ImmutableMap.<String, Object>builder().
+            put("id", 1).
+            put("stage", "default").
+            put("datetime", new Timestamp(0)).
+            put("tags", new String[]{"gold", "batch1"}).
+            put("metadata", "{\"source\":\"import\"}").
+            put("type", AnswerDAO.ANSWER_TYPE_DEFAULT).
+            put("worker_id", 1).
+            put("task_id", 1).
+            put("answers", new String[]{"1"}).
+            build();
+
+    private final ResultSet row = row(ROW);
+    private final AnswerDAO.Mapper mapper = new AnswerDAO.Mapper();
+    private final AnswerDAO.ProjectionMapper projectionMapper = new AnswerDAO.ProjectionMapper();
+
+    /* the arrays are rendered as PostgreSQL does, the other values are returned as is */
+    static ResultSet row(Map<String, Object> values) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            final Object value = values.get((String) args[0]);
+            if (value instanceof String[]) {
+                final String[] elements = (String[]) value;
+                if (method.getName().equals("getString")) return "{" + String.join(",", elements) + "}";
+                if (method.getName().equals("getArray")) {
+                    return Proxy.newProxyInstance(Array.class.getClassLoader(), new Class<?>[]{Array.class}, (array, getArray, none) -> elements.clone());
+                }
+            }
+            return value;
+        });
+    }
+
+    @Benchmark
+    public Answer mapper() throws SQLException {
+        return mapper.map(0, row, null);
+    }
+
+    @Benchmark
+    public Answer rendering() throws SQLException {
+        return new Answer.Builder().mergeFrom(mapper.map(0, row, null)).build();
+    }
+
+    @Benchmark
+    public Answer projection() throws SQLException {
+        return projectionMapper.map(0, row, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().
+                include(RowMappingBenchmark.class.getSimpleName()).
+                addProfiler(GCProfiler.class).
+                build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.benchmarks;
+
+import mtsar.api.Answer;
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class RowMappingBenchmarkTest {
+    private final RowMappingBenchmark benchmark = new RowMappingBenchmark();
+
+    @Test
+    public void testMapper() throws SQLException {
+        final Answer answer = benchmark.mapper();
+        assertThat(answer.getId()).isEqualTo(1);
+        assertThat(answer.getTags()).containsExactly("gold", "batch1");
+        assertThat(answer.getTagsTextArray()).isEqualTo("{gold,batch1}");
+        assertThat(answer.getMetadata()).containsOnly(entry("source", "import"));
+        assertThat(answer.getAnswers()).containsExactly("1");
+        assertThat(answer.getAnswersTextArray()).isEqualTo("{1}");
+    }
+
+    /* the paths must do the same work, otherwise the comparison is meaningless */
+    @Test
+    public void testSameResult() throws SQLException {
+        final Answer mapped = benchmark.mapper(), rendered = benchmark.rendering();
+        assertThat(rendered).isEqualTo(mapped);
+        assertThat(rendered.getTagsTextArray()).isEqualTo(mapped.getTagsTextArray());
+        assertThat(rendered.getMetadataJSON()).isEqualTo(mapped.getMetadataJSON());
+        assertThat(rendered.getAnswersTextArray()).isEqualTo(mapped.getAnswersTextArray());
+        assertThat(benchmark.projection().getAnswers()).isEqualTo(mapped.getAnswers());
+    }
+}
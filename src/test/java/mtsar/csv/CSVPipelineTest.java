@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.csv;
+
+import mtsar.api.ImportReport;
+import mtsar.api.csv.CSVPipeline;
+import mtsar.api.csv.ImportException;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CSVPipelineTest {
+    private static final CSVFormat FORMAT = CSVFormat.EXCEL.withHeader();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static CSVParser csv(int size, boolean broken) throws IOException {
+        final StringBuilder builder = new StringBuilder("id\n");
+        for (int i = 1; i <= size; i++) builder.append(broken && i % 1000 == 0 ? "oops" : Integer.toString(i)).append('\n');
+        return new CSVParser(new StringReader(builder.toString()), FORMAT);
+    }
+
+    @Test
+    public void testPipeline() throws IOException, InterruptedException {
+        final List<Integer> stored = new ArrayList<>();
+        final ImportReport report;
+        try (final CSVParser csv = csv(2500, false)) {
+            report = new CSVPipeline<>(executor, row -> Integer.valueOf(row.get("id")), stored::addAll, 2).run(csv);
+        }
+        assertThat(report.getInserted()).isEqualTo(2500);
+        assertThat(report.getErrors()).isEmpty();
+        assertThat(stored).hasSize(2500).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void testParseErrors() throws IOException, InterruptedException {
+        final List<Integer> stored = new ArrayList<>();
+        try (final CSVParser csv = csv(2500, true)) {
+            new CSVPipeline<>(executor, row -> Integer.valueOf(row.get("id")), stored::addAll, 2).run(csv);
+            fail("The import must be rejected");
+        } catch (ImportException e) {
+            assertThat(e.getReport().getInserted()).isZero();
+            assertThat(e.getReport().getErrors()).containsOnlyKeys(1000L, 2000L);
+        }
+        /* nothing is written after the first broken chunk */
+        assertThat(stored).isEmpty();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriterFailure() throws IOException, InterruptedException {
+        try (final CSVParser csv = csv(5000, false)) {
+            new CSVPipeline<>(executor, row -> row.get("id"), chunk -> {
+                throw new IllegalStateException("The database is gone");
+            }, 1).run(csv);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.csv;
+
+import mtsar.api.sql.CopyDAO;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CopyDAOTest {
+    private static final CSVFormat FORMAT = CSVFormat.EXCEL.withHeader();
+
+    @Test
+    public void testTransform() throws IOException {
+        final StringBuilder output = new StringBuilder();
+        try (final CSVParser csv = new CSVParser(new StringReader("answers,id,description\n1|2,1,\"Yes, or no?\"\n"), FORMAT)) {
+            CopyDAO.transform(csv, new String[]{"id", "datetime", "description", "answers"}, output);
+        }
+        assertThat(output.toString()).isEqualTo("1,,\"Yes, or no?\",1|2\r\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownHeader() throws IOException {
+        try (final CSVParser csv = new CSVParser(new StringReader("foo,bar\n1,2\n"), FORMAT)) {
+            CopyDAO.transform(csv, new String[]{"id", "datetime"}, new StringBuilder());
+        }
+    }
+}
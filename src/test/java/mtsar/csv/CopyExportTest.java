@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.csv;
+
+import io.dropwizard.testing.junit.DropwizardAppRule;
+import mtsar.api.sql.CopyDAO;
+import mtsar.dropwizard.MechanicalTsarApplication;
+import mtsar.dropwizard.MechanicalTsarConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CopyExportTest {
+    private static final String TEST_YAML_ENV = "MTSAR_TEST_YAML";
+    private static final String TEST_YAML = "test.yml";
+    /* the quote and the format specifier must survive the server-side quoting */
+    private static final String STAGE = "copy's %s";
+
+    @ClassRule
+    public static final DropwizardAppRule<MechanicalTsarConfiguration> RULE = new DropwizardAppRule<>(MechanicalTsarApplication.class, StringUtils.defaultString(System.getenv(TEST_YAML_ENV), TEST_YAML));
+
+    private static DBI dbi() {
+        return ((MechanicalTsarApplication) RULE.getApplication()).getLocator().getService(DBI.class);
+    }
+
+    @BeforeClass
+    public static void createStage() {
+        try (final Handle handle = dbi().open()) {
+            for (final String stage : new String[]{STAGE, "copy"}) {
+                handle.execute("insert into stages (id, worker_ranker, task_allocator, answer_aggregator) values (?, ?, ?, ?) on conflict do nothing",
+                        stage, "mtsar.processors.worker.ZeroRanker", "mtsar.processors.task.RandomAllocator", "mtsar.processors.answer.MajorityVoting");
+                handle.execute("delete from tasks where stage = ?", stage);
+            }
+            handle.execute("insert into tasks (stage, datetime, tags, type, description, answers) values (?, '2016-01-02 03:04:05', '{a,b}', 'single', 'Yes or no?', '{yes,no}')", STAGE);
+            handle.execute("insert into tasks (stage, description) values ('copy', 'Other stage')");
+        }
+    }
+
+    @Test
+    public void testCopyTasks() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        /* the header and a single row of the requested stage */
+        assertThat(new CopyDAO(dbi()).copyTasks(STAGE, output)).isEqualTo(2);
+        final String[] lines = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).isEqualTo("id,stage,datetime,tags,type,description,answers");
+        assertThat(lines[1]).endsWith(",copy's %s,1451703845,a|b,single,Yes or no?,yes|no");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final CopyDAO dao = new CopyDAO(dbi());
+        dao.copyTasks(STAGE, output);
+        try (final Handle handle = dbi().open()) {
+            handle.execute("delete from tasks where stage = ?", STAGE);
+        }
+        assertThat(dao.insertTasks(STAGE, new StringReader(new String(output.toByteArray(), StandardCharsets.UTF_8)))).isEqualTo(1);
+        try (final Handle handle = dbi().open()) {
+            assertThat(handle.createQuery("select cast(datetime as text) from tasks where stage = :stage").bind("stage", STAGE).mapTo(String.class).first())
+                    .isEqualTo("2016-01-02 03:04:05");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.csv;
+
+import mtsar.api.ImportJob;
+import mtsar.api.ImportReport;
+import mtsar.api.csv.ImportException;
+import mtsar.dropwizard.hk2.ImportService;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImportServiceTest {
+    private static final CSVFormat FORMAT = CSVFormat.EXCEL.withHeader();
+    private final ImportService service = new ImportService();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        service.stop();
+    }
+
+    private ImportJob await(ImportJob job) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            job = service.getJob(job.getStage(), job.getId()).get();
+            if (!job.getStatus().equals(ImportJob.STATUS_PENDING) && !job.getStatus().equals(ImportJob.STATUS_RUNNING)) break;
+            Thread.sleep(10);
+        }
+        return job;
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        final ImportJob job = service.submit("1", "tasks", FORMAT, new ByteArrayInputStream("id\n1\n2\noops\n".getBytes(StandardCharsets.UTF_8)), (csv, progress) -> {
+            final ImportReport.Builder builder = new ImportReport.Builder();
+            for (final CSVRecord row : csv) {
+                if (row.get("id").equals("oops")) builder.putErrors(row.getRecordNumber(), "oops");
+                else progress.accept(1);
+            }
+            return builder.setInserted(2).build();
+        });
+        assertThat(job.getType()).isEqualTo("tasks");
+
+        final ImportJob done = await(job);
+        assertThat(done.getStatus()).isEqualTo(ImportJob.STATUS_DONE);
+        assertThat(done.getProcessed()).isEqualTo(2);
+        assertThat(done.getErrors()).containsOnlyKeys(3L);
+        assertThat(service.getJobs("1")).hasSize(1);
+        assertThat(service.getJobs("2")).isEmpty();
+        assertThat(service.getJob("2", job.getId()).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        final ImportJob job = service.submit("1", "answers", FORMAT, new ByteArrayInputStream("id\n1\n".getBytes(StandardCharsets.UTF_8)), (csv, progress) -> {
+            throw new IllegalStateException("The database is gone");
+        });
+
+        final ImportJob failed = await(job);
+        assertThat(failed.getStatus()).isEqualTo(ImportJob.STATUS_FAILED);
+        assertThat(failed.getMessage()).contains("The database is gone");
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        final ImportJob job = service.submit("1", "workers", FORMAT, new ByteArrayInputStream("id\noops\n".getBytes(StandardCharsets.UTF_8)), (csv, progress) -> {
+            throw new ImportException(new ImportReport.Builder().setInserted(0).putErrors(1L, "oops").build());
+        });
+
+        final ImportJob rejected = await(job);
+        assertThat(rejected.getStatus()).isEqualTo(ImportJob.STATUS_FAILED);
+        assertThat(rejected.getErrors()).containsOnlyKeys(1L);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean started = new AtomicBoolean();
+        final List<ImportJob> running = new ArrayList<>();
+        for (int i = 0; i < ImportService.THREADS; i++) {
+            running.add(service.submit("1", "tasks", FORMAT, new ByteArrayInputStream("id\n1\n".getBytes(StandardCharsets.UTF_8)), (csv, progress) -> {
+                latch.await();
+                return new ImportReport.Builder().setInserted(1).build();
+            }));
+        }
+        final ImportJob pending = service.submit("1", "tasks", FORMAT, new ByteArrayInputStream("id\n1\n".getBytes(StandardCharsets.UTF_8)), (csv, progress) -> {
+            started.set(true);
+            return new ImportReport.Builder().setInserted(1).build();
+        });
+
+        assertThat(service.cancel("1", pending.getId()).get().getStatus()).isEqualTo(ImportJob.STATUS_CANCELLED);
+        assertThat(service.cancel("2", pending.getId()).isPresent()).isFalse();
+        for (final ImportJob job : running) {
+            while (!service.getJob("1", job.getId()).get().getStatus().equals(ImportJob.STATUS_RUNNING)) Thread.sleep(10);
+            service.cancel("1", job.getId());
+            assertThat(await(job).getStatus()).isEqualTo(ImportJob.STATUS_CANCELLED);
+        }
+        latch.countDown();
+        assertThat(started.get()).isFalse();
+    }
+}
@@ -62,4 +62,17 @@ public class TaskCSVTest {
             }
         }
     }
+
+    @Test
+    public void testIteratorCSV() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TaskCSV.write(Arrays.asList(task2, task1).iterator(), output);
+
+        try (final Reader reader = new StringReader(output.toString(StandardCharsets.UTF_8.name()))) {
+            try (final CSVParser csv = new CSVParser(reader, TaskCSV.FORMAT)) {
+                final List<Task> parsed = Lists.newArrayList(TaskCSV.parse(stage, csv));
+                assertThat(parsed).usingElementComparatorIgnoringFields("dateTime").containsExactly(task2, task1);
+            }
+        }
+    }
 }
@@ -52,7 +52,7 @@ public class KOSAggregatorTest {
     @Test
     public void testTwoTasks() {
         when(taskDAO.listForStage(anyString())).thenReturn(Arrays.asList(task1, task2));
-        when(answerDAO.listForStage(anyString())).thenReturn(Arrays.asList(
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
                 new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(3).setTaskId(1).addAnswers("1").buildPartial(),
@@ -76,7 +76,7 @@ public class KOSAggregatorTest {
 
     @Test
     public void testEmptyCase() {
-        when(answerDAO.listForStage(anyString())).thenReturn(Collections.emptyList());
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Collections.emptyList());
         final Optional<AnswerAggregation> winner = aggregator.aggregate(task1);
         assertThat(winner.isPresent()).isFalse();
     }
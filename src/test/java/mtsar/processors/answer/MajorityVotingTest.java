@@ -47,7 +47,7 @@ public class MajorityVotingTest {
 
     @Test
     public void testBasicCase() {
-        when(answerDAO.listForStage(anyString())).thenReturn(Arrays.asList(
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
                 new Answer.Builder().setWorkerId(1).setTaskId(task.getId()).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(2).setTaskId(task.getId()).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(3).setTaskId(task.getId()).addAnswers("2").buildPartial()
@@ -60,7 +60,7 @@ public class MajorityVotingTest {
 
     @Test
     public void testAmbiguousCase() {
-        when(answerDAO.listForStage(anyString())).thenReturn(Arrays.asList(
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
                 new Answer.Builder().setWorkerId(1).setTaskId(task.getId()).addAnswers("2").buildPartial(),
                 new Answer.Builder().setWorkerId(2).setTaskId(task.getId()).addAnswers("1").buildPartial()
         ));
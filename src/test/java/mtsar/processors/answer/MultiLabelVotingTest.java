@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.processors.AnswerAggregator;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static mtsar.TestHelper.fixture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class MultiLabelVotingTest {
+    private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final Stage stage = mock(Stage.class);
+    private static final Task task1 = fixture("task1.json", Task.class);
+    private static final Task task3 = new Task.Builder().mergeFrom(task1).setId(3).setType(TaskDAO.TASK_TYPE_MULTIPLE).addAnswers("3").build();
+    private static final AnswerAggregator aggregator = new MultiLabelVoting(stage, answerDAO);
+
+    @Before
+    public void setup() {
+        reset(answerDAO);
+        when(stage.getId()).thenReturn("1");
+    }
+
+    @Test
+    public void testSingleCase() {
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(task1.getId()).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(task1.getId()).addAnswers("2").buildPartial(),
+                new Answer.Builder().setWorkerId(3).setTaskId(task1.getId()).addAnswers("2").buildPartial()
+        ));
+        final Optional<AnswerAggregation> winner = aggregator.aggregate(task1);
+        assertThat(winner.isPresent()).isTrue();
+        assertThat(winner.get().getAnswers()).containsExactly("2");
+        assertThat(winner.get().getConfidences().get(0)).isEqualTo(2.0 / 3);
+    }
+
+    @Test
+    public void testMultipleCase() {
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(task3.getId()).addAnswers("1", "3").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(task3.getId()).addAnswers("1", "2", "3").buildPartial(),
+                new Answer.Builder().setWorkerId(3).setTaskId(task3.getId()).addAnswers("3").buildPartial()
+        ));
+        final Optional<AnswerAggregation> winner = aggregator.aggregate(task3);
+        assertThat(winner.isPresent()).isTrue();
+        assertThat(winner.get().getAnswers()).containsExactly("1", "3");
+        assertThat(winner.get().getConfidences()).containsExactly(2.0 / 3, 1.0);
+    }
+
+    @Test
+    public void testNoMajority() {
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(task3.getId()).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(task3.getId()).addAnswers("2").buildPartial()
+        ));
+        assertThat(aggregator.aggregate(task3).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testLabelVotes() {
+        final int labels = 130;
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < labels; i++) index.put(Integer.toString(i), i);
+
+        final LabelVotes votes = new LabelVotes(labels);
+        final int[] expected = new int[labels];
+        final Random random = new Random(0);
+        for (int voter = 0; voter < 100; voter++) {
+            final List<String> answers = new ArrayList<>();
+            for (int i = 0; i < labels; i++) {
+                if (random.nextBoolean()) {
+                    answers.add(Integer.toString(i));
+                    expected[i]++;
+                }
+            }
+            votes.add(votes.encode(index, answers));
+        }
+
+        assertThat(votes.getVoters()).isEqualTo(100);
+        assertThat(votes.counts()).containsExactly(expected);
+        assertThat(votes.encode(index, Collections.singletonList("unknown"))).isNull();
+    }
+
+    @Test
+    public void testEmptyCase() {
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Collections.emptyList());
+        final Optional<AnswerAggregation> winner = aggregator.aggregate(task3);
+        assertThat(winner.isPresent()).isFalse();
+    }
+}
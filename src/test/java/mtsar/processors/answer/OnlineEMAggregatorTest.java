@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.processors.AnswerAggregator;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static mtsar.TestHelper.fixture;
+import static mtsar.TestHelper.iterator;
+import static mtsar.TestHelper.transaction;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Mockito.*;
+
+public class OnlineEMAggregatorTest {
+    private static final TaskDAO taskDAO = mock(TaskDAO.class);
+    private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final Stage stage = mock(Stage.class);
+    private static final Task task1 = fixture("task1.json", Task.class);
+    private static final Task task2 = fixture("task2.json", Task.class);
+    private static final List<Answer> answers = Arrays.asList(
+            new Answer.Builder().setId(1).setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
+            new Answer.Builder().setId(2).setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
+            new Answer.Builder().setId(3).setWorkerId(3).setTaskId(1).addAnswers("2").buildPartial(),
+            new Answer.Builder().setId(4).setWorkerId(1).setTaskId(2).addAnswers("2").buildPartial(),
+            new Answer.Builder().setId(5).setWorkerId(2).setTaskId(2).addAnswers("2").buildPartial()
+    );
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        reset(taskDAO);
+        reset(answerDAO);
+        when(stage.getId()).thenReturn("1");
+        when(taskDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(task1, task2));
+        when(answerDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(answerDAO));
+        when(answerDAO.streamForProcessing(anyString(), anyInt(), any(int[].class), any(int[].class))).then(invocation -> iterator(Collections.<Answer>emptyList()));
+        /* a transaction is running all the time, so the skipped identifiers are never settled */
+        when(answerDAO.snapshot()).thenReturn("1:2:1");
+    }
+
+    @Test
+    public void testBasicCase() {
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(answers));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        final AnswerAggregator aggregator = new OnlineEMAggregator(stage, taskDAO, answerDAO, new OnlineEMAggregator.Models());
+        {
+            final Optional<AnswerAggregation> winner = aggregator.aggregate(task1);
+            assertThat(winner.isPresent()).isTrue();
+            assertThat(winner.get().getAnswers().get(0)).isEqualTo("1");
+        }
+        {
+            final Optional<AnswerAggregation> winner = aggregator.aggregate(task2);
+            assertThat(winner.isPresent()).isTrue();
+            assertThat(winner.get().getAnswers().get(0)).isEqualTo("2");
+        }
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class));
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(5), any(int[].class), any(int[].class));
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        final OnlineEMAggregator.Models models = new OnlineEMAggregator.Models();
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(answers.subList(0, 3)));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        assertThat(new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task2).isPresent()).isFalse();
+
+        when(answerDAO.streamForProcessing(anyString(), eq(3), any(int[].class), any(int[].class))).then(invocation -> iterator(answers.subList(3, 5)));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        final Optional<AnswerAggregation> winner = new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task2);
+        assertThat(winner.isPresent()).isTrue();
+        assertThat(winner.get().getAnswers().get(0)).isEqualTo("2");
+    }
+
+    @Test
+    public void testLateCommit() {
+        final OnlineEMAggregator.Models models = new OnlineEMAggregator.Models();
+        /* the third answer is committed after the fourth one has been streamed */
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(Arrays.asList(answers.get(0), answers.get(1), answers.get(3))));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task1);
+
+        when(answerDAO.streamForProcessing(anyString(), eq(4), aryEq(new int[]{3}), aryEq(new int[]{3}))).then(invocation -> iterator(answers.subList(2, 3)));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        assertThat(new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task1).isPresent()).isTrue();
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class));
+        verify(taskDAO, times(1)).listForProcessing(anyString());
+    }
+
+    @Test
+    public void testSettledGap() {
+        final OnlineEMAggregator.Models models = new OnlineEMAggregator.Models();
+        /* the third answer has not been committed yet by a transaction running at the first streaming */
+        when(answerDAO.streamForProcessing(anyString(), eq(0), any(int[].class), any(int[].class))).then(invocation -> iterator(Arrays.asList(answers.get(0), answers.get(1), answers.get(3))));
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        when(answerDAO.lastId()).thenReturn(4);
+        when(answerDAO.snapshot()).thenReturn("5:7:5");
+        new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task1);
+
+        /* that transaction has rolled back, so the third identifier is looked up once more and then forgotten */
+        when(answerDAO.snapshot()).thenReturn("7:7:");
+        new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task1);
+        new OnlineEMAggregator(stage, taskDAO, answerDAO, models).aggregate(task1);
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(4), aryEq(new int[]{3}), aryEq(new int[]{3}));
+        verify(answerDAO, times(1)).streamForProcessing(anyString(), eq(4), aryEq(new int[0]), aryEq(new int[0]));
+    }
+
+    @Test
+    public void testEmptyCase() {
+        when(answerDAO.epoch(anyString())).thenReturn("0");
+        final AnswerAggregator aggregator = new OnlineEMAggregator(stage, taskDAO, answerDAO, new OnlineEMAggregator.Models());
+        assertThat(aggregator.aggregate(task1).isPresent()).isFalse();
+    }
+}
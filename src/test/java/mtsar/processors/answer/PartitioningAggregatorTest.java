@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Dmitry Ustalov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mtsar.processors.answer;
+
+import mtsar.api.Answer;
+import mtsar.api.AnswerAggregation;
+import mtsar.api.Stage;
+import mtsar.api.Task;
+import mtsar.api.sql.AnswerDAO;
+import mtsar.api.sql.TaskDAO;
+import mtsar.processors.AnswerAggregator;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.Transaction;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.*;
+
+import static mtsar.TestHelper.fixture;
+import static mtsar.TestHelper.iterator;
+import static mtsar.TestHelper.transaction;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class PartitioningAggregatorTest {
+    private static final TaskDAO taskDAO = mock(TaskDAO.class);
+    private static final AnswerDAO answerDAO = mock(AnswerDAO.class);
+    private static final Stage stage = mock(Stage.class);
+    private static final Task task1 = fixture("task1.json", Task.class);
+    private static final Task task2 = fixture("task2.json", Task.class);
+    private static final Map<Integer, Task> taskMap = new HashMap<Integer, Task>() {{
+        put(task1.getId(), task1);
+        put(task2.getId(), task2);
+    }};
+    private static final AnswerAggregator aggregator = new PartitioningAggregator(stage, taskDAO, answerDAO, new MajorityVoting(stage, answerDAO));
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        reset(taskDAO);
+        reset(answerDAO);
+        when(stage.getId()).thenReturn("1");
+        when(answerDAO.inTransaction(any(TransactionIsolationLevel.class), any(Transaction.class))).then(transaction(answerDAO));
+        when(answerDAO.taskDAO()).thenReturn(taskDAO);
+        when(taskDAO.streamForStage(anyString())).then(invocation -> iterator(Arrays.asList(task1, task2)));
+    }
+
+    private static void stubAnswers(List<Answer> answers) {
+        when(answerDAO.streamForProcessing(anyString(), anyInt(), any(int[].class), any(int[].class))).then(invocation -> iterator(answers));
+    }
+
+    @Test
+    public void testPartition() {
+        final List<Answer> disjoint = Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(3).setTaskId(2).addAnswers("2").buildPartial()
+        );
+        assertThat(PartitioningAggregator.partition(taskMap, disjoint)).hasSize(2);
+
+        final List<Answer> joint = new ArrayList<>(disjoint);
+        joint.add(new Answer.Builder().setWorkerId(2).setTaskId(2).addAnswers("2").buildPartial());
+        final List<PartitioningAggregator.Component> components = PartitioningAggregator.partition(taskMap, joint);
+        assertThat(components).hasSize(1);
+        assertThat(components.get(0).taskMap).containsOnlyKeys(1, 2);
+        assertThat(components.get(0).answers).hasSize(4);
+    }
+
+    @Test
+    public void testConnect() {
+        final List<Answer> answers = Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(2).addAnswers("2").buildPartial(),
+                new Answer.Builder().setWorkerId(3).setTaskId(3).addAnswers("2").buildPartial()
+        );
+        assertThat(PartitioningAggregator.connect(answers.iterator(), Collections.singleton(2))).containsOnly(1, 2);
+        assertThat(PartitioningAggregator.connect(answers.iterator(), Collections.singleton(3))).containsOnly(3);
+        assertThat(PartitioningAggregator.connect(answers.iterator(), Collections.singleton(4))).isEmpty();
+    }
+
+    @Test
+    public void testBasicCase() {
+        stubAnswers(Arrays.asList(
+                new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
+                new Answer.Builder().setWorkerId(3).setTaskId(2).addAnswers("2").buildPartial()
+        ));
+        final Map<Integer, AnswerAggregation> aggregations = aggregator.aggregate(Arrays.asList(task1, task2));
+        assertThat(aggregations).containsOnlyKeys(1, 2);
+        assertThat(aggregations.get(1).getAnswers()).containsExactly("1");
+        assertThat(aggregations.get(2).getAnswers()).containsExactly("2");
+    }
+
+    @Test
+    public void testEmptyCase() {
+        stubAnswers(Collections.emptyList());
+        final Optional<AnswerAggregation> winner = aggregator.aggregate(task1);
+        assertThat(winner.isPresent()).isFalse();
+    }
+}
@@ -50,7 +50,7 @@ public class DawidSkeneProcessorTest {
     @Test
     public void testTwoTasks() {
         when(taskDAO.listForStage(anyString())).thenReturn(Arrays.asList(task1, task2));
-        when(answerDAO.listForStage(anyString())).thenReturn(Arrays.asList(
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
                 new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(1).setTaskId(2).addAnswers("1").buildPartial(),
@@ -82,7 +82,7 @@ public class DawidSkeneProcessorTest {
 
     @Test
     public void testEmptyCase() {
-        when(answerDAO.listForStage(anyString())).thenReturn(Collections.emptyList());
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Collections.emptyList());
         final Optional<AnswerAggregation> winner = processor.aggregate(task1);
         assertThat(winner.isPresent()).isFalse();
     }
@@ -47,7 +47,7 @@ public class ZenCrowdTest {
         reset(answerDAO);
         when(stage.getId()).thenReturn("1");
         when(taskDAO.listForStage(anyString())).thenReturn(Arrays.asList(task1, task2));
-        when(answerDAO.listForStage(anyString())).thenReturn(Arrays.asList(
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Arrays.asList(
                 new Answer.Builder().setWorkerId(1).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(2).setTaskId(1).addAnswers("1").buildPartial(),
                 new Answer.Builder().setWorkerId(1).setTaskId(2).addAnswers("1").buildPartial(),
@@ -85,7 +85,7 @@ public class ZenCrowdTest {
     @Test
     public void testEmptyCase() {
         reset(answerDAO);
-        when(answerDAO.listForStage(anyString())).thenReturn(Collections.emptyList());
+        when(answerDAO.listForProcessing(anyString())).thenReturn(Collections.emptyList());
         final Optional<AnswerAggregation> winner = processor.aggregate(task1);
         assertThat(winner.isPresent()).isFalse();
     }
@@ -23,7 +23,6 @@ import mtsar.processors.TaskAllocator;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Before;
 import org.junit.Test;
-import org.skife.jdbi.v2.DBI;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -48,19 +47,14 @@ public class InverseCountAllocatorTest {
     private static final List<Answer> answers1 = Collections.singletonList(answer1);
     private static final List<Answer> answers2 = Arrays.asList(answer2, answer3);
 
-    private static final DBI dbi = mock(DBI.class);
-    private static final InverseCountAllocator.CountDAO countDAO = mock(InverseCountAllocator.CountDAO.class);
-
     @Before
     public void setup() {
         reset(taskDAO);
         reset(answerDAO);
-        reset(countDAO);
         when(taskDAO.select(eq(Collections.singletonList(1)), anyString())).thenReturn(Collections.singletonList(task1));
         when(taskDAO.select(eq(Collections.singletonList(2)), anyString())).thenReturn(Collections.singletonList(task2));
         when(taskDAO.count(anyString())).thenReturn(tasks.size());
         when(answerDAO.listForWorker(anyInt(), anyString())).thenReturn(Collections.emptyList());
-        when(dbi.onDemand(any())).thenReturn(countDAO);
         when(stage.getId()).thenReturn("1");
         when(answer1.getTaskId()).thenReturn(1);
         when(answer2.getTaskId()).thenReturn(2);
@@ -69,8 +63,8 @@ public class InverseCountAllocatorTest {
 
     @Test
     public void testUnequalAllocation() {
-        when(countDAO.getCountsSQL(anyString())).thenReturn(Arrays.asList(Pair.of(1, 1), Pair.of(2, 0)));
-        final TaskAllocator allocator = new InverseCountAllocator(stage, dbi, taskDAO, answerDAO);
+        when(taskDAO.listCounts(anyString())).thenReturn(Arrays.asList(Pair.of(1, 1), Pair.of(2, 0)));
+        final TaskAllocator allocator = new InverseCountAllocator(stage, taskDAO, answerDAO);
 
         final Optional<TaskAllocation> optional = allocator.allocate(worker);
         assertThat(optional.isPresent()).isTrue();
@@ -83,8 +77,8 @@ public class InverseCountAllocatorTest {
 
     @Test
     public void testEqualAllocation() {
-        when(countDAO.getCountsSQL(anyString())).thenReturn(Arrays.asList(Pair.of(1, 0), Pair.of(2, 0)));
-        final TaskAllocator allocator = new InverseCountAllocator(stage, dbi, taskDAO, answerDAO);
+        when(taskDAO.listCounts(anyString())).thenReturn(Arrays.asList(Pair.of(1, 0), Pair.of(2, 0)));
+        final TaskAllocator allocator = new InverseCountAllocator(stage, taskDAO, answerDAO);
 
         final Optional<TaskAllocation> optional = allocator.allocate(worker);
         assertThat(optional.isPresent()).isTrue();
@@ -97,8 +91,8 @@ public class InverseCountAllocatorTest {
 
     @Test
     public void testEmpty() {
-        when(countDAO.getCountsSQL(anyString())).thenReturn(Collections.emptyList());
-        final TaskAllocator allocator = new InverseCountAllocator(stage, dbi, taskDAO, answerDAO);
+        when(taskDAO.listCounts(anyString())).thenReturn(Collections.emptyList());
+        final TaskAllocator allocator = new InverseCountAllocator(stage, taskDAO, answerDAO);
         final Optional<TaskAllocation> optional = allocator.allocate(worker);
         assertThat(optional.isPresent()).isFalse();
     }